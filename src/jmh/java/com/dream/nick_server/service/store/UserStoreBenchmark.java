@@ -0,0 +1,91 @@
+package com.dream.nick_server.service.store;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dream.nick_server.config.UserStoreConfig;
+import com.dream.nick_server.model.Authority;
+import com.dream.nick_server.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 对比两种用户存储的查找与写入吞吐量，写入包含落盘。
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Djmh.args="UserStoreBenchmark -t 4"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserStoreBenchmark {
+
+    @Param({ UserStoreConfig.TYPE_LOG, UserStoreConfig.TYPE_MAPPED })
+    public String type;
+
+    @Param({ "100000" })
+    public int users;
+
+    private Path dir;
+    private UserStore store;
+    private final AtomicLong inserted = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("user-store-bench");
+        ObjectMapper objectMapper = new ObjectMapper();
+        store = UserStoreConfig.TYPE_MAPPED.equals(type)
+                ? MappedUserStore.open(dir, objectMapper, 1 << 20, 0)
+                : LogUserStore.open(dir, objectMapper, 4 << 20);
+        for (int i = 0; i < users; i++) {
+            store.insert(user("id" + i, "user" + i)).block();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static User user(String id, String name) {
+        return new User(id, name, "$2a$10$benchmarkbenchmarkbenchmarkbenchmarkbenchmarkbench", name + "@example.com",
+                List.of(Authority.USER));
+    }
+
+    @Benchmark
+    public User findByUsername() {
+        return store.findByUsername("user" + ThreadLocalRandom.current().nextInt(users)).block();
+    }
+
+    @Benchmark
+    public User insert() {
+        long n = inserted.incrementAndGet();
+        return store.insert(user("new" + n, "new" + n)).block();
+    }
+}
@@ -0,0 +1,75 @@
+package com.dream.nick_server.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 对比每条消息新建 ObjectMapper 与共享编解码器的序列化开销。
+ * 运行：mvn -Pbenchmark test-compile exec:exec，加上 -prof gc 可以看到每条消息分配的字节数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketMessageCodecBenchmark {
+
+    private WebSocketMessageCodec codec;
+    private WebSocketMessageBody response; // 一个 file_open 分块
+    private String request; // 一条 file_write_line 请求
+
+    @Setup
+    public void setup() throws Exception {
+        codec = new WebSocketMessageCodec(new ObjectMapper());
+        Map<String, String> chunk = new LinkedHashMap<>();
+        chunk.put("seq", "0");
+        chunk.put("start", "1");
+        for (int line = 1; line <= 50; line++) {
+            chunk.put(String.valueOf(line), "line " + line + " of the benchmark document");
+        }
+        chunk.put("count", "50");
+        chunk.put("last", "false");
+        response = new WebSocketMessageBody();
+        response.setType("success");
+        response.setKey("utf-8");
+        response.setMessage("file_open");
+        response.setValue(chunk);
+        request = "{\"type\":\"files\",\"key\":\"\",\"message\":\"file_write_line\","
+                + "\"value\":{\"path\":\"src/main/workSpace/a.txt\",\"lineNum\":\"12\",\"value\":\"hello\",\"baseVersion\":\"3\"}}";
+    }
+
+    @Benchmark
+    public String writePerMessageMapper() throws Exception {
+        return new ObjectMapper().writeValueAsString(response);
+    }
+
+    @Benchmark
+    public String writeSharedCodec() throws Exception {
+        return codec.write(response);
+    }
+
+    @Benchmark
+    public WebSocketMessageBody readPerMessageMapper() throws Exception {
+        return new ObjectMapper().readValue(request, WebSocketMessageBody.class);
+    }
+
+    @Benchmark
+    public WebSocketMessageBody readSharedCodec() throws Exception {
+        return codec.read(request);
+    }
+}
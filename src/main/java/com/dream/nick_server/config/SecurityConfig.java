@@ -2,6 +2,8 @@ package com.dream.nick_server.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.Ordered;
@@ -9,7 +11,6 @@ import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
@@ -21,7 +22,9 @@ import org.springframework.web.reactive.function.server.RouterFunctions;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
 import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
 import org.springframework.web.reactive.socket.server.support.WebSocketHandlerAdapter;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
 
 import com.dream.nick_server.handler.SuccessHandler;
 import com.dream.nick_server.model.Authority;
@@ -31,12 +34,18 @@ import com.dream.nick_server.security.CustomAuthenticationManager;
 import com.dream.nick_server.security.CustomAuthenticationSuccessHandler;
 import com.dream.nick_server.security.JwtAuthenticationFilter;
 import com.dream.nick_server.security.JwtTokenProvider;
+import com.dream.nick_server.security.PasswordEncoders;
 import com.dream.nick_server.service.impl.UserServiceImpl;
+import com.dream.nick_server.websocket.WebSocketLimits;
 import com.dream.nick_server.websocket.echo.EchoHandler;
 import com.dream.nick_server.websocket.echo.EchoServer;
 import com.dream.nick_server.websocket.files.FileHandler;
 import com.dream.nick_server.websocket.files.FilesManagementServer;
 
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import reactor.netty.http.server.WebsocketServerSpec;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -128,23 +137,49 @@ public class SecurityConfig {
     }
 
     /**
-     * 配置 WebSocket 处理器适配器。
+     * 配置 WebSocket 处理器适配器，消息（合并分片后）的大小上限取自 WebSocketLimits。
      * 
+     * @param limits WebSocket 会话的流量限制。
      * @return WebSocketHandlerAdapter 对象。
      */
     @Bean
-    public WebSocketHandlerAdapter handlerAdapter() {
-        return new WebSocketHandlerAdapter();
+    public WebSocketHandlerAdapter handlerAdapter(WebSocketLimits limits) {
+        ReactorNettyRequestUpgradeStrategy strategy = new ReactorNettyRequestUpgradeStrategy(
+                () -> WebsocketServerSpec.builder().maxFramePayloadLength(limits.getMaxFrameBytes()));
+        return new WebSocketHandlerAdapter(new HandshakeWebSocketService(strategy));
+    }
+
+    /**
+     * 配置连接的发送缓冲上限，超过后 WebSocket 会话停止发送新消息，直到缓冲降到一半以下；
+     * 长时间降不下来的连接由 WebSocketLimits 关闭。
+     * 
+     * @param limits WebSocket 会话的流量限制。
+     * @return NettyServerCustomizer 对象。
+     */
+    @Bean
+    public NettyServerCustomizer writeBufferWaterMark(WebSocketLimits limits) {
+        int high = limits.getHighWaterBytes();
+        return httpServer -> httpServer
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(high / 2, high))
+                .doOnChannelInit((observer, channel, address) -> limits.watch(channel));
     }
 
     /**
      * 配置密码编码器。
+     * security.hash.strength 为 0 时在启动时校准 BCrypt 强度，使单次加密接近 security.hash.target-ms。
      * 
      * @return PasswordEncoder 对象。
      */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${security.hash.strength:0}") int strength,
+                                           @Value("${security.hash.target-ms:250}") long targetMillis,
+                                           @Value("${security.hash.min-strength:10}") int minStrength,
+                                           @Value("${security.hash.max-strength:16}") int maxStrength) {
+        if (strength <= 0) {
+            strength = PasswordEncoders.calibrate(targetMillis, minStrength, maxStrength);
+        }
+        LOGGER.info("Password encoder: {}, strength: {}", PasswordEncoders.BCRYPT, strength);
+        return PasswordEncoders.create(strength);
     }
 
     /** 
@@ -0,0 +1,51 @@
+package com.dream.nick_server.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.dream.nick_server.service.store.LogUserStore;
+import com.dream.nick_server.service.store.MappedUserStore;
+import com.dream.nick_server.service.store.UserStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 根据 users.store.type 选择用户数据的存储：
+ * log 为堆上的用户表加日志结构持久化，mapped 为内存映射的键值文件。
+ * 存储目录默认在工作目录下，不写入源码树；目录为空时以 users.store.seed 指定的用户文件为初始数据。
+ */
+@Configuration
+public class UserStoreConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserStoreConfig.class);
+
+    public static final String TYPE_LOG = "log";
+    public static final String TYPE_MAPPED = "mapped";
+
+    @Bean
+    public UserStore userStore(@Value("${users.store.type:" + TYPE_LOG + "}") String type,
+                               @Value("${users.store.dir:users}") String directory,
+                               @Value("${users.store.seed:src/main/resources/users/users.json}") String seed,
+                               @Value("${users.store.compact-bytes:4194304}") long compactBytes,
+                               @Value("${users.store.mapped.initial-bytes:1048576}") int initialBytes,
+                               @Value("${users.store.mapped.threads:0}") int threads) throws IOException {
+        Path path = Paths.get(directory).toAbsolutePath().normalize();
+        ObjectMapper objectMapper = new ObjectMapper(); // Jackson 对象映射器，用于 JSON 处理
+        LOGGER.info("User store: {}, directory: {}", type, path);
+        if (!seed.isEmpty()) {
+            LogUserStore.seed(path, Paths.get(seed).toAbsolutePath().normalize());
+        }
+        if (TYPE_MAPPED.equalsIgnoreCase(type)) {
+            return MappedUserStore.open(path, objectMapper, initialBytes, threads);
+        }
+        if (!TYPE_LOG.equalsIgnoreCase(type)) {
+            LOGGER.warn("Unknown users.store.type: {}, using {}", type, TYPE_LOG);
+        }
+        return LogUserStore.open(path, objectMapper, compactBytes);
+    }
+}
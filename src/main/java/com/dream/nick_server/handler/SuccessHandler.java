@@ -6,6 +6,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -13,9 +14,11 @@ import org.springframework.security.web.server.WebFilterExchange;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
 import com.dream.nick_server.model.User;
 import com.dream.nick_server.security.CustomAuthenticationManager;
 import com.dream.nick_server.security.CustomAuthenticationSuccessHandler;
+import com.dream.nick_server.security.PasswordHasher;
 import com.dream.nick_server.service.impl.UserServiceImpl;
 
 import reactor.core.publisher.Mono;
@@ -91,6 +94,7 @@ public class SuccessHandler {
                                         .location(URI.create(HOME_PATH))
                                         .build());
                     })
+                    .onErrorResume(ResponseStatusException.class, this::busy)
                     .onErrorResume(e -> {
                         LOGGER.error("Error logging in user: ", e);
                         return getHTML(LOGIN_PATH);
@@ -99,6 +103,15 @@ public class SuccessHandler {
     }
             
 
+    /**
+     * 密码加密排队已满时返回 503，并建议客户端稍后重试
+     */
+    private Mono<ServerResponse> busy(ResponseStatusException e) {
+        return ServerResponse.status(e.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(PasswordHasher.RETRY_AFTER_SECONDS))
+                .build();
+    }
+
     /**
      * 处理用户注册请求
      */
@@ -114,7 +127,8 @@ public class SuccessHandler {
                                 .location(URI.create("/home"))
                                 .build();
                     }))
-                    .switchIfEmpty(getHTML("user/register"));
+                    .switchIfEmpty(getHTML("user/register"))
+                    .onErrorResume(ResponseStatusException.class, this::busy);
         });
     }
 
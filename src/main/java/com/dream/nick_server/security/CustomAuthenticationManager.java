@@ -6,9 +6,10 @@ import org.springframework.security.authentication.ReactiveAuthenticationManager
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
 
+import com.dream.nick_server.model.User;
 import com.dream.nick_server.service.impl.UserServiceImpl;
 
 import reactor.core.publisher.Mono;
@@ -16,7 +17,7 @@ import reactor.core.publisher.Mono;
 /**
  * 自定义认证管理器
  * 该类实现了 ReactiveAuthenticationManager 接口，用于处理用户认证。
- * 它依赖于 UserServiceImpl 和 PasswordEncoder 两个 Bean 来进行认证。
+ * 它依赖于 UserServiceImpl 和 PasswordHasher 两个 Bean 来进行认证，密码校验在 PasswordHasher 的线程池上执行。
  */
 @Component
 public class CustomAuthenticationManager implements ReactiveAuthenticationManager {
@@ -24,19 +25,19 @@ public class CustomAuthenticationManager implements ReactiveAuthenticationManage
     private static final Logger LOGGER = LoggerFactory.getLogger(CustomAuthenticationManager.class);
 
     private final UserServiceImpl userService; // 用户服务，用于加载用户
-    private final PasswordEncoder passwordEncoder; // 密码编码器，用于密码匹配
+    private final PasswordHasher passwordHasher; // 密码校验，在专用线程池上执行
     private final JwtTokenProvider jwtTokenProvider; // JWT 令牌提供者，用于生成 JWT 令牌
 
     /**
      * 构造函数注入用户服务和密码编码器。
      *
      * @param userService 用户服务实现类
-     * @param passwordEncoder 密码编码器
+     * @param passwordHasher 密码校验
      * @param jwtTokenProvider JWT 令牌提供者
      */
-    public CustomAuthenticationManager(UserServiceImpl userService, PasswordEncoder passwordEncoder, JwtTokenProvider jwtTokenProvider) {
+    public CustomAuthenticationManager(UserServiceImpl userService, PasswordHasher passwordHasher, JwtTokenProvider jwtTokenProvider) {
         this.userService = userService;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
         this.jwtTokenProvider = jwtTokenProvider;
     }
 
@@ -44,7 +45,7 @@ public class CustomAuthenticationManager implements ReactiveAuthenticationManage
      * 进行用户认证。
      *
      * @param authentication 认证信息，包含用户名和密码
-     * @return 包含认证结果的 Mono 对象
+     * @return 包含认证结果的 Mono 对象；密码校验排队已满时以 503 的 ResponseStatusException 结束
      * @throws AuthenticationException 认证异常
      */
     @Override
@@ -56,9 +57,10 @@ public class CustomAuthenticationManager implements ReactiveAuthenticationManage
 
         // 从用户服务中加载用户
         return userService.loadUserByUsername(username)
-               .flatMap(user -> {
+               .flatMap(user -> passwordHasher.matches(password, user.getPassword()).flatMap(matches -> {
                     // 使用密码编码器验证密码是否匹配
-                    if (passwordEncoder.matches(password, user.getPassword())) {
+                    if (matches) {
+                        upgradePassword(user, password); // 在后台升级强度不足的密码，不等待结果
                         String token = jwtTokenProvider.generateToken(authentication); // 生成 JWT 令牌
                         LOGGER.info("Generated JWT token for user: {}", username); // 记录生成 JWT 令牌的日志
                         // 创建认证成功的 Authentication 对象
@@ -72,8 +74,22 @@ public class CustomAuthenticationManager implements ReactiveAuthenticationManage
                         LOGGER.debug("Invalid password for user: {}", username);
                         return Mono.just(null); // 返回空的 Mono 表示认证失败
                     }
-               })
+               }))
                .doOnError(error -> LOGGER.error("Error authenticating user: {}", username, error)) // 记录认证失败的错误日志
-               .onErrorResume(error -> Mono.just(null)); // 发生错误时返回空的 Mono
+               // 过载拒绝交给调用方返回 503，其余错误返回空的 Mono
+               .onErrorResume(error -> !(error instanceof ResponseStatusException), error -> Mono.just(null));
+    }
+
+    /**
+     * 保存的密码强度低于当前配置时重新加密并保存。
+     * 加密排队已满或保存失败时只记录日志，下次登录再升级。
+     *
+     * @param user 登录的用户
+     * @param password 已校验通过的明文密码
+     */
+    private void upgradePassword(User user, String password) {
+        passwordHasher.upgrade(password, user.getPassword())
+                .flatMap(encoded -> userService.upgradePassword(user, encoded))
+                .subscribe(null, error -> LOGGER.warn("Password upgrade skipped for user: {}, {}", user.getUsername(), error.getMessage()));
     }
 }
@@ -0,0 +1,81 @@
+package com.dream.nick_server.security;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+/**
+ * 创建应用使用的密码编码器。
+ * 新密码以 {bcrypt} 前缀保存，强度在启动时按本机 CPU 校准；没有前缀的旧密码按 BCrypt 校验。
+ * 保存的密码强度低于当前强度或算法不是 bcrypt 时，{@link PasswordEncoder#upgradeEncoding} 返回 true，
+ * 登录成功后由 {@link PasswordHasher#upgrade} 重新加密，不需要迁移数据。
+ */
+public final class PasswordEncoders {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PasswordEncoders.class);
+
+    public static final String BCRYPT = "bcrypt";
+    public static final int MIN_STRENGTH = 4; // BCrypt 允许的最小强度
+    public static final int MAX_STRENGTH = 31; // BCrypt 允许的最大强度
+
+    private static final int PROBE_STRENGTH = 8; // 校准时实际测量的强度，强度每加 1 耗时翻倍
+    private static final int PROBE_ROUNDS = 3; // 取多次测量的最小值，减少 JIT 与调度的干扰
+
+    private PasswordEncoders() {}
+
+    /**
+     * 创建委托密码编码器
+     *
+     * @param strength BCrypt 强度
+     * @return 以 bcrypt 加密新密码、能校验旧格式密码的编码器
+     */
+    public static PasswordEncoder create(int strength) {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT, bcrypt);
+        encoders.put("pbkdf2", Pbkdf2PasswordEncoder.defaultsForSpringSecurity_v5_8());
+        DelegatingPasswordEncoder delegating = new DelegatingPasswordEncoder(BCRYPT, encoders);
+        delegating.setDefaultPasswordEncoderForMatches(bcrypt); // 没有 {id} 前缀的旧密码都是 BCrypt
+        return delegating;
+    }
+
+    /**
+     * 选择单次加密耗时不超过目标的最大 BCrypt 强度
+     *
+     * @param targetMillis 单次加密的目标耗时（毫秒）
+     * @param minStrength 最小强度，即使本机较慢也不低于该值
+     * @param maxStrength 最大强度
+     * @return 校准后的强度
+     */
+    public static int calibrate(long targetMillis, int minStrength, int maxStrength) {
+        int min = Math.max(MIN_STRENGTH, minStrength);
+        int max = Math.min(MAX_STRENGTH, Math.max(min, maxStrength));
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(PROBE_STRENGTH);
+        probe.encode("calibration"); // 预热
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        double probeMillis = best / 1_000_000.0;
+        int strength = min;
+        while (strength < max && estimate(probeMillis, strength + 1) <= targetMillis) {
+            strength++;
+        }
+        LOGGER.info("BCrypt calibrated: strength {} takes ~{} ms (target {} ms, probe {} ms at strength {})",
+                strength, Math.round(estimate(probeMillis, strength)), targetMillis,
+                String.format("%.2f", probeMillis), PROBE_STRENGTH);
+        return strength;
+    }
+
+    private static double estimate(double probeMillis, int strength) {
+        return probeMillis * Math.pow(2, strength - PROBE_STRENGTH);
+    }
+}
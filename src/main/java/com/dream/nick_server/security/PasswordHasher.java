@@ -0,0 +1,177 @@
+package com.dream.nick_server.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+
+/**
+ * 在专用的有界线程池上执行密码加密与校验。
+ * BCrypt 每次需要约 100 ms，在事件循环线程上执行会让所有连接一起停顿；
+ * 这里的线程数固定，等待的请求超过 queue-capacity 时立即以 503 拒绝，而不是无限排队。
+ * 指标：security.password.hash（执行耗时，op 标签区分 encode、matches）、security.password.wait（排队耗时）、
+ * security.password.queued、security.password.active 与 security.password.rejected。
+ */
+@Component
+public class PasswordHasher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PasswordHasher.class);
+
+    public static final String BUSY = "Password hashing is busy, try again later";
+    public static final int RETRY_AFTER_SECONDS = 1; // 被拒绝时建议客户端等待的秒数
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger active = new AtomicInteger(); // 正在执行的操作数
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          @Value("${security.hash.threads:0}") int threads,
+                          @Value("${security.hash.queue-capacity:64}") int queueCapacity,
+                          MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), task -> {
+                    Thread thread = new Thread(task, "password-hash-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.encodeTimer = timer(meterRegistry, "encode");
+        this.matchesTimer = timer(meterRegistry, "matches");
+        this.waitTimer = Timer.builder("security.password.wait")
+                .description("Time password operations spend waiting for a worker")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("security.password.rejected")
+                .description("Password operations rejected because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("security.password.queued", executor, e -> e.getQueue().size())
+                .description("Password operations waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("security.password.active", active, AtomicInteger::get)
+                .description("Password operations currently running")
+                .register(meterRegistry);
+        LOGGER.info("Password hasher started, threads: {}, queue capacity: {}", size, queueCapacity);
+    }
+
+    private static Timer timer(MeterRegistry meterRegistry, String op) {
+        return Timer.builder("security.password.hash")
+                .description("Time spent encoding or checking a password")
+                .tag("op", op)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 加密密码
+     *
+     * @param rawPassword 明文密码
+     * @return 加密后的密码；队列已满时以 503 的 ResponseStatusException 结束
+     */
+    public Mono<String> encode(CharSequence rawPassword) {
+        return submit(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    /**
+     * 校验密码
+     *
+     * @param rawPassword 明文密码
+     * @param encodedPassword 保存的加密密码
+     * @return 是否一致；队列已满时以 503 的 ResponseStatusException 结束
+     */
+    public Mono<Boolean> matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * 在保存的密码强度低于当前配置时重新加密，用于登录成功后升级旧密码
+     *
+     * @param rawPassword 已校验通过的明文密码
+     * @param encodedPassword 保存的加密密码
+     * @return 新的加密密码；不需要升级时为空，队列已满时以 503 的 ResponseStatusException 结束
+     */
+    public Mono<String> upgrade(CharSequence rawPassword, String encodedPassword) {
+        return Mono.defer(() -> passwordEncoder.upgradeEncoding(encodedPassword) ? encode(rawPassword) : Mono.empty());
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public double getRejected() {
+        return rejected.count();
+    }
+
+    @PreDestroy
+    public void dispose() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在线程池上执行操作，订阅时提交，取消时从队列中移除
+     */
+    private <T> Mono<T> submit(Timer timer, Callable<T> task) {
+        return Mono.create(sink -> {
+            long submitted = System.nanoTime();
+            Future<?> future;
+            try {
+                future = executor.submit(() -> {
+                    long start = System.nanoTime();
+                    waitTimer.record(start - submitted, TimeUnit.NANOSECONDS);
+                    active.incrementAndGet();
+                    T result = null;
+                    Throwable error = null;
+                    try {
+                        result = task.call();
+                    } catch (Throwable e) {
+                        error = e;
+                    } finally {
+                        // 先记录再发出结果，调用方拿到结果时指标已经更新
+                        active.decrementAndGet();
+                        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                    if (error != null) {
+                        sink.error(error);
+                    } else {
+                        sink.success(result);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                LOGGER.warn("[LIMIT] Password hashing queue is full, rejecting request");
+                sink.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, BUSY));
+                return;
+            }
+            sink.onCancel(() -> {
+                if (future.cancel(false)) {
+                    executor.remove((Runnable) future);
+                }
+            });
+        });
+    }
+}
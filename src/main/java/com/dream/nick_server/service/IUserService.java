@@ -33,6 +33,14 @@ public interface IUserService {
      */
     Mono<User> updateUser(String id, User user);
     
+    /**
+     * 替换用户的加密密码，用于登录后升级密码强度。
+     * @param user 加载时的用户信息，用户在此期间被修改时不替换
+     * @param encodedPassword 新的加密密码
+     * @return 包含更新后用户信息的 Mono 对象；未替换时为空
+     */
+    Mono<User> upgradePassword(User user, String encodedPassword);
+    
     /**
      * 删除用户。
      * @param id 用户 ID
@@ -2,146 +2,99 @@ package com.dream.nick_server.service.impl;
 
 import com.dream.nick_server.model.User;
 import com.dream.nick_server.model.Authority;
+import com.dream.nick_server.security.PasswordHasher;
 import com.dream.nick_server.service.IUserService;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.dream.nick_server.service.store.UserStore;
 
 import reactor.core.publisher.Mono;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Map.Entry;
+import org.springframework.web.server.ResponseStatusException;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
-/** 
- * 
+/**
+ * 用户服务，用户数据的保存由 {@link UserStore} 负责，通过 users.store.type 选择存储。
  */
 @Service
 public class UserServiceImpl implements IUserService {
     private static final Logger LOGGER = LoggerFactory.getLogger(UserServiceImpl.class);
 
-    private static final String FILE_PATH = "src/main/resources/users/users.json"; // 存储用户数据的文件路径
-    private final ObjectMapper objectMapper = new ObjectMapper(); // Jackson 对象映射器，用于 JSON 处理
-    private final Map<String, User> userMap = new ConcurrentHashMap<>(); // 线程安全的用户映射表
-     private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder(); // 密码编码器
+    private final UserStore userStore; // 用户数据的存储
+    private final PasswordHasher passwordHasher; // 密码加密，在专用线程池上执行
 
-    public UserServiceImpl() {
-        loadUsersFromFile(); // 服务初始化时从文件加载用户数据
-    }
-
-    /**
-     * 从文件加载用户数据到内存中的用户映射表。
-     */
-    private void loadUsersFromFile() {
-        try {
-            Path path = Paths.get(FILE_PATH);
-            // 检查文件是否存在
-            if (Files.exists(path)) {
-                // 从文件中读取用户数据并解析成 Map
-                Map<String, User> loadedUsers = objectMapper.readValue(path.toFile(), new TypeReference<Map<String, User>>() {});
-                
-                LOGGER.debug("Loaded users from file: {}", loadedUsers);
-                // 将读取到的用户数据放入用户映射表
-                userMap.putAll(loadedUsers);
-            } else {
-                LOGGER.error("File not found: " + FILE_PATH);
-            }
-        } catch (IOException e) {
-            LOGGER.error("Failed to load users from file: " + FILE_PATH, e);
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * 将内存中的用户数据保存到文件。
-     */
-    private synchronized void saveUsersToFile() {
-        try {
-            File file = new File(FILE_PATH);
-            if (!file.exists()) {
-                file.getParentFile().mkdirs(); // 创建目录
-                file.createNewFile(); // 创建文件
-                LOGGER.info("Created file: " + FILE_PATH);
-            }
-            // 将内存中的用户数据写入到文件
-            Path path = Paths.get(FILE_PATH);
-            objectMapper.writeValue(path.toFile(), userMap);
-            LOGGER.info("Users saved to file: " + FILE_PATH);
-        } catch (IOException e) {
-            LOGGER.error("Failed to save users to file: " + FILE_PATH, e);
-            e.printStackTrace();
-        }
+    public UserServiceImpl(UserStore userStore, PasswordHasher passwordHasher) {
+        this.userStore = userStore;
+        this.passwordHasher = passwordHasher;
     }
 
     @Override
     public Mono<User> loadUserByUsername(String username) {
         LOGGER.info("Loading user with username: " + username);
-        for (Entry<String, User> entry : userMap.entrySet()) {
-            if (entry.getValue().getUsername().equals(username)) { // 如果用户名匹配
-                LOGGER.info("User loaded: " + username);
-                return Mono.just(entry.getValue()); // 返回用户对象
-            }
-        }
-        LOGGER.info("User not found: " + username);
-        return Mono.just(new User()); // 如果用户名不存在，返回空用户对象
+        return userStore.findByUsername(username)
+                .doOnNext(user -> LOGGER.info("User loaded: " + username))
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    LOGGER.info("User not found: " + username);
+                    return new User(); // 如果用户名不存在，返回空用户对象
+                }));
     }
 
     @Override
     public Mono<User> registerUser(String username, String password, String email) {
         LOGGER.info("Registering user with username: {}, password: {}, email: {}", username, password, email);
-        for (Entry<String, User> entry : userMap.entrySet()) {
-            if (entry.getValue().getUsername().equals(username)) { // 如果用户名已存在
-                LOGGER.info("Username already exists: " + username);
-                return Mono.empty(); // 注册失败
-            }
-        }
-        // 生成随机 ID
-        String id = UUID.randomUUID().toString(); // 生成随机 ID
-        String encodedPassword = passwordEncoder.encode(password); // 加密密码
-        User user = new User(id, username, encodedPassword, email, List.of(Authority.ADMIN)); // 创建用户对象
-        userMap.put(id, user);
-        saveUsersToFile(); // 将用户数据保存到文件
-        return Mono.just(user); // 返回注册成功的用户对象
+        // 用户名已存在时不必加密密码；并发注册同一用户名时由存储保证只有一个成功
+        return userStore.findByUsername(username)
+                .hasElement()
+                .flatMap(exists -> {
+                    if (exists) { // 如果用户名已存在
+                        LOGGER.info("Username already exists: " + username);
+                        return Mono.empty(); // 注册失败
+                    }
+                    String id = UUID.randomUUID().toString(); // 生成随机 ID
+                    return passwordHasher.encode(password) // 加密密码，排队已满时以 503 结束
+                            .map(encodedPassword -> new User(id, username, encodedPassword, email, List.of(Authority.ADMIN))) // 创建用户对象
+                            .flatMap(userStore::insert)
+                            .switchIfEmpty(Mono.fromRunnable(() -> LOGGER.info("Username or email already exists: {}, {}", username, email)));
+                })
+                .doOnError(e -> !(e instanceof ResponseStatusException), e -> LOGGER.error("Failed to save user: " + username, e));
     }
 
     @Override
     public Mono<User> updateUser(String id, User user) {
         LOGGER.info("Updating user with id: {}", id);
-        User oldUser = userMap.get(id);
-        if (oldUser != null) { // 如果用户存在
-            LOGGER.debug("User before update: user ={}", oldUser); // 打印用户信息
-            userMap.put(id, user); // 更新用户数据
-            saveUsersToFile(); // 将更新后的数据保存到文件
-            LOGGER.info("User updated: " + id);
-            LOGGER.debug("User after update: user ={}", user); // 打印用户信息
-            return Mono.just(user); // 返回更新后的用户对象
-        }
-        LOGGER.info("User update failed: " + id);
-        return Mono.empty(); // 如果用户不存在，返回 null
+        return userStore.update(id, user)
+                .doOnNext(updated -> {
+                    LOGGER.info("User updated: " + id);
+                    LOGGER.debug("User after update: user ={}", updated); // 打印用户信息
+                })
+                // 如果用户不存在，或新的用户名、电子邮件已被使用，返回空
+                .switchIfEmpty(Mono.fromRunnable(() -> LOGGER.info("User update failed: " + id)))
+                .doOnError(e -> LOGGER.error("Failed to save user: " + id, e));
+    }
+
+    @Override
+    public Mono<User> upgradePassword(User user, String encodedPassword) {
+        String id = user.getId();
+        // 只在保存的用户与加载时一致时替换，比较与替换由存储原子地完成，避免覆盖期间的修改
+        return userStore.update(id, user, new User(id, user.getUsername(), encodedPassword,
+                        user.getEmail(), user.getAuthorities()))
+                .doOnNext(updated -> LOGGER.info("Password upgraded for user: " + id))
+                .doOnError(e -> LOGGER.error("Failed to upgrade password: " + id, e));
     }
 
     @Override
     public Mono<Boolean> deleteUser(String id, User user) {
         LOGGER.info("Deleting user with id: " + id);
-        User oldUser = userMap.get(id);
-        if (oldUser != null && oldUser.equals(user)) { // 如果用户存在且密码正确
-            userMap.remove(id); // 删除用户数据
-            saveUsersToFile(); // 将删除后的数据保存到文件
-            LOGGER.info("User deleted: " + id);
-            return Mono.just(true); // 返回 true 表示删除成功
-        }
-        LOGGER.info("User deletion failed: " + id);
-        return Mono.just(false); // 如果用户名或密码错误，返回 false
+        return userStore.delete(id, user)
+                .doOnNext(deleted -> {
+                    if (deleted) {
+                        LOGGER.info("User deleted: " + id);
+                    } else {
+                        LOGGER.info("User deletion failed: " + id); // 如果用户名或密码错误，返回 false
+                    }
+                })
+                .doOnError(e -> LOGGER.error("Failed to delete user: " + id, e));
     }
 }
@@ -0,0 +1,246 @@
+package com.dream.nick_server.service.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dream.nick_server.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 内存中的用户存储：全部用户保存在堆上，修改以日志结构持久化（见 {@link UserLog}）。
+ * 查找只访问内存；写操作在 bounded-elastic 线程上追加日志并等待 fsync，不占用订阅它的事件循环线程，
+ * 同时等待的写操作共用一次 fsync。
+ */
+public class LogUserStore implements UserStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogUserStore.class);
+
+    private final Map<String, User> userMap = new ConcurrentHashMap<>(); // 线程安全的用户映射表
+    // 用户名、电子邮件到用户 ID 的索引，注册和修改时以 putIfAbsent 占用，保证唯一
+    private final Map<String, String> usernameIndex = new ConcurrentHashMap<>();
+    private final Map<String, String> emailIndex = new ConcurrentHashMap<>();
+    private final UserLog userLog; // 用户数据的快照与修改日志
+
+    private LogUserStore(Path directory, ObjectMapper objectMapper, long compactBytes) throws IOException {
+        Map<String, User> loadedUsers = new HashMap<>();
+        this.userLog = UserLog.open(directory, objectMapper, compactBytes, loadedUsers);
+        LOGGER.info("Loaded {} users from {}", loadedUsers.size(), directory);
+        // 将读取到的用户数据放入用户映射表
+        userMap.putAll(loadedUsers);
+        loadedUsers.forEach((id, user) -> {
+            boolean usernameClaimed = claim(usernameIndex, user.getUsername(), id);
+            boolean emailClaimed = claim(emailIndex, user.getEmail(), id);
+            if (!usernameClaimed || !emailClaimed) {
+                LOGGER.warn("Duplicate username or email in file, user: {}", id);
+            }
+        });
+    }
+
+    /**
+     * 打开目录中的用户存储，读取快照并重放日志
+     *
+     * @param directory 存储目录，不存在时创建
+     * @param objectMapper 用户的 JSON 映射
+     * @param compactBytes 日志超过该字节数时在后台压缩，0 表示不自动压缩
+     * @return 用户存储
+     * @throws IOException 读取失败
+     */
+    public static LogUserStore open(Path directory, ObjectMapper objectMapper, long compactBytes) throws IOException {
+        return new LogUserStore(directory, objectMapper, compactBytes);
+    }
+
+    /**
+     * 新的存储目录以已有的用户文件作为初始快照，log 与 mapped 存储第一次打开时都会读取它。
+     * 目录中已有文件时不做任何修改
+     *
+     * @param directory 存储目录
+     * @param snapshot 用户文件
+     * @throws IOException 复制失败
+     */
+    public static void seed(Path directory, Path snapshot) throws IOException {
+        if (UserLog.seed(directory, snapshot)) {
+            LOGGER.info("Seeded {} from {}", directory, snapshot);
+        }
+    }
+
+    @Override
+    public Mono<User> findById(String id) {
+        return Mono.fromSupplier(() -> id == null ? null : userMap.get(id));
+    }
+
+    @Override
+    public Mono<User> findByUsername(String username) {
+        return Mono.fromSupplier(() -> find(usernameIndex, username, User::getUsername));
+    }
+
+    @Override
+    public Mono<User> findByEmail(String email) {
+        return Mono.fromSupplier(() -> find(emailIndex, email, User::getEmail));
+    }
+
+    @Override
+    public Mono<User> insert(User user) {
+        return Mono.defer(() -> {
+            String id = user.getId();
+            if (!claim(usernameIndex, user.getUsername(), id)) { // 如果用户名已存在
+                return Mono.empty();
+            }
+            if (!claim(emailIndex, user.getEmail(), id)) { // 如果电子邮件已被使用
+                release(usernameIndex, user.getUsername(), id);
+                return Mono.empty();
+            }
+            try {
+                userLog.put(id, user); // 追加到日志
+            } catch (IOException e) {
+                release(usernameIndex, user.getUsername(), id);
+                release(emailIndex, user.getEmail(), id);
+                return Mono.error(e);
+            }
+            userMap.put(id, user);
+            return durable(user);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<User> update(String id, User user) {
+        return update(id, null, user);
+    }
+
+    @Override
+    public Mono<User> update(String id, User expected, User user) {
+        return Mono.defer(() -> {
+            boolean[] updated = new boolean[1];
+            // 在该用户的映射项上比较、修改并追加日志，同一用户的修改和删除不会交错，日志中的顺序与修改顺序一致
+            try {
+                userMap.computeIfPresent(id, (key, current) -> {
+                    if (expected != null && !current.equals(expected)) {
+                        return current;
+                    }
+                    if (!claim(usernameIndex, user.getUsername(), id)) {
+                        return current;
+                    }
+                    if (!claim(emailIndex, user.getEmail(), id)) {
+                        releaseChanged(usernameIndex, user.getUsername(), current.getUsername(), id);
+                        return current;
+                    }
+                    try {
+                        userLog.put(id, user); // 追加到日志
+                    } catch (IOException e) {
+                        releaseChanged(usernameIndex, user.getUsername(), current.getUsername(), id);
+                        releaseChanged(emailIndex, user.getEmail(), current.getEmail(), id);
+                        throw new UncheckedIOException(e);
+                    }
+                    releaseChanged(usernameIndex, current.getUsername(), user.getUsername(), id);
+                    releaseChanged(emailIndex, current.getEmail(), user.getEmail(), id);
+                    updated[0] = true;
+                    return user;
+                });
+            } catch (UncheckedIOException e) {
+                return Mono.error(e.getCause());
+            }
+            return updated[0] ? durable(user) : Mono.empty();
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Mono<Boolean> delete(String id, User user) {
+        return Mono.defer(() -> {
+            boolean[] deleted = new boolean[1];
+            try {
+                userMap.computeIfPresent(id, (key, current) -> {
+                    if (!current.equals(user)) {
+                        return current;
+                    }
+                    try {
+                        userLog.delete(id); // 追加到日志
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    deleted[0] = true;
+                    return null;
+                });
+            } catch (UncheckedIOException e) {
+                return Mono.error(e.getCause());
+            }
+            if (!deleted[0]) {
+                return Mono.just(false);
+            }
+            release(usernameIndex, user.getUsername(), id);
+            release(emailIndex, user.getEmail(), id);
+            return durable(true);
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public void close() throws IOException {
+        userLog.close();
+    }
+
+    /**
+     * 等待修改记录落盘，在写操作所在的 bounded-elastic 线程上执行，同时等待的修改共用一次 fsync
+     *
+     * @param value 落盘后返回的值
+     */
+    private <T> Mono<T> durable(T value) {
+        return Mono.fromCallable(() -> {
+            userLog.sync();
+            return value;
+        });
+    }
+
+    /**
+     * 通过索引查找用户。索引先于用户映射表写入，两者不一致的短暂期间视为不存在
+     *
+     * @param index 索引
+     * @param key 用户名或电子邮件
+     * @param field 索引对应的用户属性
+     * @return 用户，不存在时返回 null
+     */
+    private User find(Map<String, String> index, String key, Function<User, String> field) {
+        String id = key == null ? null : index.get(key);
+        User user = id == null ? null : userMap.get(id);
+        return user != null && key.equals(field.apply(user)) ? user : null;
+    }
+
+    /**
+     * 为用户占用索引中的一项，空值不占用
+     *
+     * @return 是否占用成功，已被其他用户占用时返回 false
+     */
+    private static boolean claim(Map<String, String> index, String key, String id) {
+        if (key == null || key.isBlank()) {
+            return true;
+        }
+        String owner = index.putIfAbsent(key, id);
+        return owner == null || owner.equals(id);
+    }
+
+    /**
+     * 新旧值不同时释放不再使用的索引项
+     */
+    private static void releaseChanged(Map<String, String> index, String key, String kept, String id) {
+        if (!Objects.equals(key, kept)) {
+            release(index, key, id);
+        }
+    }
+
+    /**
+     * 释放用户占用的索引项
+     */
+    private static void release(Map<String, String> index, String key, String id) {
+        if (key != null) {
+            index.remove(key, id);
+        }
+    }
+}
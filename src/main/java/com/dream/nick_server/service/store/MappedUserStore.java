@@ -0,0 +1,484 @@
+package com.dream.nick_server.service.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dream.nick_server.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 内存映射文件中的用户存储（嵌入式键值文件）。
+ * 用户只保存在映射文件中，堆上只有用户 ID 到记录位置、用户名和电子邮件到用户 ID 的索引，
+ * 查找时从映射内存解码用户，因此用户很多时堆占用远小于 {@link LogUserStore}。
+ * 记录追加写入，每次写入后只把写入的区域刷到磁盘；文件写满时加倍重新映射，
+ * 失效的记录（被覆盖或删除）超过一半时把有效记录复制到下一代文件。
+ * 所有操作在专用的有界线程池上执行，写操作之间串行。
+ *
+ * 文件 users-N.dat：头部 [int 魔数][int 版本]，之后是一条条 {@link UserRecord}，末尾未使用的部分为零。
+ * 启动时校验失败的记录若长度头部完整、之后还有有效记录，则记录日志后跳过；只有末尾写了一半的记录被清零。
+ * 压缩时头部最后写入，头部无效的文件是未完成的压缩，启动时删除；单个文件最大 2 GB。
+ * 目录中还没有数据文件时，从 {@link LogUserStore} 的快照和日志导入用户。
+ */
+public class MappedUserStore implements UserStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedUserStore.class);
+
+    private static final String DATA_PREFIX = "users-";
+    private static final String DATA_SUFFIX = ".dat";
+    private static final int MAGIC = 0x4E554D53; // "NUMS"
+    private static final int VERSION = 1;
+    private static final int HEADER = 8; // 魔数 + 版本
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final int initialBytes; // 新文件映射的大小，也是开始压缩的最小文件大小
+    private final Scheduler scheduler;
+    // 用户名、电子邮件到用户 ID 的索引，只在写锁中修改
+    private final Map<String, String> usernameIndex = new ConcurrentHashMap<>();
+    private final Map<String, String> emailIndex = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile Mapping mapping;
+    // 以下只在写锁中访问
+    private FileChannel channel;
+    private long generation;
+    private int end; // 下一条记录写入的位置
+    private long liveBytes; // 有效记录的字节数
+
+    /**
+     * 当前的映射与其中各用户最新记录的位置。文件加倍时换成更大的映射并沿用位置表，压缩时两者一起替换
+     */
+    private static final class Mapping {
+        final MappedByteBuffer buffer;
+        final Map<String, Integer> offsets;
+
+        Mapping(MappedByteBuffer buffer, Map<String, Integer> offsets) {
+            this.buffer = buffer;
+            this.offsets = offsets;
+        }
+    }
+
+    private MappedUserStore(Path directory, ObjectMapper objectMapper, int initialBytes, int threads) {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.initialBytes = Math.max(initialBytes, 4096);
+        this.scheduler = Schedulers.newBoundedElastic(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "users-store");
+    }
+
+    /**
+     * 打开目录中的用户存储
+     *
+     * @param directory 存储目录，不存在时创建
+     * @param objectMapper 用户的 JSON 映射
+     * @param initialBytes 新文件映射的大小
+     * @param threads 执行存储操作的线程数，0 为 CPU 核数
+     * @return 用户存储
+     * @throws IOException 读取失败
+     */
+    public static MappedUserStore open(Path directory, ObjectMapper objectMapper, int initialBytes, int threads) throws IOException {
+        MappedUserStore store = new MappedUserStore(directory, objectMapper, initialBytes, threads);
+        try {
+            synchronized (store.writeLock) {
+                store.load();
+            }
+        } catch (IOException e) {
+            store.scheduler.dispose();
+            throw e;
+        }
+        LOGGER.info("Loaded {} users from {}", store.mapping.offsets.size(), store.dataFile(store.generation));
+        return store;
+    }
+
+    @Override
+    public Mono<User> findById(String id) {
+        return call(() -> read(id));
+    }
+
+    @Override
+    public Mono<User> findByUsername(String username) {
+        return call(() -> {
+            User user = username == null ? null : read(usernameIndex.get(username));
+            return user != null && username.equals(user.getUsername()) ? user : null;
+        });
+    }
+
+    @Override
+    public Mono<User> findByEmail(String email) {
+        return call(() -> {
+            User user = email == null ? null : read(emailIndex.get(email));
+            return user != null && email.equals(user.getEmail()) ? user : null;
+        });
+    }
+
+    @Override
+    public Mono<User> insert(User user) {
+        return call(() -> {
+            synchronized (writeLock) {
+                String id = user.getId();
+                if (mapping.offsets.containsKey(id)
+                        || taken(usernameIndex, user.getUsername(), id) || taken(emailIndex, user.getEmail(), id)) {
+                    return null;
+                }
+                put(id, user);
+                reindex(usernameIndex, null, user.getUsername(), id);
+                reindex(emailIndex, null, user.getEmail(), id);
+                compactIfSparse();
+                return user;
+            }
+        });
+    }
+
+    @Override
+    public Mono<User> update(String id, User user) {
+        return update(id, null, user);
+    }
+
+    @Override
+    public Mono<User> update(String id, User expected, User user) {
+        return call(() -> {
+            synchronized (writeLock) {
+                User current = read(id);
+                if (current == null || expected != null && !current.equals(expected)
+                        || taken(usernameIndex, user.getUsername(), id) || taken(emailIndex, user.getEmail(), id)) {
+                    return null;
+                }
+                put(id, user);
+                reindex(usernameIndex, current.getUsername(), user.getUsername(), id);
+                reindex(emailIndex, current.getEmail(), user.getEmail(), id);
+                compactIfSparse();
+                return user;
+            }
+        });
+    }
+
+    @Override
+    public Mono<Boolean> delete(String id, User user) {
+        return call(() -> {
+            synchronized (writeLock) {
+                User current = read(id);
+                if (current == null || !current.equals(user)) {
+                    return false;
+                }
+                int previous = mapping.offsets.get(id);
+                append(UserRecord.encode(UserRecord.DELETE, id, new byte[0]));
+                mapping.offsets.remove(id);
+                liveBytes -= recordLength(mapping.buffer, previous);
+                reindex(usernameIndex, current.getUsername(), null, id);
+                reindex(emailIndex, current.getEmail(), null, id);
+                compactIfSparse();
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.dispose();
+        synchronized (writeLock) {
+            channel.close();
+        }
+    }
+
+    private <T> Mono<T> call(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(scheduler);
+    }
+
+    /**
+     * 从映射内存读取用户。读到的位置超出手中的映射时，说明文件刚被加倍或压缩，换成最新的映射重试
+     */
+    private User read(String id) throws IOException {
+        if (id == null) {
+            return null;
+        }
+        while (true) {
+            Mapping current = mapping;
+            Integer offset = current.offsets.get(id);
+            if (offset == null) {
+                return null;
+            }
+            UserRecord record = offset + UserRecord.HEADER <= current.buffer.capacity()
+                    ? UserRecord.read(current.buffer.duplicate().position(offset))
+                    : null;
+            if (record != null && record.op == UserRecord.PUT && record.id.equals(id)) {
+                return objectMapper.readValue(record.body, User.class);
+            }
+            if (current == mapping) {
+                throw new IOException("Corrupted user record " + id + " in " + directory);
+            }
+        }
+    }
+
+    private void put(String id, User user) throws IOException {
+        int offset = append(UserRecord.encode(UserRecord.PUT, id, objectMapper.writeValueAsBytes(user)));
+        Integer previous = mapping.offsets.put(id, offset);
+        liveBytes += recordLength(mapping.buffer, offset);
+        if (previous != null) {
+            liveBytes -= recordLength(mapping.buffer, previous);
+        }
+    }
+
+    /**
+     * 在文件末尾写入一条记录并刷到磁盘，空间不够时加倍重新映射
+     *
+     * @return 记录的位置
+     */
+    private int append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        Mapping current = mapping;
+        if ((long) end + length > current.buffer.capacity()) {
+            long size = Math.max((long) current.buffer.capacity() * 2, (long) end + length);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("User store file is full: " + dataFile(generation));
+            }
+            current = new Mapping(channel.map(MapMode.READ_WRITE, 0, size), current.offsets);
+            mapping = current;
+        }
+        int offset = end;
+        current.buffer.put(offset, record, 0, length);
+        current.buffer.force(offset, length);
+        end += length;
+        return offset;
+    }
+
+    private static int recordLength(ByteBuffer buffer, int offset) {
+        return UserRecord.HEADER + buffer.getInt(offset);
+    }
+
+    /**
+     * 失效的记录超过一半时，把有效记录复制到下一代文件。新文件的头部最后写入，写入前崩溃时新文件在启动时被删除
+     */
+    private void compactIfSparse() throws IOException {
+        if (end <= initialBytes || liveBytes * 2 >= end - HEADER) {
+            return;
+        }
+        long next = generation + 1;
+        Path file = dataFile(next);
+        FileChannel nextChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            Mapping old = mapping;
+            MappedByteBuffer buffer = nextChannel.map(MapMode.READ_WRITE, 0, Math.max(initialBytes, HEADER + liveBytes * 2));
+            Map<String, Integer> offsets = new ConcurrentHashMap<>();
+            int position = HEADER;
+            for (Map.Entry<String, Integer> entry : old.offsets.entrySet()) {
+                int length = recordLength(old.buffer, entry.getValue());
+                buffer.put(position, old.buffer, entry.getValue(), length);
+                offsets.put(entry.getKey(), position);
+                position += length;
+            }
+            buffer.force();
+            buffer.putInt(0, MAGIC).putInt(4, VERSION);
+            buffer.force(0, HEADER);
+
+            Path previous = dataFile(generation);
+            channel.close();
+            channel = nextChannel;
+            generation = next;
+            end = position;
+            liveBytes = position - HEADER;
+            mapping = new Mapping(buffer, offsets);
+            deleteQuietly(previous); // 仍被映射时部分系统不能删除，下次启动时再删除
+            LOGGER.info("Compacted user store into {}, users: {}", file, offsets.size());
+        } catch (IOException e) {
+            nextChannel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * 打开最新一代有效的数据文件并建立索引；没有数据文件时创建第一代，并导入 {@link LogUserStore} 的数据
+     */
+    private void load() throws IOException {
+        Files.createDirectories(directory);
+        List<Long> generations = generations();
+        for (int i = generations.size() - 1; i >= 0 && channel == null; i--) {
+            long candidate = generations.get(i);
+            FileChannel opened = FileChannel.open(dataFile(candidate), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (opened.size() >= HEADER && validHeader(opened)) {
+                channel = opened;
+                generation = candidate;
+            } else {
+                opened.close();
+                LOGGER.warn("Discarding incomplete user store file {}", dataFile(candidate));
+            }
+        }
+        for (long old : generations) {
+            if (channel == null || old != generation) {
+                deleteQuietly(dataFile(old));
+            }
+        }
+        if (channel == null) {
+            create();
+            return;
+        }
+
+        MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(channel.size(), initialBytes));
+        Map<String, Integer> offsets = new ConcurrentHashMap<>();
+        ByteBuffer data = buffer.duplicate().position(HEADER);
+        int position = HEADER;
+        while (true) {
+            UserRecord record = UserRecord.read(data);
+            if (record == null) {
+                int next = UserRecord.nextValid(data, position);
+                if (next < 0) {
+                    break; // 末尾写了一半的记录，或已到末尾
+                }
+                LOGGER.warn("Skipping {} bytes of corrupt records at {} in {}", next - position, position, dataFile(generation));
+                data.position(next);
+                position = next;
+                continue;
+            }
+            if (record.op == UserRecord.PUT) {
+                offsets.put(record.id, position);
+            } else {
+                offsets.remove(record.id);
+            }
+            position = data.position();
+        }
+        end = position;
+        zeroTail(buffer);
+        mapping = new Mapping(buffer, offsets);
+        for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+            liveBytes += recordLength(buffer, entry.getValue());
+            User user = read(entry.getKey());
+            if (taken(usernameIndex, user.getUsername(), entry.getKey()) || taken(emailIndex, user.getEmail(), entry.getKey())) {
+                LOGGER.warn("Duplicate username or email in file, user: {}", entry.getKey());
+            }
+            reindex(usernameIndex, null, user.getUsername(), entry.getKey());
+            reindex(emailIndex, null, user.getEmail(), entry.getKey());
+        }
+    }
+
+    private void create() throws IOException {
+        generation = 1;
+        Path file = dataFile(generation);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        mapping = new Mapping(channel.map(MapMode.READ_WRITE, 0, initialBytes), new ConcurrentHashMap<>());
+        end = HEADER;
+
+        Map<String, User> imported = new HashMap<>();
+        UserLog.read(directory, objectMapper, imported);
+        for (Map.Entry<String, User> entry : imported.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+            reindex(usernameIndex, null, entry.getValue().getUsername(), entry.getKey());
+            reindex(emailIndex, null, entry.getValue().getEmail(), entry.getKey());
+        }
+        mapping.buffer.putInt(0, MAGIC).putInt(4, VERSION);
+        mapping.buffer.force();
+        if (!imported.isEmpty()) {
+            LOGGER.info("Imported {} users into {}", imported.size(), file);
+        }
+    }
+
+    private static boolean validHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        return header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+    }
+
+    /**
+     * 末尾写了一半的记录清零，之后追加的记录不会与它的残留混在一起
+     */
+    private void zeroTail(MappedByteBuffer buffer) {
+        int dirty = -1;
+        for (int i = end; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                dirty = i;
+                break;
+            }
+        }
+        if (dirty < 0) {
+            return;
+        }
+        LOGGER.warn("Discarding incomplete records after {} in {}", end, dataFile(generation));
+        byte[] zeros = new byte[8192];
+        for (int i = end; i < buffer.capacity(); i += zeros.length) {
+            buffer.put(i, zeros, 0, Math.min(zeros.length, buffer.capacity() - i));
+        }
+        buffer.force();
+    }
+
+    /**
+     * @return 键已被其他用户占用，空值不占用
+     */
+    private static boolean taken(Map<String, String> index, String key, String id) {
+        if (key == null || key.isBlank()) {
+            return false;
+        }
+        String owner = index.get(key);
+        return owner != null && !owner.equals(id);
+    }
+
+    /**
+     * 把用户在索引中的键从旧值换成新值
+     */
+    private static void reindex(Map<String, String> index, String oldKey, String newKey, String id) {
+        if (Objects.equals(oldKey, newKey)) {
+            return;
+        }
+        if (newKey != null && !newKey.isBlank()) {
+            index.put(newKey, id);
+        }
+        if (oldKey != null) {
+            index.remove(oldKey, id);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete old user store file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path dataFile(long generation) {
+        return directory.resolve(DATA_PREFIX + generation + DATA_SUFFIX);
+    }
+
+    /**
+     * @return 目录中各代数据文件，按代数升序
+     */
+    private List<Long> generations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(DATA_PREFIX) && name.endsWith(DATA_SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            generations.add(Long.parseLong(name.substring(DATA_PREFIX.length(), name.length() - DATA_SUFFIX.length())));
+                        } catch (NumberFormatException e) {
+                            LOGGER.warn("Ignoring unexpected file in user store directory: {}", name);
+                        }
+                    });
+        }
+        generations.sort(null);
+        return generations;
+    }
+}
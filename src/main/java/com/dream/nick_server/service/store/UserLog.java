@@ -0,0 +1,394 @@
+package com.dream.nick_server.service.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dream.nick_server.model.User;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 用户数据的日志结构存储。
+ * 每次注册、修改、删除只向日志追加一条记录，而不是重写整个用户文件；并发的写入共用一次 fsync（分组提交）。
+ * 日志超过 compact-bytes 后在后台压缩：换到下一代日志，把快照与旧日志合并成新的快照，再删除旧日志。
+ * 启动时读取快照并按顺序重放之后的日志。
+ *
+ * 目录内容：
+ * users.json      快照，与原来的用户文件格式相同（用户 ID -> 用户）
+ * users-N.log     第 N 代日志，头部 [int 魔数][int 版本]，之后是一条条 {@link UserRecord}
+ * 记录保存用户的完整内容，重放已经包含在快照中的记录不改变结果，因此压缩在任何一步崩溃都不会丢失数据；
+ * 末尾写了一半的记录在启动时被截掉；中间校验失败但长度完整、之后还有有效记录的记录记录日志后跳过。
+ * 同一用户的记录须按修改顺序追加，由调用方保证。
+ */
+final class UserLog implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UserLog.class);
+
+    static final String SNAPSHOT = "users.json";
+    private static final String LOG_PREFIX = "users-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int MAGIC = 0x4E55534C; // "NUSL"
+    private static final int VERSION = 1;
+    private static final int HEADER = 8; // 魔数 + 版本
+    private static final TypeReference<Map<String, User>> USERS = new TypeReference<>() {};
+
+    private final Path dir;
+    private final ObjectMapper objectMapper;
+    private final long compactBytes; // 日志超过该字节数时压缩，0 表示不自动压缩
+    private final Object syncLock = new Object(); // 串行化 fsync 与换代
+    private final Object compactLock = new Object(); // 串行化压缩
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private FileChannel channel; // 当前一代的日志
+    private FileChannel sealedChannel; // 换代后尚未 fsync 的上一代日志，只在 syncLock 中访问
+    private long generation;
+    private long position; // 当前日志已写入的长度
+    private long written; // 所有日志累计写入的字节数
+    private volatile long synced; // 其中已 fsync 的字节数
+
+    private UserLog(Path dir, ObjectMapper objectMapper, long compactBytes) {
+        this.dir = dir;
+        this.objectMapper = objectMapper;
+        this.compactBytes = compactBytes;
+    }
+
+    /**
+     * 打开目录中的用户存储，读取快照并重放日志
+     *
+     * @param dir 存储目录，不存在时创建
+     * @param objectMapper 用户的 JSON 映射
+     * @param compactBytes 日志超过该字节数时在后台压缩，0 表示不自动压缩
+     * @param users 读取到的用户放入其中
+     * @return 用户存储，后续记录追加到最新一代日志
+     * @throws IOException 读取失败
+     */
+    static UserLog open(Path dir, ObjectMapper objectMapper, long compactBytes, Map<String, User> users) throws IOException {
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(SNAPSHOT + ".tmp")); // 未完成的压缩
+        UserLog log = new UserLog(dir, objectMapper, compactBytes);
+        long end = log.load(Long.MAX_VALUE, users);
+        List<Long> generations = log.generations();
+        log.generation = generations.isEmpty() ? 1 : generations.get(generations.size() - 1);
+        log.channel = FileChannel.open(log.logFile(log.generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ);
+        try {
+            if (generations.isEmpty() || end < HEADER) {
+                startLog(log.channel);
+            } else if (end < log.channel.size()) {
+                LOGGER.warn("Discarding {} bytes of incomplete records in {}", log.channel.size() - end, log.logFile(log.generation));
+                log.channel.truncate(end);
+                log.channel.force(true);
+            }
+            log.position = log.channel.size();
+        } catch (IOException e) {
+            log.channel.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * 以已有的用户文件作为新存储目录的初始快照，目录中已有文件时不做任何修改
+     *
+     * @param dir 存储目录，不存在时创建
+     * @param snapshot 用户文件，格式与快照相同
+     * @return 是否复制了用户文件
+     * @throws IOException 复制失败
+     */
+    static boolean seed(Path dir, Path snapshot) throws IOException {
+        if (!Files.isRegularFile(snapshot)) {
+            return false;
+        }
+        if (Files.isDirectory(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                if (files.findAny().isPresent()) {
+                    return false;
+                }
+            }
+        }
+        Files.createDirectories(dir);
+        Files.copy(snapshot, dir.resolve(SNAPSHOT));
+        return true;
+    }
+
+    /**
+     * 只读取目录中的用户，不打开日志
+     *
+     * @param dir 存储目录
+     * @param objectMapper 用户的 JSON 映射
+     * @param users 读取到的用户放入其中
+     * @throws IOException 读取失败
+     */
+    static void read(Path dir, ObjectMapper objectMapper, Map<String, User> users) throws IOException {
+        if (Files.isDirectory(dir)) {
+            new UserLog(dir, objectMapper, 0).load(Long.MAX_VALUE, users);
+        }
+    }
+
+    /**
+     * 追加一条写入记录，不立即 fsync
+     *
+     * @param id 用户 ID
+     * @param user 用户的完整内容
+     * @throws IOException 写入失败
+     */
+    void put(String id, User user) throws IOException {
+        append(UserRecord.encode(UserRecord.PUT, id, objectMapper.writeValueAsBytes(user)));
+    }
+
+    /**
+     * 追加一条删除记录，不立即 fsync
+     *
+     * @param id 用户 ID
+     * @throws IOException 写入失败
+     */
+    void delete(String id) throws IOException {
+        append(UserRecord.encode(UserRecord.DELETE, id, new byte[0]));
+    }
+
+    private void append(ByteBuffer record) throws IOException {
+        boolean full;
+        synchronized (this) {
+            writeFully(record);
+            full = compactBytes > 0 && position - HEADER > compactBytes;
+        }
+        if (full && compacting.compareAndSet(false, true)) {
+            Schedulers.boundedElastic().schedule(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    LOGGER.error("Failed to compact user log in " + dir, e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 将已追加的记录 fsync 到磁盘。fsync 期间不阻塞新的追加；并发调用时只有第一个真正执行，
+     * 其余调用等待它完成后发现记录已落盘直接返回，从而把多次写入合并为一次 fsync。
+     *
+     * @throws IOException fsync 失败
+     */
+    void sync() throws IOException {
+        long end;
+        synchronized (this) {
+            end = written;
+        }
+        synchronized (syncLock) {
+            if (synced >= end) {
+                return;
+            }
+            FileChannel current;
+            synchronized (this) {
+                current = channel;
+                end = written;
+            }
+            forceSealed();
+            current.force(false);
+            synced = end;
+        }
+    }
+
+    /**
+     * fsync 并关闭换代时留下的上一代日志。换代后的 fsync 失败时它留到下一次 sync 重试，
+     * 不能只 fsync 新一代日志就认为之前的记录已经落盘。只在 syncLock 中调用
+     */
+    private void forceSealed() throws IOException {
+        if (sealedChannel != null) {
+            sealedChannel.force(false);
+            sealedChannel.close();
+            sealedChannel = null;
+        }
+    }
+
+    /**
+     * 压缩：换到下一代日志，把快照与之前各代日志合并成新的快照后删除旧日志。
+     * 压缩期间的写入记录在新一代日志中，不受影响。
+     * 新日志在 syncLock 与对象监视器之外创建并 fsync 头部，追加只在交换日志的几次赋值期间等待；
+     * 旧日志的 fsync 在 syncLock 中、对象监视器之外执行，等待落盘的写操作随后发现记录已经落盘。
+     *
+     * @throws IOException 写入失败
+     */
+    void compact() throws IOException {
+        synchronized (compactLock) {
+            long sealed;
+            synchronized (this) {
+                sealed = generation;
+            }
+            FileChannel next = FileChannel.open(logFile(sealed + 1), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                startLog(next);
+            } catch (IOException e) {
+                next.close();
+                throw e;
+            }
+            synchronized (syncLock) {
+                long end;
+                try {
+                    forceSealed(); // 上一次换代未能落盘的日志
+                } catch (IOException e) {
+                    next.close();
+                    throw e;
+                }
+                synchronized (this) {
+                    sealedChannel = channel;
+                    channel = next;
+                    generation = sealed + 1;
+                    position = HEADER;
+                    end = written;
+                }
+                forceSealed();
+                synced = end;
+            }
+
+            Map<String, User> users = new HashMap<>();
+            load(sealed, users);
+            Path tmp = dir.resolve(SNAPSHOT + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer bytes = ByteBuffer.wrap(objectMapper.writeValueAsBytes(users));
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+                out.force(true);
+            }
+            Files.move(tmp, dir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (long old : generations()) {
+                if (old <= sealed) {
+                    Files.deleteIfExists(logFile(old));
+                }
+            }
+            LOGGER.info("Compacted user log in {}, users: {}", dir, users.size());
+        }
+    }
+
+    /**
+     * @return 当前一代日志中记录的字节数
+     */
+    synchronized long size() {
+        return position - HEADER;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (compactLock) {
+            synchronized (syncLock) {
+                if (sealedChannel != null) {
+                    sealedChannel.close();
+                }
+            }
+            synchronized (this) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * 清空日志并写入头部，头部落盘后才开始追加记录
+     */
+    private static void startLog(FileChannel log) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(VERSION).flip();
+        log.truncate(0);
+        while (header.hasRemaining()) {
+            log.write(header, header.position());
+        }
+        log.force(true);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.write(buffer, position);
+            position += n;
+            written += n;
+        }
+    }
+
+    /**
+     * 读取快照并重放不超过指定代数的日志
+     *
+     * @return 最后一个日志中有效内容的长度，没有日志时为 0
+     */
+    private long load(long maxGeneration, Map<String, User> users) throws IOException {
+        Path snapshot = dir.resolve(SNAPSHOT);
+        if (Files.exists(snapshot) && Files.size(snapshot) > 0) {
+            users.putAll(objectMapper.readValue(snapshot.toFile(), USERS));
+        }
+        long end = 0;
+        for (long old : generations()) {
+            if (old <= maxGeneration) {
+                end = replay(logFile(old), users);
+            }
+        }
+        return end;
+    }
+
+    private long replay(Path file, Map<String, User> users) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (data.remaining() < HEADER) {
+            return 0; // 创建后尚未写完头部
+        }
+        if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+            throw new IOException("Not a user log: " + file);
+        }
+        while (true) {
+            UserRecord record = UserRecord.read(data);
+            if (record == null) {
+                int next = UserRecord.nextValid(data, data.position());
+                if (next < 0) {
+                    break; // 末尾写了一半的记录，或已到末尾
+                }
+                LOGGER.warn("Skipping {} bytes of corrupt records at {} in {}", next - data.position(), data.position(), file);
+                data.position(next);
+                continue;
+            }
+            if (record.op == UserRecord.PUT) {
+                users.put(record.id, objectMapper.readValue(record.body, User.class));
+            } else {
+                users.remove(record.id);
+            }
+        }
+        return data.position();
+    }
+
+    private Path logFile(long generation) {
+        return dir.resolve(LOG_PREFIX + generation + LOG_SUFFIX);
+    }
+
+    /**
+     * @return 目录中各代日志，按代数升序
+     */
+    private List<Long> generations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            generations.add(Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length())));
+                        } catch (NumberFormatException e) {
+                            LOGGER.warn("Ignoring unexpected file in user log directory: {}", name);
+                        }
+                    });
+        }
+        generations.sort(null);
+        return generations;
+    }
+}
@@ -0,0 +1,115 @@
+package com.dream.nick_server.service.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * 用户存储文件中的一条记录：写入保存用户的完整内容，删除只有用户 ID。
+ * 格式 [int 负载长度][int CRC32][负载: byte 操作, int ID 长度, 用户 ID UTF-8, 用户 JSON UTF-8（仅写入）]
+ */
+final class UserRecord {
+    static final byte PUT = 'P';
+    static final byte DELETE = 'D';
+    static final int HEADER = 8; // 负载长度 + CRC32
+
+    final byte op;
+    final String id;
+    final byte[] body; // 用户 JSON，删除记录为空
+    final int length; // 整条记录的字节数
+
+    private UserRecord(byte op, String id, byte[] body, int length) {
+        this.op = op;
+        this.id = id;
+        this.body = body;
+        this.length = length;
+    }
+
+    /**
+     * 编码一条记录
+     *
+     * @return 可直接写入的记录
+     */
+    static ByteBuffer encode(byte op, String id, byte[] body) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(5 + key.length + body.length);
+        payload.put(op).putInt(key.length).put(key).put(body).flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER + payload.remaining());
+        record.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload).flip();
+        return record;
+    }
+
+    /**
+     * 只根据头部的负载长度得到 position 处整条记录的字节数，不校验内容
+     *
+     * @param data 存储文件的内容
+     * @param position 记录的位置
+     * @return 记录的字节数；长度不合理或超出文件末尾时返回 -1
+     */
+    static int length(ByteBuffer data, int position) {
+        if (position < 0 || data.limit() - position < HEADER) {
+            return -1;
+        }
+        int length = data.getInt(position);
+        return length < 5 || length > data.limit() - position - HEADER ? -1 : HEADER + length;
+    }
+
+    /**
+     * 从校验失败的记录开始，按长度头部向后查找下一条有效记录。
+     * 记录按顺序追加，之后还有有效记录说明损坏的记录已经完整写入，只是内容损坏，可以跳过；
+     * 长度头部不合理或之后没有有效记录时是末尾写了一半的记录
+     *
+     * @param data 存储文件的内容
+     * @param position 校验失败的记录的位置
+     * @return 下一条有效记录的位置，没有时返回 -1
+     */
+    static int nextValid(ByteBuffer data, int position) {
+        int length = length(data, position);
+        while (length > 0) {
+            position += length;
+            if (read(data.duplicate().position(position)) != null) {
+                return position;
+            }
+            length = length(data, position);
+        }
+        return -1;
+    }
+
+    /**
+     * 读取 position 处的一条记录，成功时 position 移到记录之后
+     *
+     * @param data 存储文件的内容
+     * @return 记录；写了一半、校验失败或已到末尾（全零）时返回 null，position 不变
+     */
+    static UserRecord read(ByteBuffer data) {
+        int start = data.position();
+        if (data.remaining() < HEADER) {
+            return null;
+        }
+        int length = data.getInt(start);
+        int checksum = data.getInt(start + 4);
+        if (length < 5 || length > data.remaining() - HEADER) {
+            return null;
+        }
+        ByteBuffer payload = data.slice(start + HEADER, length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        byte op = payload.get();
+        int keyLength = payload.getInt();
+        if ((op != PUT && op != DELETE) || keyLength < 0 || keyLength > payload.remaining()) {
+            return null;
+        }
+        byte[] key = new byte[keyLength];
+        payload.get(key);
+        byte[] body = new byte[payload.remaining()];
+        payload.get(body);
+        data.position(start + HEADER + length);
+        return new UserRecord(op, new String(key, StandardCharsets.UTF_8), body, HEADER + length);
+    }
+}
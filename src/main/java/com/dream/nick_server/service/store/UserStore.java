@@ -0,0 +1,70 @@
+package com.dream.nick_server.service.store;
+
+import java.io.Closeable;
+
+import com.dream.nick_server.model.User;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 用户数据的存储，{@link com.dream.nick_server.service.IUserService} 的持久化层。
+ * 所有操作在订阅时执行，不阻塞调用线程；存储负责保证用户名和电子邮件唯一（空的电子邮件不参与），
+ * 写操作完成时数据已经落盘。通过 users.store.type 选择实现。
+ */
+public interface UserStore extends Closeable {
+
+    /**
+     * @param id 用户 ID
+     * @return 用户，不存在时为空
+     */
+    Mono<User> findById(String id);
+
+    /**
+     * @param username 用户名
+     * @return 用户，不存在时为空
+     */
+    Mono<User> findByUsername(String username);
+
+    /**
+     * @param email 电子邮件
+     * @return 用户，不存在时为空
+     */
+    Mono<User> findByEmail(String email);
+
+    /**
+     * 保存新用户
+     *
+     * @param user 用户，ID 不能为空
+     * @return 保存的用户；用户名或电子邮件已被使用时为空
+     */
+    Mono<User> insert(User user);
+
+    /**
+     * 替换已有用户的内容
+     *
+     * @param id 用户 ID
+     * @param user 新的用户内容
+     * @return 更新后的用户；用户不存在，或新的用户名、电子邮件已被其他用户使用时为空
+     */
+    Mono<User> update(String id, User user);
+
+    /**
+     * 只在用户当前的内容与给定内容一致时替换，比较与替换在同一个原子操作中完成，
+     * 期间对该用户的其他修改不会被覆盖
+     *
+     * @param id 用户 ID
+     * @param expected 用户当前的内容
+     * @param user 新的用户内容
+     * @return 更新后的用户；用户不存在、内容不一致，或新的用户名、电子邮件已被其他用户使用时为空
+     */
+    Mono<User> update(String id, User expected, User user);
+
+    /**
+     * 删除与给定内容一致的用户
+     *
+     * @param id 用户 ID
+     * @param user 用户当前的内容
+     * @return 是否删除；用户不存在或内容不一致时为 false
+     */
+    Mono<Boolean> delete(String id, User user);
+}
@@ -0,0 +1,252 @@
+package com.dream.nick_server.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * WebSocketMessageBody 的紧凑二进制编码，客户端通过子协议 SUBPROTOCOL 协商使用。
+ * 不经过 JSON 的转义与中间字符串，编码时直接把 UTF-8 字节写入会话的 DataBuffer（Netty 下为池化缓冲区），
+ * 解码时直接从收到的 DataBuffer 中读取各个字段。
+ * <p>
+ * 布局：版本字节，之后依次为 type、key、message 三个字符串，value 映射，ops 映射列表。
+ * 带请求编号的消息使用 VERSION_WITH_ID，版本字节之后先写入编号字符串；
+ * 不带编号的消息仍为 VERSION，只收发不带编号消息的客户端不受影响。
+ * 长度均为变长整数（varint），写入长度加一，0 表示 null：
+ * 字符串为长度与 UTF-8 字节，映射为条目数与交替的键和值，列表为元素数与各个映射。
+ * 不成对的代理字符编码为 '?'。
+ */
+@Component
+public class BinaryMessageCodec {
+    public static final String SUBPROTOCOL = "nick.files.binary.v1";
+    static final int VERSION = 1;
+    static final int VERSION_WITH_ID = 2;
+
+    /**
+     * 将消息编码到新分配的缓冲区中
+     *
+     * @param body 消息
+     * @param factory 会话的缓冲区工厂
+     * @return 编码后的缓冲区，由调用方负责释放或发送
+     */
+    public DataBuffer encode(WebSocketMessageBody body, DataBufferFactory factory) {
+        DataBuffer buffer = factory.allocateBuffer(estimate(body));
+        try {
+            if (body.getId() == null) {
+                buffer.write((byte) VERSION);
+            } else {
+                buffer.write((byte) VERSION_WITH_ID);
+                writeString(buffer, body.getId());
+            }
+            writeString(buffer, body.getType());
+            writeString(buffer, body.getKey());
+            writeString(buffer, body.getMessage());
+            writeMap(buffer, body.getValue());
+            List<Map<String, String>> ops = body.getOps();
+            writeLength(buffer, ops == null ? -1 : ops.size());
+            if (ops != null) {
+                for (Map<String, String> op : ops) {
+                    writeMap(buffer, op);
+                }
+            }
+            return buffer;
+        } catch (RuntimeException e) {
+            DataBufferUtils.release(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * 从缓冲区中解码消息，不改变缓冲区的引用计数
+     *
+     * @param buffer 收到的二进制帧
+     * @return 消息
+     * @throws IllegalArgumentException 帧格式错误
+     */
+    public WebSocketMessageBody decode(DataBuffer buffer) {
+        int version = buffer.readableByteCount() < 1 ? -1 : buffer.read();
+        if (version != VERSION && version != VERSION_WITH_ID) {
+            throw new IllegalArgumentException("Unsupported frame version");
+        }
+        WebSocketMessageBody body = new WebSocketMessageBody();
+        if (version == VERSION_WITH_ID) {
+            body.setId(readString(buffer));
+        }
+        body.setType(readString(buffer));
+        body.setKey(readString(buffer));
+        body.setMessage(readString(buffer));
+        body.setValue(readMap(buffer));
+        int count = readLength(buffer);
+        if (count >= 0) {
+            List<Map<String, String>> ops = new ArrayList<>(Math.min(count, buffer.readableByteCount()));
+            for (int i = 0; i < count; i++) {
+                ops.add(readMap(buffer));
+            }
+            body.setOps(ops);
+        }
+        if (buffer.readableByteCount() > 0) {
+            throw new IllegalArgumentException("Trailing bytes in frame");
+        }
+        return body;
+    }
+
+    /**
+     * 预估编码后的大小，ASCII 内容恰好足够，其余情况缓冲区会自动扩容
+     */
+    private static int estimate(WebSocketMessageBody body) {
+        int size = 16 + length(body.getId()) + length(body.getType()) + length(body.getKey()) + length(body.getMessage()) + length(body.getValue());
+        if (body.getOps() != null) {
+            for (Map<String, String> op : body.getOps()) {
+                size += length(op);
+            }
+        }
+        return size;
+    }
+
+    private static int length(String text) {
+        return text == null ? 1 : text.length() + 2;
+    }
+
+    private static int length(Map<String, String> map) {
+        if (map == null) {
+            return 1;
+        }
+        int size = 2;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            size += length(entry.getKey()) + length(entry.getValue());
+        }
+        return size;
+    }
+
+    private static void writeMap(DataBuffer buffer, Map<String, String> map) {
+        writeLength(buffer, map == null ? -1 : map.size());
+        if (map != null) {
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                writeString(buffer, entry.getKey());
+                writeString(buffer, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 写入 UTF-8 字节长度与内容，逐个字符直接编码到缓冲区
+     */
+    private static void writeString(DataBuffer buffer, String text) {
+        if (text == null) {
+            writeLength(buffer, -1);
+            return;
+        }
+        int bytes = utf8Length(text);
+        writeLength(buffer, bytes);
+        buffer.ensureWritable(bytes);
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.write((byte) c);
+            } else if (c < 0x800) {
+                buffer.write((byte) (0xC0 | (c >> 6)));
+                buffer.write((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int code = Character.toCodePoint(c, text.charAt(++i));
+                buffer.write((byte) (0xF0 | (code >> 18)));
+                buffer.write((byte) (0x80 | ((code >> 12) & 0x3F)));
+                buffer.write((byte) (0x80 | ((code >> 6) & 0x3F)));
+                buffer.write((byte) (0x80 | (code & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.write((byte) '?'); // 不成对的代理字符
+            } else {
+                buffer.write((byte) (0xE0 | (c >> 12)));
+                buffer.write((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.write((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * 与 writeString 的编码方式一致的 UTF-8 字节数
+     */
+    static int utf8Length(String text) {
+        int bytes = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static void writeLength(DataBuffer buffer, int length) {
+        int value = length + 1; // 0 表示 null
+        while ((value & ~0x7F) != 0) {
+            buffer.write((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.write((byte) value);
+    }
+
+    private static Map<String, String> readMap(DataBuffer buffer) {
+        int count = readLength(buffer);
+        if (count < 0) {
+            return null;
+        }
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            map.put(readString(buffer), readString(buffer));
+        }
+        return map;
+    }
+
+    private static String readString(DataBuffer buffer) {
+        int bytes = readLength(buffer);
+        if (bytes < 0) {
+            return null;
+        }
+        if (bytes > buffer.readableByteCount()) {
+            throw new IllegalArgumentException("Truncated frame");
+        }
+        int position = buffer.readPosition();
+        String text = buffer.toString(position, bytes, StandardCharsets.UTF_8);
+        buffer.readPosition(position + bytes);
+        return text;
+    }
+
+    /**
+     * @return 长度，null 时为 -1
+     */
+    private static int readLength(DataBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (buffer.readableByteCount() < 1) {
+                throw new IllegalArgumentException("Truncated frame");
+            }
+            byte b = buffer.read();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IllegalArgumentException("Length out of range");
+                }
+                return value - 1;
+            }
+        }
+        throw new IllegalArgumentException("Malformed length");
+    }
+}
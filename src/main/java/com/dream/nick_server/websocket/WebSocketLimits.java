@@ -0,0 +1,223 @@
+package com.dream.nick_server.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CorruptedWebSocketFrameException;
+import io.netty.handler.codec.http.websocketx.WebSocketCloseStatus;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameEncoder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebSocket 会话的流量限制，所有会话共享。
+ * <ul>
+ * <li>帧大小：超过 max-frame-bytes 的消息（合并分片后）以 1009 关闭会话，其他格式错误的帧以解码器给出的状态关闭；</li>
+ * <li>处理中的请求：每个会话的上限由各处理器以背压实现，全局超过 max-in-flight 时新请求直接回复 Server busy；</li>
+ * <li>发送缓冲：连接的发送缓冲超过 high-water-bytes 后会话停止发送，背压传回接收端，不再读取新的请求；
+ * 持续 stall-timeout-ms 仍未降下来时认为客户端不再读取，以 1008 关闭连接。</li>
+ * </ul>
+ * 每种限制被触发的次数记录在 websocket.limit.reached 计数器中，以 limit 标签区分。
+ */
+@Component
+public class WebSocketLimits {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketLimits.class);
+
+    public static final String FRAME_SIZE = "frame-size";
+    public static final String SESSION_IN_FLIGHT = "session-in-flight";
+    public static final String GLOBAL_IN_FLIGHT = "global-in-flight";
+    public static final String OUTBOUND = "outbound";
+
+    public static final CloseStatus OUTBOUND_STALLED = CloseStatus.POLICY_VIOLATION.withReason("Outbound buffer full");
+    public static final CloseStatus FRAME_TOO_BIG = CloseStatus.TOO_BIG_TO_PROCESS.withReason("Frame too big");
+    public static final String BUSY = "Server busy"; // 全局处理中的请求达到上限时的错误原因
+    private static final String STALL_HANDLER = "websocketOutboundStall";
+
+    private final int maxFrameBytes; // 一条消息的最大字节数
+    private final int maxInFlight; // 所有会话同时处理的请求上限
+    private final int highWaterBytes; // 每个连接的发送缓冲上限
+    private final long stallTimeoutMs; // 发送缓冲满后等待客户端读取的时间，0 表示不关闭
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<String, Counter> reached;
+
+    public WebSocketLimits(@Value("${websocket.max-frame-bytes:1048576}") int maxFrameBytes,
+                           @Value("${websocket.max-in-flight:1024}") int maxInFlight,
+                           @Value("${websocket.outbound.high-water-bytes:1048576}") int highWaterBytes,
+                           @Value("${websocket.outbound.stall-timeout-ms:30000}") long stallTimeoutMs,
+                           MeterRegistry meterRegistry) {
+        this.maxFrameBytes = maxFrameBytes;
+        this.maxInFlight = maxInFlight;
+        this.highWaterBytes = highWaterBytes;
+        this.stallTimeoutMs = stallTimeoutMs;
+        this.reached = Map.of(
+                FRAME_SIZE, counter(meterRegistry, FRAME_SIZE),
+                SESSION_IN_FLIGHT, counter(meterRegistry, SESSION_IN_FLIGHT),
+                GLOBAL_IN_FLIGHT, counter(meterRegistry, GLOBAL_IN_FLIGHT),
+                OUTBOUND, counter(meterRegistry, OUTBOUND));
+        Gauge.builder("websocket.in-flight", inFlight, AtomicInteger::get)
+                .description("WebSocket requests currently being handled")
+                .register(meterRegistry);
+        LOGGER.info("WebSocket limits, frame: {} bytes, in flight: {}, outbound high water: {} bytes, stall timeout: {} ms",
+                maxFrameBytes, maxInFlight, highWaterBytes, stallTimeoutMs);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String limit) {
+        return Counter.builder("websocket.limit.reached")
+                .description("Times a WebSocket flow-control limit was hit")
+                .tag("limit", limit)
+                .register(meterRegistry);
+    }
+
+    public int getMaxFrameBytes() {
+        return maxFrameBytes;
+    }
+
+    public int getHighWaterBytes() {
+        return highWaterBytes;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 记录一次限制被触发
+     *
+     * @param limit 限制的名称
+     */
+    public void reached(String limit) {
+        reached.get(limit).increment();
+    }
+
+    /**
+     * @return 指定限制被触发的次数
+     */
+    public double count(String limit) {
+        return reached.get(limit).count();
+    }
+
+    /**
+     * 接收会话的消息，消息超过帧大小上限时记录并以 1009 关闭会话；
+     * 其他格式错误的帧（保留位、操作码、掩码、UTF-8 等）不计入帧大小限制，以解码器给出的状态关闭
+     *
+     * @param session 会话
+     * @return 收到的消息
+     */
+    public Flux<WebSocketMessage> receive(WebSocketSession session) {
+        return session.receive()
+                .onErrorResume(WebSocketLimits::isFrameTooBig, e -> {
+                    reached(FRAME_SIZE);
+                    LOGGER.warn("[LIMIT] Session {} sent a frame over {} bytes", session.getId(), maxFrameBytes);
+                    return session.close(FRAME_TOO_BIG).then(Mono.empty());
+                })
+                .onErrorResume(CorruptedWebSocketFrameException.class, e -> {
+                    WebSocketCloseStatus status = e.closeStatus();
+                    LOGGER.warn("[PROTOCOL] Session {} sent a malformed frame: {}", session.getId(), e.getMessage());
+                    return session.close(new CloseStatus(status.code(), status.reasonText())).then(Mono.empty());
+                });
+    }
+
+    /**
+     * 合并分片后的消息超过上限时聚合器抛出 TooLongFrameException，单个帧超过上限时解码器抛出状态为 1009 的
+     * CorruptedWebSocketFrameException；解码器的其他异常是协议错误，与大小无关
+     */
+    static boolean isFrameTooBig(Throwable e) {
+        return e instanceof TooLongFrameException
+                || e instanceof CorruptedWebSocketFrameException corrupted
+                        && corrupted.closeStatus().code() == WebSocketCloseStatus.MESSAGE_TOO_BIG.code();
+    }
+
+    /**
+     * 在全局处理中的请求数量以内执行请求，超过上限时不执行，直接返回 busy
+     *
+     * @param request 请求，订阅时才开始执行
+     * @param busy 超过上限时返回的消息
+     * @return 请求的结果
+     */
+    public <T> Flux<T> inFlight(Flux<T> request, Supplier<T> busy) {
+        return Flux.defer(() -> {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                reached(GLOBAL_IN_FLIGHT);
+                return Flux.just(busy.get());
+            }
+            return request.doFinally(signal -> inFlight.decrementAndGet());
+        });
+    }
+
+    /**
+     * 监视连接的发送缓冲：超过 high-water-bytes 后持续 stall-timeout-ms 仍未降下来时，
+     * 认为客户端不再读取，记录后关闭连接（WebSocket 连接先发送 1008 关闭帧）。
+     *
+     * @param channel 新建立的连接
+     */
+    public void watch(Channel channel) {
+        if (stallTimeoutMs > 0) {
+            channel.pipeline().addFirst(STALL_HANDLER, new OutboundStallHandler());
+        }
+    }
+
+    /**
+     * 连接变为不可写时开始计时，恢复可写时取消
+     */
+    private final class OutboundStallHandler extends ChannelInboundHandlerAdapter {
+        private ScheduledFuture<?> check; // 只在连接的事件循环上访问
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            if (ctx.channel().isWritable()) {
+                cancel();
+            } else if (check == null) {
+                check = ctx.executor().schedule(() -> stalled(ctx), stallTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            cancel();
+            super.channelInactive(ctx);
+        }
+
+        private void cancel() {
+            if (check != null) {
+                check.cancel(false);
+                check = null;
+            }
+        }
+
+        private void stalled(ChannelHandlerContext ctx) {
+            check = null;
+            Channel channel = ctx.channel();
+            if (channel.isWritable() || !channel.isActive()) {
+                return;
+            }
+            reached(OUTBOUND);
+            LOGGER.warn("[LIMIT] Connection {} stopped reading for {} ms", channel.remoteAddress(), stallTimeoutMs);
+            if (channel.pipeline().get(WebSocketFrameEncoder.class) != null) {
+                // 发送缓冲已满，关闭帧尽力发送，不等待写出
+                channel.writeAndFlush(new CloseWebSocketFrame(OUTBOUND_STALLED.getCode(), OUTBOUND_STALLED.getReason()));
+            }
+            channel.close();
+        }
+    }
+}
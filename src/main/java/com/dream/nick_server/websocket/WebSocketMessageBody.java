@@ -1,15 +1,18 @@
 package com.dream.nick_server.websocket;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * WebSocketMessageBody 类用于封装 WebSocket 消息的内容，并提供将其转换为 JSON 字符串和从 JSON 字符串反序列化的方法。
+ * 编解码使用共享的 WebSocketMessageCodec，不再为每条消息创建 ObjectMapper。
  */
 public class WebSocketMessageBody {
     private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketMessageBody.class);
@@ -22,6 +25,10 @@ public class WebSocketMessageBody {
     private String key; // 消息的关键字
     private String message; // 消息内容
     private Map<String, String> value; // 附带的值
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<Map<String, String>> ops; // 批量操作列表，仅 file_apply_batch 使用
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String id; // 客户端生成的请求编号，响应原样带回，用于匹配并发请求的响应
 
     // 无参构造函数，供 Jackson 反序列化使用
     public WebSocketMessageBody() {
@@ -35,6 +42,11 @@ public class WebSocketMessageBody {
         this.value = value;
     }
 
+    private WebSocketMessageBody(String type, String key, String message, Map<String, String> value, List<Map<String, String>> ops) {
+        this(type, key, message, value);
+        this.ops = ops;
+    }
+
     // Getter 和 Setter 方法
 
     public String getType() {
@@ -68,48 +80,90 @@ public class WebSocketMessageBody {
     public void setValue(Map<String, String> value) {
         this.value = value;
     }
+
+    public List<Map<String, String>> getOps() {
+        return ops;
+    }
+
+    public void setOps(List<Map<String, String>> ops) {
+        this.ops = ops;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * 带上请求编号的副本，其余字段与本消息共享
+     *
+     * @param id 请求编号
+     * @return 编号相同时返回本消息，否则返回副本
+     */
+    public WebSocketMessageBody withId(String id) {
+        if (Objects.equals(this.id, id)) {
+            return this;
+        }
+        WebSocketMessageBody copy = new WebSocketMessageBody(type, key, message, value, ops);
+        copy.id = id;
+        return copy;
+    }
     
     public String toString() {
-        return "WebSocketMessageBody [type=" + type + ", key=" + key + ", message=" + message + ", value=" + value + "]";
+        return "WebSocketMessageBody [type=" + type + ", key=" + key + ", message=" + message + ", value=" + value
+                + (id == null ? "" : ", id=" + id) + "]";
     }
 
     /**
-     * 创建一个成功类型的 WebSocket 消息并转换为 JSON 字符串。
+     * 创建一个成功类型的 WebSocket 消息，由发送方按会话的协议编码。
      * 
-     * @param key 消息的关键字
      * @param message 消息内容
      * @param value 消息附带的值
-     * @return JSON 字符串格式的消息
+     * @return 消息
      */
-    public static String success(String message, Map<String, String> value) {
+    public static WebSocketMessageBody success(String message, Map<String, String> value) {
         return createMessage(SUCCESS, UTF_8, message, value);
     }
 
     /**
-     * 创建一个错误类型的 WebSocket 消息并转换为 JSON 字符串。
-     * 
-     * @param key 消息的关键字
+     * 创建一个带操作列表的成功类型 WebSocket 消息。
+     *
      * @param message 消息内容
      * @param value 消息附带的值
-     * @return JSON 字符串格式的消息
+     * @param ops 操作列表
+     * @return 消息
      */
-    public static String error(String message, String reason) {
+    public static WebSocketMessageBody success(String message, Map<String, String> value, List<Map<String, String>> ops) {
+        LOGGER.trace("Creating WebSocketMessageBody with message {}, value {} and {} ops", message, value, ops.size());
+        return new WebSocketMessageBody(SUCCESS, UTF_8, message, value, ops);
+    }
+
+    /**
+     * 创建一个错误类型的 WebSocket 消息。
+     * 
+     * @param message 消息内容
+     * @param reason 错误原因
+     * @return 消息
+     */
+    public static WebSocketMessageBody error(String message, String reason) {
         return createMessage(ERROR, UTF_8, message, Map.of("reason", reason));
     }
 
     /**
-     * 创建 WebSocket 消息并将其转换为 JSON 字符串。
+     * 创建 WebSocket 消息。
      * 
      * @param type 消息类型
      * @param key 消息的关键字
      * @param message 消息内容
      * @param value 消息附带的值
-     * @return JSON 字符串格式的消息
+     * @return 消息
      */
-    private static String createMessage(String type, String key, String message, Map<String, String> value) {
-        LOGGER.debug("Creating WebSocketMessageBody with type {}, key {}, message {}, and value {}", type, key, message, value);
-        WebSocketMessageBody messageBody = new WebSocketMessageBody(type, key, message, value);
-        return messageBody.toJson();
+    private static WebSocketMessageBody createMessage(String type, String key, String message, Map<String, String> value) {
+        LOGGER.trace("Creating WebSocketMessageBody with type {}, key {}, message {}, and value {}", type, key, message, value);
+        return new WebSocketMessageBody(type, key, message, value);
     }
 
     /**
@@ -117,9 +171,9 @@ public class WebSocketMessageBody {
      * 
      * @return JSON 字符串格式的消息
      */
-    private String toJson() {
+    public String toJson() {
         try {
-            return new ObjectMapper().writeValueAsString(this);
+            return WebSocketMessageCodec.shared().write(this);
         } catch (JsonProcessingException e) {
             LOGGER.error("Error while converting WebSocketMessageBody to JSON: {}", e.getMessage(), e);
             return null;
@@ -134,8 +188,8 @@ public class WebSocketMessageBody {
      */
     public static WebSocketMessageBody fromJson(String json) {
         try {
-            WebSocketMessageBody messageBody = new ObjectMapper().readValue(json, WebSocketMessageBody.class);
-            LOGGER.debug("Converting JSON to WebSocketMessageBody: {}", messageBody);
+            WebSocketMessageBody messageBody = WebSocketMessageCodec.shared().read(json);
+            LOGGER.trace("Converting JSON to WebSocketMessageBody: {}", messageBody);
             return messageBody;
         } catch (JsonMappingException e) {
             LOGGER.error("Error while mapping JSON to WebSocketMessageBody: {}", e.getMessage(), e);
@@ -0,0 +1,101 @@
+package com.dream.nick_server.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * WebSocketMessageBody 与 JSON 之间的编解码器。
+ * 使用 Spring 配置的 ObjectMapper 预先创建针对消息类型的 ObjectReader 与 ObjectWriter，
+ * 二者线程安全，序列化器只在第一次使用时建立，之后所有会话的每条消息都复用同一份缓存。
+ * WebSocketMessageBody 的静态方法通过 shared() 使用同一个实例，
+ * Spring 容器启动之前（例如单元测试中）使用默认配置的 ObjectMapper。
+ * 收到的帧直接从 DataBuffer 的字节解析，不先解码为字符串。
+ */
+@Component
+public class WebSocketMessageCodec {
+    private static volatile WebSocketMessageCodec shared = new WebSocketMessageCodec(new ObjectMapper());
+
+    private final JsonFactory factory;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+
+    public WebSocketMessageCodec(ObjectMapper mapper) {
+        this.factory = mapper.getFactory();
+        this.reader = mapper.readerFor(WebSocketMessageBody.class);
+        this.writer = mapper.writerFor(WebSocketMessageBody.class);
+    }
+
+    /**
+     * 容器创建的实例替换默认实例，供静态方法使用
+     */
+    @PostConstruct
+    public void register() {
+        shared = this;
+    }
+
+    /**
+     * @return 当前共享的编解码器
+     */
+    public static WebSocketMessageCodec shared() {
+        return shared;
+    }
+
+    /**
+     * 将消息序列化为 JSON 字符串
+     *
+     * @param body 消息
+     * @return JSON 字符串
+     * @throws JsonProcessingException 序列化失败
+     */
+    public String write(WebSocketMessageBody body) throws JsonProcessingException {
+        return writer.writeValueAsString(body);
+    }
+
+    /**
+     * 将 JSON 字符串反序列化为消息
+     *
+     * @param json JSON 字符串
+     * @return 消息
+     * @throws JsonProcessingException JSON 格式错误或与消息结构不符
+     */
+    public WebSocketMessageBody read(String json) throws JsonProcessingException {
+        return reader.readValue(json);
+    }
+
+    /**
+     * 从收到的帧的缓冲区中直接解析消息，不改变缓冲区的引用计数。
+     * 连续的缓冲区交给非阻塞解析器按字节读取，省去 getPayloadAsText 的字符串；
+     * 由多段组成的缓冲区（如 Netty 的组合缓冲区）以输入流的方式读取，同样不复制字节。
+     *
+     * @param buffer 收到的文本帧
+     * @return 消息
+     * @throws IOException JSON 格式错误或与消息结构不符
+     */
+    public WebSocketMessageBody read(DataBuffer buffer) throws IOException {
+        try (DataBuffer.ByteBufferIterator buffers = buffer.readableByteBuffers()) {
+            ByteBuffer first = buffers.hasNext() ? buffers.next() : ByteBuffer.allocate(0);
+            if (!buffers.hasNext()) {
+                try (JsonParser parser = factory.createNonBlockingByteBufferParser()) {
+                    ByteBufferFeeder feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+                    feeder.feedInput(first);
+                    feeder.endOfInput(); // 整帧已经到达，解析器不会返回 NOT_AVAILABLE
+                    return reader.readValue(parser);
+                }
+            }
+        }
+        return reader.readValue(buffer.asInputStream());
+    }
+}
@@ -5,7 +5,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.dream.nick_server.websocket.WebSocketLimits;
+
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -21,6 +27,10 @@ public class EchoHandler implements WebSocketHandler {
     @Autowired
     private EchoServer echoServer;
 
+    // 帧大小的限制
+    @Autowired
+    private WebSocketLimits limits;
+
     /**
      * 处理 WebSocket 会话中的消息。
      *
@@ -29,25 +39,32 @@ public class EchoHandler implements WebSocketHandler {
      */
     @Override
     public Mono<Void> handle(final WebSocketSession session) {
+        String mode = UriComponentsBuilder.fromUri(session.getHandshakeInfo().getUri()).build()
+                .getQueryParams().getFirst(EchoServer.MODE_KEY);
         // 记录 WebSocket 连接建立的信息
-        LOGGER.info("Echo WebSocket connection established");
+        LOGGER.info("Echo WebSocket connection established, mode: {}", mode == null ? EchoServer.MODE_JSON : mode);
+
+        Flux<WebSocketMessage> inbound = limits.receive(session);
+        Flux<WebSocketMessage> outbound;
+        if (EchoServer.MODE_RAW.equals(mode)) {
+            // 原样回显，用于测量传输本身的上限
+            outbound = echoServer.reflect(inbound);
+        } else if (EchoServer.MODE_BATCH.equals(mode)) {
+            // 时间窗口内的回显合并为一帧
+            outbound = echoServer.aggregate(inbound, session.bufferFactory());
+        } else {
+            outbound = inbound.map(msg -> {
+                // 通过 EchoServer 直接从缓冲区解析消息并生成响应
+                String response = echoServer.answer(msg.getPayload());
+                LOGGER.trace("Response: {}", response);
+
+                // 返回 WebSocket 文本消息
+                return session.textMessage(response);
+            });
+        }
 
         // 处理消息的发送和接收
-        return session.send(
-                session.receive()
-                        .map(msg -> {
-                            // 读取接收到的消息
-                            String message = msg.getPayloadAsText();
-                            LOGGER.debug("Received: {}", message);
-
-                            // 通过 EchoServer 处理消息并生成响应
-                            String response = echoServer.answer(message);
-                            LOGGER.debug("Response: {}", response);
-
-                            // 返回 WebSocket 文本消息
-                            return session.textMessage(response);
-                        })
-        )
+        return session.send(outbound)
         // 连接关闭时的处理
         .doOnTerminate(() -> LOGGER.info("WebSocket connection closed"));
     }
@@ -1,13 +1,32 @@
 package com.dream.nick_server.websocket.echo;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketMessage;
 
 import com.dream.nick_server.websocket.WebSocketMessageBody;
+import com.dream.nick_server.websocket.WebSocketMessageCodec;
+
+import reactor.core.publisher.Flux;
 
 /**
  * 处理 WebSocket 消息的服务类，用于回显消息。
+ * 连接地址的 mode 参数选择回显方式，用于压测时测量传输本身的上限：
+ * <ul>
+ * <li>json（默认）：解析消息并回复 RESPONSE；</li>
+ * <li>raw：不解析，直接把收到的帧原样发回，缓冲区只增加引用计数，不复制；</li>
+ * <li>batch：同 raw，但把时间窗口内收到的帧以换行连接合并为一帧发回，减少帧与刷新的次数。</li>
+ * </ul>
  */
 @Component
 public class EchoServer {
@@ -18,21 +37,100 @@ public class EchoServer {
     // 使用 SLF4J 记录日志
     private static final Logger LOGGER = LoggerFactory.getLogger(EchoServer.class);
 
+    // 回显方式，通过连接地址的 mode 参数选择
+    public static final String MODE_KEY = "mode";
+    public static final String MODE_JSON = "json";
+    public static final String MODE_RAW = "raw";
+    public static final String MODE_BATCH = "batch";
+
+    private static final byte[] SEPARATOR = {'\n'}; // batch 模式中帧之间的分隔符
+
+    private final WebSocketMessageCodec codec; // 共享的消息编解码器
+    private final Duration batchWindow; // batch 模式合并回复的时间窗口
+    private final int batchMaxMessages; // batch 模式一帧最多合并的消息数
+
+    public EchoServer(WebSocketMessageCodec codec,
+                      @Value("${echo.batch.window-ms:5}") long batchWindowMs,
+                      @Value("${echo.batch.max-messages:64}") int batchMaxMessages) {
+        this.codec = codec;
+        this.batchWindow = Duration.ofMillis(Math.max(1, batchWindowMs));
+        this.batchMaxMessages = Math.max(1, batchMaxMessages);
+    }
+
     /**
      * 处理收到的消息并返回响应。
      *
-     * @param json 收到的消息的 JSON 字符串
+     * @param payload 收到的文本帧的缓冲区，直接按字节解析
      * @return 回显的消息
      */
-    public String answer(String json) {
-        LOGGER.debug("[RECEIVED]: " + json);
-        // 将 JSON 字符串转换为 WebSocketMessageBody 对象
-        WebSocketMessageBody webSocketMessageBody = WebSocketMessageBody.fromJson(json);
+    public String answer(DataBuffer payload) {
+        // 直接从缓冲区解析为 WebSocketMessageBody 对象
+        WebSocketMessageBody webSocketMessageBody;
+        try {
+            webSocketMessageBody = codec.read(payload);
+        } catch (IOException e) {
+            LOGGER.warn("[INVALID MESSAGE]: {}", e.getMessage());
+            return WebSocketMessageBody.error(null, "Invalid message").toJson();
+        }
+        LOGGER.trace("[RECEIVED]: {}", webSocketMessageBody);
         // 从消息体中提取消息内容
         String message = "RESPONSE : " + webSocketMessageBody.getMessage();
-        LOGGER.debug("[MESSAGE]: " + message);
+        LOGGER.trace("[MESSAGE]: {}", message);
 
         // 返回成功的响应消息
-        return WebSocketMessageBody.success(message, null);
+        return WebSocketMessageBody.success(message, null).toJson();
+    }
+
+    /**
+     * raw 模式：收到的文本帧与二进制帧原样发回
+     *
+     * @param inbound 收到的消息
+     * @return 发回的消息，缓冲区由发送方释放
+     */
+    public Flux<WebSocketMessage> reflect(Flux<WebSocketMessage> inbound) {
+        return data(inbound)
+                .doOnDiscard(WebSocketMessage.class, EchoServer::release);
+    }
+
+    /**
+     * batch 模式：时间窗口内收到的帧合并为一帧发回，帧之间以换行分隔，类型取第一帧的类型。
+     * 窗口从第一帧到达时开始，达到消息数上限时立即发送。
+     *
+     * @param inbound 收到的消息
+     * @param factory 会话的缓冲区工厂，Netty 下合并为组合缓冲区，不复制内容
+     * @return 发回的消息，缓冲区由发送方释放
+     */
+    public Flux<WebSocketMessage> aggregate(Flux<WebSocketMessage> inbound, DataBufferFactory factory) {
+        return data(inbound)
+                .bufferTimeout(batchMaxMessages, batchWindow, true) // 按下游的请求发出，发送端繁忙时继续积攒
+                .map(batch -> join(batch, factory))
+                .doOnDiscard(WebSocketMessage.class, EchoServer::release);
+    }
+
+    /**
+     * 保留缓冲区，之后由发送方释放；只保留文本帧与二进制帧，其余帧经丢弃回调释放
+     */
+    private static Flux<WebSocketMessage> data(Flux<WebSocketMessage> inbound) {
+        return inbound
+                .map(msg -> new WebSocketMessage(msg.getType(), DataBufferUtils.retain(msg.getPayload())))
+                .filter(msg -> msg.getType() == WebSocketMessage.Type.TEXT || msg.getType() == WebSocketMessage.Type.BINARY);
+    }
+
+    private static WebSocketMessage join(List<WebSocketMessage> batch, DataBufferFactory factory) {
+        if (batch.size() == 1) {
+            return batch.get(0);
+        }
+        List<DataBuffer> parts = new ArrayList<>(batch.size() * 2 - 1);
+        for (WebSocketMessage msg : batch) {
+            if (!parts.isEmpty()) {
+                parts.add(factory.wrap(SEPARATOR));
+            }
+            parts.add(msg.getPayload());
+        }
+        return new WebSocketMessage(batch.get(0).getType(), factory.join(parts));
+    }
+
+    private static void release(WebSocketMessage msg) {
+        DataBufferUtils.release(msg.getPayload());
     }
 }
@@ -0,0 +1,124 @@
+package com.dream.nick_server.websocket.files;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * 一个会话对一个文档的编辑推送。
+ * 文档的广播不等待任何订阅者，每个订阅者在这里有自己的有界队列，按下游的请求量发送；
+ * 下游（WebSocket 发送）跟不上导致队列满时，丢弃积压的全部编辑，合并为一条 file_resync 消息，
+ * 客户端收到后按其中的版本重新读取文档。
+ *
+ * @param <T> 发送给会话的消息类型
+ */
+class ChangeFeed<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeed.class);
+
+    private final int limit; // 队列中最多积压的编辑数
+    private final Function<FileChange, T> format; // 编辑转换为 file_change 消息
+    private final LongFunction<T> resync; // 根据最新版本生成 file_resync 消息
+    private final Deque<FileChange> pending = new ArrayDeque<>();
+    private final Flux<T> flux;
+    private FluxSink<T> sink;
+    private long resyncVersion = -1; // 需要重新同步时的最新版本，-1 表示不需要
+    private boolean completed;
+    private volatile Disposable subscription;
+
+    ChangeFeed(int limit, Function<FileChange, T> format, LongFunction<T> resync) {
+        this.limit = Math.max(1, limit);
+        this.format = format;
+        this.resync = resync;
+        this.flux = Flux.create(sink -> {
+            synchronized (this) {
+                this.sink = sink;
+                sink.onRequest(n -> drain());
+                sink.onDispose(this::dispose); // 会话取消发送时不再接收广播
+                drain();
+            }
+        });
+    }
+
+    /**
+     * 订阅文档的广播
+     *
+     * @param changes 文档的编辑广播，已排除本会话自己的编辑
+     * @return 本推送
+     */
+    ChangeFeed<T> subscribe(Flux<FileChange> changes) {
+        subscription = changes.subscribe(this::offer, error -> complete(), this::complete);
+        return this;
+    }
+
+    /**
+     * @return 发送给会话的消息序列，只能订阅一次
+     */
+    Flux<T> asFlux() {
+        return flux;
+    }
+
+    /**
+     * 取消对文档广播的订阅，已积压的消息发送完后结束
+     */
+    void cancel() {
+        dispose();
+        complete();
+    }
+
+    private void dispose() {
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+
+    synchronized void offer(FileChange change) {
+        if (completed) {
+            return;
+        }
+        if (resyncVersion >= 0) {
+            resyncVersion = change.getVersion(); // 已在等待重新同步，只记录最新版本
+        } else if (pending.size() >= limit) {
+            LOGGER.debug("[COALESCE] {} pending changes dropped for {}", pending.size(), change.getPath());
+            pending.clear();
+            resyncVersion = change.getVersion();
+        } else {
+            pending.addLast(change);
+        }
+        drain();
+    }
+
+    private synchronized void complete() {
+        completed = true;
+        drain();
+    }
+
+    /**
+     * 按下游的请求量发送积压的消息，消息发送完且已结束时结束序列
+     */
+    private synchronized void drain() {
+        if (sink == null) {
+            return;
+        }
+        while (sink.requestedFromDownstream() > 0 && (resyncVersion >= 0 || !pending.isEmpty())) {
+            if (resyncVersion >= 0) {
+                long version = resyncVersion;
+                resyncVersion = -1;
+                sink.next(resync.apply(version));
+            } else {
+                sink.next(format.apply(pending.pollFirst()));
+            }
+        }
+        if (completed && resyncVersion < 0 && pending.isEmpty()) {
+            sink.complete();
+        }
+    }
+}
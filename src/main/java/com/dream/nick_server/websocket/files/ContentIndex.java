@@ -0,0 +1,450 @@
+package com.dream.nick_server.websocket.files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.dream.nick_server.websocket.WebSocketMessageBody;
+import com.dream.nick_server.websocket.files.document.LineDocument;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+
+/**
+ * 工作区文件内容的全文索引与 path_grep 搜索。
+ * 索引为内容三元组的倒排表，保存在磁盘上，启动时读入后只重新索引大小或修改时间变化的文件；
+ * 保存文档、创建与删除路径以及工作区监听到新建、修改与删除时增量更新，
+ * 所有更新在单独的索引线程上依次执行，并定期写回磁盘。
+ * 搜索时先由条件中必然出现的字面量得到候选文件，再逐行验证，结果按页以多条消息返回。
+ * 超过大小上限的文件、二进制文件与删除留下的 .bk 备份不建立索引，也不会被搜索到。
+ */
+@Component
+public class ContentIndex implements WorkspaceIndex.Listener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentIndex.class);
+
+    public static final String GREP = "path_grep";
+
+    private static final int PAGE_LINES = 100; // 每页最多包含的匹配行数
+    private static final int PAGE_CHARS = 64 * 1024; // 每页最多包含的字符数
+    private static final int LINE_CHARS = 512; // 返回的每行最多包含的字符数
+    private static final int DEFAULT_RESULTS = 1000; // 未指定数量时最多返回的匹配行数
+    private static final String BACKUP_SUFFIX = ".bk"; // 删除文件时留下的备份
+
+    private final WorkspaceIndex workspace; // 工作区目录树索引
+    private final FileBufferRegistry registry; // 打开的文档，搜索时优先读取其中尚未写回的内容
+    private final FileIoScheduler io; // 搜索时读取文件的线程
+    private final Path file; // 索引文件
+    private final long maxFileBytes; // 建立索引的文件大小上限
+    private final long flushInterval; // 写回索引文件的间隔（毫秒）
+    private final ScheduledExecutorService executor; // 依次执行索引更新与写回
+    private volatile ContentTrigramIndex index = new ContentTrigramIndex();
+    private volatile boolean dirty; // 索引自上次写回后有变化，只在索引线程上修改
+
+    public ContentIndex(WorkspaceIndex workspace, FileBufferRegistry registry, FileIoScheduler io,
+                        @Value("${files.content-index.file:index/content.idx}") String file,
+                        @Value("${files.content-index.max-file-bytes:8388608}") long maxFileBytes,
+                        @Value("${files.content-index.flush-interval-ms:5000}") long flushInterval) {
+        this.workspace = workspace;
+        this.registry = registry;
+        this.io = io;
+        this.file = Paths.get(file).toAbsolutePath().normalize();
+        this.maxFileBytes = maxFileBytes;
+        this.flushInterval = flushInterval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "content-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 读入磁盘上的索引，并在后台与工作区的当前内容同步
+     */
+    @PostConstruct
+    public void start() {
+        executor.execute(() -> {
+            load();
+            reconcile();
+        });
+        executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        workspace.listen(this);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.execute(this::flush);
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 文档保存后按缓冲区中的内容更新索引。
+     * 保存时内容可能只写入了预写日志，因此不从磁盘读取；这样登记的文件在下次启动时重新索引。
+     *
+     * @param buffer 已保存的文档
+     */
+    public void updated(FileBuffer buffer) {
+        String key = workspace.relativize(buffer.getPath());
+        if (key == null) {
+            return;
+        }
+        Set<Long> grams = new HashSet<>();
+        buffer.readLock().lock();
+        try {
+            LineDocument document = buffer.getDocument();
+            if (document == null || buffer.isMapped()) {
+                return; // 大文件不建立索引
+            }
+            int separator = document.getLineSeparator().length();
+            long bytes = 0;
+            for (int i = 0; document.hasLine(i); i++) {
+                bytes += document.getLineBytes(i) + separator; // 与写回磁盘后的大小一致
+                String line = bytes > maxFileBytes ? null : document.getLine(i);
+                if (line == null || line.indexOf('\0') >= 0) {
+                    grams = null;
+                    break;
+                }
+                ContentTrigramIndex.addGrams(line, grams);
+            }
+        } finally {
+            buffer.readLock().unlock();
+        }
+        Set<Long> result = grams;
+        executor.execute(() -> {
+            if (result == null) {
+                dirty |= index.remove(key);
+            } else {
+                index.put(key, -1, -1, result);
+                dirty = true;
+            }
+        });
+    }
+
+    /**
+     * 登记新建或修改的文件，或新建目录下的全部文件
+     *
+     * @param path 文件或目录路径
+     */
+    @Override
+    public void added(Path path) {
+        executor.execute(() -> {
+            if (!Files.isDirectory(path)) {
+                indexFile(path);
+                return;
+            }
+            try (Stream<Path> files = Files.walk(path)) {
+                files.filter(Files::isRegularFile).forEach(this::indexFile);
+            } catch (IOException e) {
+                LOGGER.error("[CONTENT INDEX ERROR] Failed to walk " + path, e);
+            }
+        });
+    }
+
+    /**
+     * 移除被删除的文件，或被删除目录下的全部文件
+     *
+     * @param path 文件或目录路径
+     */
+    @Override
+    public void removed(Path path) {
+        String key = workspace.relativize(path);
+        if (key == null) {
+            return;
+        }
+        executor.execute(() -> {
+            boolean changed = index.remove(key);
+            for (String child : new ArrayList<>(index.keys())) {
+                if (child.startsWith(key + "/")) {
+                    changed |= index.remove(child);
+                }
+            }
+            dirty |= changed;
+        });
+    }
+
+    /**
+     * 工作区监听事件溢出，与工作区的当前内容重新同步
+     */
+    @Override
+    public void rescanned() {
+        executor.execute(this::reconcile);
+    }
+
+    /**
+     * 搜索文件内容，匹配的行按相对路径与行号排序，以 path_grep 分页消息返回。
+     * 每页的键为 "相对路径:行号"，值为该行内容，另含 seq、count 与 last。
+     *
+     * @param cond 搜索条件，text: 前缀为子串，regex: 前缀或无前缀为正则表达式，在每行中查找
+     * @param count 最多返回的匹配行数，为空时使用默认值
+     * @return 操作结果的消息序列
+     */
+    public Flux<WebSocketMessageBody> grep(String cond, String count) {
+        if (cond == null || cond.isEmpty()) {
+            return Flux.just(WebSocketMessageBody.error(GREP, "Search error"));
+        }
+        Pattern pattern;
+        List<String> literals = new ArrayList<>();
+        try {
+            if (cond.startsWith(PathPattern.TEXT)) {
+                String text = cond.substring(PathPattern.TEXT.length());
+                pattern = Pattern.compile(Pattern.quote(text));
+                literals.add(text);
+            } else {
+                String regex = cond.startsWith(PathPattern.REGEX) ? cond.substring(PathPattern.REGEX.length()) : cond;
+                pattern = Pattern.compile(regex);
+                literals.addAll(PathPattern.regexLiterals(regex));
+            }
+        } catch (PatternSyntaxException e) {
+            LOGGER.warn("[GREP] Invalid pattern {}: {}", cond, e.getDescription());
+            return Flux.just(WebSocketMessageBody.error(GREP, "Invalid pattern"));
+        }
+        int limit = DEFAULT_RESULTS;
+        if (count != null && !count.isEmpty()) {
+            try {
+                limit = Integer.parseInt(count.trim());
+            } catch (NumberFormatException e) {
+                limit = -1;
+            }
+            if (limit <= 0) {
+                return Flux.just(WebSocketMessageBody.error(GREP, "Invalid count"));
+            }
+        }
+
+        ContentTrigramIndex snapshot = index;
+        Collection<String> candidates = snapshot.candidates(literals);
+        if (candidates == null) {
+            candidates = snapshot.keys(); // 没有可用的字面量，检查全部已索引的文件
+        }
+        Iterator<String> files = new TreeSet<>(candidates).iterator();
+        LOGGER.debug("[GREP] {}: {} candidates of {} files", cond, candidates.size(), snapshot.size());
+        int max = limit;
+        return Flux.<WebSocketMessageBody, GrepState>generate(GrepState::new, (state, sink) -> {
+            Map<String, String> page = new LinkedHashMap<>();
+            page.put(FileManage.SEQ_KEY, String.valueOf(state.seq++));
+            int lines = 0;
+            int chars = 0;
+            while (lines < PAGE_LINES && chars < PAGE_CHARS && state.found < max) {
+                if (state.pending == null || !state.pending.hasNext()) {
+                    if (!files.hasNext()) {
+                        break;
+                    }
+                    String key = files.next();
+                    state.pending = scan(key, pattern).iterator();
+                    continue;
+                }
+                Map.Entry<String, String> match = state.pending.next();
+                page.put(match.getKey(), match.getValue());
+                chars += match.getValue().length();
+                lines++;
+                state.found++;
+            }
+            boolean last = state.found >= max || (!files.hasNext() && (state.pending == null || !state.pending.hasNext()));
+            page.put(FileManage.COUNT_KEY, String.valueOf(lines));
+            page.put(FileManage.LAST_KEY, String.valueOf(last));
+            sink.next(WebSocketMessageBody.success(GREP, page));
+            if (last) {
+                sink.complete();
+            }
+            return state;
+        }).subscribeOn(io.getScheduler());
+    }
+
+    /**
+     * 分页搜索的进度
+     */
+    private static final class GrepState {
+        int seq;
+        int found;
+        Iterator<Map.Entry<String, String>> pending; // 当前文件中尚未返回的匹配行
+    }
+
+    /**
+     * 在一个文件中查找匹配的行。打开的文档读取缓冲区中的内容，其余读取磁盘上的文件
+     *
+     * @return "相对路径:行号" -> 行内容
+     */
+    private List<Map.Entry<String, String>> scan(String key, Pattern pattern) {
+        List<Map.Entry<String, String>> matches = new ArrayList<>();
+        Matcher matcher = pattern.matcher("");
+        Path path = workspace.resolve(key);
+        FileBuffer buffer = registry.get(path);
+        if (buffer != null) {
+            buffer.readLock().lock();
+            try {
+                LineDocument document = buffer.getDocument();
+                if (document != null && !buffer.isMapped()) {
+                    for (int i = 0; document.hasLine(i); i++) {
+                        match(key, i + 1, document.getLine(i), matcher, matches);
+                    }
+                    return matches;
+                }
+            } finally {
+                buffer.readLock().unlock();
+            }
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            for (int number = 1; (line = reader.readLine()) != null; number++) {
+                match(key, number, line, matcher, matches);
+            }
+        } catch (NoSuchFileException e) {
+            LOGGER.debug("[GREP] {} no longer exists", key);
+        } catch (IOException e) {
+            LOGGER.warn("[GREP] Failed to read {}: {}", key, e.getMessage());
+        }
+        return matches;
+    }
+
+    private static void match(String key, int number, String line, Matcher matcher, List<Map.Entry<String, String>> matches) {
+        if (matcher.reset(line).find()) {
+            String text = line.length() > LINE_CHARS ? line.substring(0, LINE_CHARS) : line;
+            matches.add(Map.entry(key + ":" + number, text));
+        }
+    }
+
+    /**
+     * 读入磁盘上的索引，文件不存在或损坏时从空索引开始
+     */
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            index = ContentTrigramIndex.read(in);
+            LOGGER.info("[CONTENT INDEX] {} files loaded from {}", index.size(), file);
+        } catch (IOException e) {
+            LOGGER.warn("[CONTENT INDEX] Discard unreadable index {}: {}", file, e.getMessage());
+            dirty = true;
+        }
+    }
+
+    /**
+     * 重新索引变化的文件，移除已不存在的文件
+     */
+    private void reconcile() {
+        long began = System.nanoTime();
+        Set<String> present = new HashSet<>();
+        int indexed = 0;
+        for (Map.Entry<String, Boolean> entry : workspace.entries().entrySet()) {
+            if (entry.getValue() || isBackup(entry.getKey())) {
+                continue;
+            }
+            present.add(entry.getKey());
+            Path path = workspace.resolve(entry.getKey());
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!index.isCurrent(entry.getKey(), attrs.size(), attrs.lastModifiedTime().toMillis())) {
+                    indexFile(path);
+                    indexed++;
+                }
+            } catch (IOException e) {
+                dirty |= index.remove(entry.getKey());
+            }
+        }
+        for (String key : new ArrayList<>(index.keys())) {
+            if (!present.contains(key)) {
+                dirty |= index.remove(key);
+            }
+        }
+        LOGGER.info("[CONTENT INDEX] {} files, {} reindexed in {} ms", index.size(), indexed, (System.nanoTime() - began) / 1_000_000);
+    }
+
+    private static boolean isBackup(String key) {
+        return key.endsWith(BACKUP_SUFFIX);
+    }
+
+    /**
+     * 从磁盘读取文件并更新索引，在索引线程上执行。
+     * 打开的文档在保存时按缓冲区中的内容更新，磁盘上的文件可能落后于它，因此跳过
+     */
+    private void indexFile(Path path) {
+        String key = workspace.relativize(path);
+        if (key == null || isBackup(key) || registry.get(path) != null) {
+            return;
+        }
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attrs.isRegularFile() || attrs.size() > maxFileBytes) {
+                dirty |= index.remove(key);
+                return;
+            }
+            Set<Long> grams = new HashSet<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.indexOf('\0') >= 0) {
+                        dirty |= index.remove(key); // 二进制文件
+                        return;
+                    }
+                    ContentTrigramIndex.addGrams(line, grams);
+                }
+            }
+            index.put(key, attrs.size(), attrs.lastModifiedTime().toMillis(), grams);
+            dirty = true;
+        } catch (NoSuchFileException e) {
+            dirty |= index.remove(key);
+        } catch (IOException e) {
+            LOGGER.warn("[CONTENT INDEX] Failed to index {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * 有变化时将索引写入临时文件，fsync 后原子替换索引文件
+     */
+    private void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                index.write(out);
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("[CONTENT INDEX] {} files written to {}", index.size(), file);
+        } catch (IOException e) {
+            dirty = true;
+            LOGGER.error("[CONTENT INDEX ERROR] Failed to write " + file, e);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.dream.nick_server.websocket.files;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文件内容的三元组倒排索引。
+ * 每个三元组对应包含它的全部文件，文件以整数编号表示；同时保留每个文件的三元组，
+ * 文件更新时先撤销旧的倒排项再登记新的。三元组只在一行之内提取，不跨越换行。
+ * 修改方法在 this 上加锁，查询可以与修改并发执行。
+ * <p>
+ * 磁盘格式：MAGIC、VERSION、文件数，每个文件依次为路径、大小、修改时间；
+ * 之后是三元组数，三元组按升序排列，每个三元组为与前一个的差值、文件数与按升序排列的文件编号差值，
+ * 数字均以变长整数（varint）写入。文件编号即文件在表中的顺序。
+ */
+class ContentTrigramIndex {
+    static final int MAGIC = 0x4E534349; // "NSCI"
+    static final int VERSION = 1;
+
+    private final Map<String, Doc> docs = new ConcurrentHashMap<>(); // 相对路径 -> 文件
+    private final Map<Integer, Doc> ids = new ConcurrentHashMap<>(); // 编号 -> 文件
+    private final Map<Long, Set<Integer>> postings = new ConcurrentHashMap<>(); // 三元组 -> 文件编号
+    private int nextId;
+
+    /**
+     * 已登记的文件
+     */
+    static final class Doc {
+        final int id;
+        final String key;
+        final long size; // 建立索引时的文件大小，内容来自未写回的缓冲区时为 -1
+        final long modified; // 建立索引时的修改时间（毫秒）
+        final long[] grams;
+
+        Doc(int id, String key, long size, long modified, long[] grams) {
+            this.id = id;
+            this.key = key;
+            this.size = size;
+            this.modified = modified;
+            this.grams = grams;
+        }
+    }
+
+    /**
+     * 登记或更新文件的内容
+     *
+     * @param key 相对路径
+     * @param size 文件大小
+     * @param modified 修改时间
+     * @param grams 内容中的全部三元组
+     */
+    synchronized void put(String key, long size, long modified, Set<Long> grams) {
+        remove(key);
+        long[] array = new long[grams.size()];
+        int i = 0;
+        for (long gram : grams) {
+            array[i++] = gram;
+        }
+        Doc doc = new Doc(nextId++, key, size, modified, array);
+        for (long gram : array) {
+            postings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(doc.id);
+        }
+        ids.put(doc.id, doc);
+        docs.put(key, doc);
+    }
+
+    synchronized boolean remove(String key) {
+        Doc doc = docs.remove(key);
+        if (doc == null) {
+            return false;
+        }
+        ids.remove(doc.id);
+        for (long gram : doc.grams) {
+            postings.computeIfPresent(gram, (g, files) -> {
+                files.remove(doc.id);
+                return files.isEmpty() ? null : files;
+            });
+        }
+        return true;
+    }
+
+    /**
+     * 判断文件自建立索引以来是否未被修改
+     */
+    boolean isCurrent(String key, long size, long modified) {
+        Doc doc = docs.get(key);
+        return doc != null && doc.size == size && doc.modified == modified;
+    }
+
+    /**
+     * @return 已登记的全部相对路径
+     */
+    Set<String> keys() {
+        return docs.keySet();
+    }
+
+    int size() {
+        return docs.size();
+    }
+
+    /**
+     * 包含全部字面量的候选文件
+     *
+     * @param literals 字面量
+     * @return 候选文件的相对路径；字面量中没有三元组、无法缩小范围时返回 null
+     */
+    Set<String> candidates(Collection<String> literals) {
+        List<Set<Integer>> sets = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (String literal : literals) {
+            for (long gram : grams(literal)) {
+                if (!seen.add(gram)) {
+                    continue;
+                }
+                Set<Integer> files = postings.get(gram);
+                if (files == null) {
+                    return new HashSet<>(); // 没有文件包含这个三元组
+                }
+                sets.add(files);
+            }
+        }
+        if (sets.isEmpty()) {
+            return null;
+        }
+        // 从最小的集合开始求交集
+        sets.sort(Comparator.comparingInt(Set::size));
+        Set<Integer> result = new HashSet<>(sets.get(0));
+        for (int i = 1; i < sets.size() && !result.isEmpty(); i++) {
+            result.retainAll(sets.get(i));
+        }
+        Set<String> keys = new HashSet<>();
+        for (int id : result) {
+            Doc doc = ids.get(id);
+            if (doc != null) {
+                keys.add(doc.key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 将一行中的三元组加入集合，三个 char 编码为一个 long
+     *
+     * @param line 一行内容
+     * @param grams 结果集合
+     */
+    static void addGrams(CharSequence line, Set<Long> grams) {
+        for (int i = 0; i + PathTrigramIndex.GRAM <= line.length(); i++) {
+            grams.add(((long) line.charAt(i) << 32) | ((long) line.charAt(i + 1) << 16) | line.charAt(i + 2));
+        }
+    }
+
+    static Set<Long> grams(CharSequence text) {
+        Set<Long> grams = new HashSet<>();
+        addGrams(text, grams);
+        return grams;
+    }
+
+    /**
+     * 以紧凑的倒排格式写出索引
+     */
+    synchronized void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        List<Doc> list = new ArrayList<>(docs.values());
+        Map<Integer, Integer> renumber = new HashMap<>(); // 写出时重新连续编号
+        writeVarLong(out, list.size());
+        for (Doc doc : list) {
+            renumber.put(doc.id, renumber.size());
+            out.writeUTF(doc.key);
+            out.writeLong(doc.size);
+            out.writeLong(doc.modified);
+        }
+        long[] keys = new long[postings.size()];
+        int count = 0;
+        for (Long gram : postings.keySet()) {
+            keys[count++] = gram;
+        }
+        Arrays.sort(keys, 0, count);
+        writeVarLong(out, count);
+        long previousGram = 0;
+        for (int i = 0; i < count; i++) {
+            Set<Integer> files = postings.get(keys[i]);
+            int[] numbers = files.stream().mapToInt(renumber::get).sorted().toArray();
+            writeVarLong(out, keys[i] - previousGram);
+            previousGram = keys[i];
+            writeVarLong(out, numbers.length);
+            int previous = 0;
+            for (int number : numbers) {
+                writeVarLong(out, number - previous);
+                previous = number;
+            }
+        }
+    }
+
+    /**
+     * 读取 write 写出的索引
+     *
+     * @throws IOException 读取失败或格式不符
+     */
+    static ContentTrigramIndex read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a content index");
+        }
+        int docCount = (int) readVarLong(in);
+        String[] keys = new String[docCount];
+        long[] sizes = new long[docCount];
+        long[] modified = new long[docCount];
+        List<List<Long>> grams = new ArrayList<>(docCount);
+        for (int i = 0; i < docCount; i++) {
+            keys[i] = in.readUTF();
+            sizes[i] = in.readLong();
+            modified[i] = in.readLong();
+            grams.add(new ArrayList<>());
+        }
+        long gramCount = readVarLong(in);
+        long gram = 0;
+        for (long g = 0; g < gramCount; g++) {
+            gram += readVarLong(in);
+            long files = readVarLong(in);
+            int number = 0;
+            for (long f = 0; f < files; f++) {
+                number += (int) readVarLong(in);
+                if (number < 0 || number >= docCount) {
+                    throw new IOException("Corrupt content index");
+                }
+                grams.get(number).add(gram);
+            }
+        }
+        ContentTrigramIndex index = new ContentTrigramIndex();
+        for (int i = 0; i < docCount; i++) {
+            index.put(keys[i], sizes[i], modified[i], new HashSet<>(grams.get(i)));
+        }
+        return index;
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
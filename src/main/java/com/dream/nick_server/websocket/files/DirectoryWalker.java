@@ -0,0 +1,201 @@
+package com.dream.nick_server.websocket.files;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * 并行遍历目录树并以流的方式返回。
+ * 每个目录是一个 fork-join 任务，读完目录后立即发出其中的文件（按页拆分），再并行遍历子目录，
+ * 因此庞大的目录树也能立刻得到第一批结果，且不会在内存中保存完整的列表。
+ * 尚未被下游取走的页数有上限，达到上限时遍历线程以 managedBlock 等待，不会占满 fork-join 池。
+ */
+class DirectoryWalker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryWalker.class);
+
+    private final ForkJoinPool pool; // 遍历目录的线程池
+    private final int maxPending; // 每次遍历最多积压的页数
+
+    /**
+     * 一个目录中的一页文件
+     */
+    static final class Page {
+        final Path dir;
+        final int depth; // 相对于起始目录的深度，起始目录为 0
+        final List<Path> files;
+
+        Page(Path dir, int depth, List<Path> files) {
+            this.dir = dir;
+            this.depth = depth;
+            this.files = files;
+        }
+    }
+
+    DirectoryWalker(ForkJoinPool pool, int maxPending) {
+        this.pool = pool;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * 遍历目录树，不跟随符号链接
+     *
+     * @param start 起始目录
+     * @param maxDepth 最大深度，0 只列出起始目录
+     * @param pageSize 每页最多包含的文件数
+     * @return 各目录的文件页，不同目录的页之间没有固定顺序
+     */
+    Flux<Page> walk(Path start, int maxDepth, int pageSize) {
+        return Flux.<Pending>create(sink -> {
+            Walk walk = new Walk(sink, maxDepth, pageSize);
+            sink.onDispose(walk::cancel);
+            pool.execute(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        new DirectoryTask(walk, start, 0).invoke();
+                        if (!walk.cancelled.get()) {
+                            LOGGER.debug("[WALK] {}: {} directories", start, walk.directories.get());
+                            sink.complete();
+                        }
+                    } catch (RuntimeException e) {
+                        sink.error(e);
+                    }
+                }
+            });
+        }, FluxSink.OverflowStrategy.BUFFER)
+        .doOnNext(page -> page.walk.release()) // 下游取走一页后允许再发出一页
+        .map(page -> page.page);
+    }
+
+    /**
+     * 一次遍历的共享状态
+     */
+    private final class Walk {
+        final FluxSink<Pending> sink;
+        final int maxDepth;
+        final int pageSize;
+        final Semaphore permits = new Semaphore(maxPending);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final AtomicLong directories = new AtomicLong();
+
+        Walk(FluxSink<Pending> sink, int maxDepth, int pageSize) {
+            this.sink = sink;
+            this.maxDepth = maxDepth;
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * 等待积压的页被取走后发出一页
+         */
+        void emit(Page page) {
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        permits.acquire();
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return permits.tryAcquire();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                return;
+            }
+            if (!cancelled.get()) {
+                sink.next(new Pending(this, page));
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        void cancel() {
+            if (!cancelled.getAndSet(true)) {
+                permits.release(Integer.MAX_VALUE / 2); // 唤醒等待中的遍历线程
+            }
+        }
+    }
+
+    /**
+     * 带有所属遍历的页，用于在下游取走后归还许可
+     */
+    private static final class Pending {
+        final Walk walk;
+        final Page page;
+
+        Pending(Walk walk, Page page) {
+            this.walk = walk;
+            this.page = page;
+        }
+    }
+
+    /**
+     * 读取一个目录，发出其中的文件后并行遍历子目录
+     */
+    private static final class DirectoryTask extends RecursiveAction {
+        private final Walk walk;
+        private final Path dir;
+        private final int depth;
+
+        DirectoryTask(Walk walk, Path dir, int depth) {
+            this.walk = walk;
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (walk.cancelled.get()) {
+                return;
+            }
+            walk.directories.incrementAndGet();
+            List<Path> files = new ArrayList<>();
+            List<DirectoryTask> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        if (depth < walk.maxDepth) {
+                            children.add(new DirectoryTask(walk, child, depth + 1));
+                        }
+                        continue;
+                    }
+                    files.add(child);
+                    if (files.size() >= walk.pageSize) {
+                        Collections.sort(files);
+                        walk.emit(new Page(dir, depth, files));
+                        files = new ArrayList<>();
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.warn("[WALK] Skip {}: {}", dir, e.getMessage());
+            }
+            if (!files.isEmpty()) {
+                Collections.sort(files);
+                walk.emit(new Page(dir, depth, files));
+            }
+            invokeAll(children);
+        }
+    }
+}
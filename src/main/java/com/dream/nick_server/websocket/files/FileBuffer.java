@@ -0,0 +1,463 @@
+package com.dream.nick_server.websocket.files;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import com.dream.nick_server.websocket.files.document.FileJournal;
+import com.dream.nick_server.websocket.files.document.LineDocument;
+import com.dream.nick_server.websocket.files.document.LineTransform;
+import com.dream.nick_server.websocket.files.document.MappedLineSource;
+
+/**
+ * 单个打开文档的内存缓冲区。
+ * 每个文档拥有独立的读写锁，多个会话打开同一路径时共享同一个缓冲区。
+ * 编辑先追加到预写日志再修改内存中的文档，保存只需在日志中记下保存标记并 fsync；
+ * 检查点将已保存的内容写入临时文件后原子替换原文件，然后重建日志。
+ * 关闭与崩溃恢复都只保留最后一次保存时的内容，没有保存的编辑被丢弃。
+ * 文档带有单调递增的版本，每次应用的一组编辑对应一个版本，基于旧版本的编辑通过操作变换合并，应用后广播给其他会话。
+ */
+public class FileBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileBuffer.class);
+
+    private static final int HISTORY_LIMIT = 10000; // 历史中最多保留的编辑条数，更早版本上的编辑会被拒绝
+
+    private final Path path; // 规范化后的文件路径，同时作为注册表中的键
+    private final long mappedThreshold; // 达到该大小的文件使用内存映射打开
+    private final Executor indexExecutor; // 为内存映射文件建立行索引的线程
+    private final FileJournalManager journals;
+    private FileJournal journal; // 上次检查点之后的编辑日志，第一次编辑时创建，受写锁保护
+    private final Object checkpointLock = new Object(); // 同一时间只允许一个检查点写临时文件，保存与关闭等待进行中的检查点
+    private long version; // 文档版本，每次应用一组编辑加一，受写锁保护
+    private final Deque<List<FileJournal.Edit>> history = new ArrayDeque<>(); // 最近各版本应用的编辑，最后一组对应当前版本
+    private int historyEdits; // history 中的编辑条数
+    private final Sinks.Many<FileChange> changes = Sinks.many().multicast().directBestEffort(); // 编辑广播
+    private LineDocument document; // 文件内容，受读写锁保护
+    private MappedLineSource mapped; // 内存映射打开时的原始来源
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(); // 文档级别的读写锁
+    private final AtomicInteger refCount = new AtomicInteger(); // 引用该缓冲区的会话数量
+    private final CompletableFuture<?> previous; // 同一路径上一个缓冲区的检查点，读取文件前等待其完成
+    private volatile boolean closing; // 已从注册表移除，不再接受编辑
+
+    FileBuffer(Path path, long mappedThreshold, Executor indexExecutor, FileJournalManager journals) {
+        this(path, mappedThreshold, indexExecutor, journals, null);
+    }
+
+    FileBuffer(Path path, long mappedThreshold, Executor indexExecutor, FileJournalManager journals, CompletableFuture<?> previous) {
+        this.path = path;
+        this.mappedThreshold = mappedThreshold;
+        this.indexExecutor = indexExecutor;
+        this.journals = journals;
+        this.previous = previous;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Lock readLock() {
+        return lock.readLock();
+    }
+
+    public Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    /**
+     * 返回文档内容，调用方必须持有读锁（只读访问）或写锁（修改）
+     */
+    public LineDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * 返回文档版本，调用方必须持有读锁或写锁
+     *
+     * @return 自打开以来应用编辑的次数，一次应用的一组编辑只计一次
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return 是否以内存映射方式打开（大文件模式）
+     */
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    /**
+     * @return 内存映射打开时的原始来源，否则为 null
+     */
+    public MappedLineSource getMapped() {
+        return mapped;
+    }
+
+    /**
+     * 首次打开时将文件内容读入内存，已加载的缓冲区保持不变，
+     * 以免覆盖其他会话尚未保存的修改。
+     * 大于 mappedThreshold 的文件通过内存映射打开，行索引在后台建立，本方法立即返回。
+     * 上次关闭时检查点失败而残留的日志，其中已保存的编辑会重新应用到文档，并在该日志之后继续记录。
+     *
+     * @throws IOException 读取文件失败，或残留的日志无法恢复；此时文档不会打开，日志保留
+     */
+    public void loadIfNeeded() throws IOException {
+        if (previous != null) {
+            previous.join(); // 上一个缓冲区写回之后，磁盘上才是最新的内容
+        }
+        lock.writeLock().lock();
+        try {
+            if (document == null) {
+                load();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 读取原文件并应用残留日志中已保存的编辑，调用方必须持有写锁
+     */
+    private void load() throws IOException {
+        if (Files.size(path) >= mappedThreshold) {
+            mapped = MappedLineSource.open(path, indexExecutor);
+            document = new LineDocument(mapped, mapped.detectLineSeparator(System.lineSeparator()));
+            LOGGER.info("[LOAD] {} mapped, {} bytes", path, mapped.size());
+        } else {
+            document = LineDocument.load(path);
+            LOGGER.debug("[LOAD] {} lines loaded from {}", document.lineCount(), path);
+        }
+        restore();
+    }
+
+    /**
+     * 应用残留日志中的编辑，调用方必须持有写锁。
+     * 这些编辑已在保存时确认，视为打开时的内容，不增加版本；失败时关闭文档，不在残留的日志上创建新日志
+     */
+    private void restore() throws IOException {
+        FileJournal.Recovery pending;
+        try {
+            pending = journals.pending(path);
+            if (pending == null) {
+                return;
+            }
+            for (FileJournal.Edit edit : pending.edits) {
+                FileJournal.apply(document, edit);
+            }
+            journal = journals.resume(path, pending);
+        } catch (IOException | RuntimeException e) {
+            try {
+                document.close();
+            } catch (IOException closeError) {
+                e.addSuppressed(closeError);
+            }
+            document = null;
+            mapped = null;
+            throw new IOException("Failed to restore saved edits of " + path, e);
+        }
+        LOGGER.info("[RECOVER] {} saved edits restored to {}", pending.edits.size(), path);
+    }
+
+    /**
+     * 返回指定版本时的行数，调用方必须持有读锁或写锁
+     *
+     * @param base 版本，必须在保留的历史范围内
+     * @return 该版本时的文档行数
+     * @throws IllegalStateException 缓冲区已被释放
+     */
+    public int lineCountAt(long base) {
+        checkOpen();
+        checkVersion(base);
+        int lines = document.lineCount();
+        Iterator<List<FileJournal.Edit>> newest = history.descendingIterator();
+        for (long v = version; v > base; v--) {
+            for (FileJournal.Edit edit : newest.next()) {
+                lines += edit.op == FileJournal.INSERT ? -1 : edit.op == FileJournal.DELETE ? 1 : 0;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * 应用基于 baseVersion 的一串编辑，调用方必须持有写锁。
+     * baseVersion 之后其他会话已应用的编辑会先通过操作变换合并进来，
+     * 每条编辑先写入日志再修改文档，全部应用后版本加一，应用结果广播给打开该文档的会话。
+     *
+     * @param origin 提交编辑的会话，不会收到自己的广播
+     * @param baseVersion 编辑所基于的版本
+     * @param edits 按顺序应用的编辑，行号相对于 baseVersion 时的文档
+     * @return 变换后实际应用的编辑
+     * @throws IOException 写入日志失败
+     * @throws IllegalArgumentException 版本超出保留的历史范围，或编辑的行号无效
+     * @throws IllegalStateException 缓冲区已被释放
+     */
+    public List<FileJournal.Edit> apply(Object origin, long baseVersion, List<FileJournal.Edit> edits) throws IOException {
+        checkOpen();
+        int lines = lineCountAt(baseVersion);
+        for (FileJournal.Edit edit : edits) {
+            // 行号必须相对于 baseVersion 时的文档有效，变换不会使有效的编辑变为无效
+            checkIndex(edit.line, edit.op == FileJournal.INSERT ? lines + 1 : lines);
+            lines += edit.op == FileJournal.INSERT ? 1 : edit.op == FileJournal.DELETE ? -1 : 0;
+        }
+        // baseVersion 之后已应用的编辑，按应用顺序排列
+        List<List<FileJournal.Edit>> versions = new ArrayList<>((int) (version - baseVersion));
+        Iterator<List<FileJournal.Edit>> newest = history.descendingIterator();
+        for (long v = version; v > baseVersion; v--) {
+            versions.add(newest.next());
+        }
+        Collections.reverse(versions);
+        List<FileJournal.Edit> concurrent = new ArrayList<>();
+        versions.forEach(concurrent::addAll);
+        List<FileJournal.Edit> transformed = LineTransform.transform(edits, concurrent);
+        if (transformed.isEmpty()) {
+            return transformed;
+        }
+
+        int applied = 0;
+        try {
+            for (FileJournal.Edit edit : transformed) {
+                journal().append(edit.op, edit.line, edit.text);
+                FileJournal.apply(document, edit);
+                applied++;
+            }
+        } finally {
+            if (applied > 0) {
+                // 写日志中途失败时，已应用的编辑同样记为一个版本，历史与文档保持一致
+                record(origin, List.copyOf(transformed.subList(0, applied)));
+            }
+        }
+        return transformed;
+    }
+
+    /**
+     * 最后一个会话释放后不再接受编辑；会话在释放前取得的引用可能在此之后才拿到锁，
+     * 此时文档可能已经关闭，调用方必须持有读锁或写锁
+     */
+    private void checkOpen() {
+        if (closing || document == null) {
+            throw new IllegalStateException("Buffer closed: " + path);
+        }
+    }
+
+    /**
+     * 一次应用的全部编辑对应一个版本，调用方必须持有写锁
+     */
+    private void record(Object origin, List<FileJournal.Edit> applied) {
+        long before = version;
+        history.addLast(applied);
+        historyEdits += applied.size();
+        while (history.size() > 1 && historyEdits > HISTORY_LIMIT) {
+            historyEdits -= history.removeFirst().size();
+        }
+        version++;
+        // 在写锁内发布，广播的顺序与版本顺序一致
+        changes.tryEmitNext(new FileChange(origin, path, before, version, applied));
+    }
+
+    /**
+     * @return 应用到该文档的编辑，订阅之前的编辑不会重放
+     */
+    public Flux<FileChange> changes() {
+        return changes.asFlux();
+    }
+
+    /**
+     * 保存：在日志中记下保存标记并 fsync 到磁盘，耗时与编辑量成正比而不是与文件大小成正比。
+     * 保存的是此刻已应用的全部编辑，包括其他会话的编辑；
+     * 日志超过 files.journal.checkpoint-bytes 时执行检查点，把内容写回原文件。
+     *
+     * @throws IOException 写入失败
+     */
+    public void save() throws IOException {
+        FileJournal pending;
+        lock.readLock().lock();
+        try {
+            pending = journal;
+            if (pending == null) {
+                return; // 上次检查点之后没有编辑
+            }
+            pending.markSaved(); // 编辑需要写锁，标记之前的记录就是此刻文档中的全部编辑
+        } finally {
+            lock.readLock().unlock();
+        }
+        pending.sync(); // 与其他会话的保存、后台的分组提交合并为一次 fsync
+        // 进行中的检查点重建日志之前，保存标记只在旧日志中，等它完成后才算落盘
+        synchronized (checkpointLock) {
+            if (pending.size() >= journals.getCheckpointBytes()) {
+                checkpoint();
+            }
+        }
+    }
+
+    /**
+     * 检查点：在读锁内取得文档快照，释放锁后写入临时文件并 fsync，原子替换原文件，
+     * 再以新的原文件为基准重建日志，只保留写回期间新增的编辑。写回期间其他会话可以继续读取和编辑。
+     * 只有全部编辑都已保存时才执行，未保存的编辑不会写回原文件。
+     * 替换之后、重建日志之前崩溃时，原文件已与日志头部记录的基准不符，恢复时日志会被丢弃，
+     * 此时丢失的只有写回期间新增的编辑，期间的保存会等待检查点完成。
+     *
+     * @throws IOException 写入失败
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            LineDocument.Snapshot snapshot;
+            long mark;
+            lock.readLock().lock();
+            try {
+                if (document == null || journal == null || journal.size() == 0 || journal.hasUnsaved()) {
+                    return;
+                }
+                snapshot = document.snapshot();
+                mark = journal.position();
+            } finally {
+                lock.readLock().unlock();
+            }
+            long began = System.nanoTime();
+            writeAtomically(snapshot);
+            journal.rebase(mark);
+            LOGGER.info("[CHECKPOINT] {} in {} ms", path, (System.nanoTime() - began) / 1_000_000);
+        }
+    }
+
+    /**
+     * 缓冲区从注册表移除后丢弃未保存的编辑，执行检查点并释放文档占用的资源。
+     * 检查点失败时保留日志文件，下次打开该文档或下次启动时重放其中已保存的编辑。
+     */
+    void dispose() {
+        // 保存触发的检查点可能仍在锁外写出快照，等它完成后才能关闭快照引用的来源
+        synchronized (checkpointLock) {
+            boolean saved = true;
+            try {
+                discardUnsaved();
+                checkpoint(); // 已没有会话引用该缓冲区，不会再有新的编辑
+            } catch (IOException e) {
+                saved = false;
+                LOGGER.error("[CHECKPOINT ERROR] " + path, e);
+            }
+            lock.writeLock().lock();
+            try {
+                if (journal != null) {
+                    journals.close(journal, saved);
+                    journal = null;
+                }
+                if (document != null) {
+                    document.close();
+                }
+            } catch (IOException e) {
+                LOGGER.error("[DISPOSE ERROR] " + path, e);
+            } finally {
+                document = null;
+                mapped = null;
+                changes.tryEmitComplete();
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 重新读取原文件并只应用日志中已保存的编辑，得到与崩溃恢复相同的内容。
+     * 最后一次保存之后没有编辑时不做任何事
+     */
+    private void discardUnsaved() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (document == null || journal == null || !journal.hasUnsaved()) {
+                return;
+            }
+            LOGGER.info("[DISCARD] Unsaved edits of {} discarded", path);
+            journals.close(journal, false); // 保留日志，重新加载时截掉未保存的记录
+            journal = null;
+            LineDocument discarded = document;
+            document = null;
+            mapped = null;
+            discarded.close();
+            load();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private FileJournal journal() throws IOException {
+        if (journal == null) {
+            journal = journals.open(path);
+        }
+        return journal;
+    }
+
+    /**
+     * 写入临时文件并 fsync 后原子替换原文件。
+     * 内存映射的原文件不能原地截断重写，因此总是通过重命名替换：POSIX 系统上重命名只替换目录项，
+     * 原映射继续指向旧文件内容；Windows 不允许替换仍被映射的文件，大文件模式下的检查点会失败，
+     * 已保存的编辑留在日志中不会丢失，但在映射释放之前无法写回原文件。
+     */
+    private void writeAtomically(LineDocument.Snapshot snapshot) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".saving");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            snapshot.writeTo(out); // 按行号顺序写出全部行
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileJournal.forceDirectory(path.getParent()); // 让重命名本身落盘
+    }
+
+    private void checkVersion(long base) {
+        if (base > version || base < version - history.size()) {
+            throw new IllegalArgumentException("Version " + base + " out of range [" + (version - history.size()) + ", " + version + "]");
+        }
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Line " + index + " out of range [0, " + bound + ")");
+        }
+    }
+
+    /**
+     * @return 同一路径上一个缓冲区的检查点，没有时为 null
+     */
+    CompletableFuture<?> getPrevious() {
+        return previous;
+    }
+
+    /**
+     * 最后一个会话释放后调用，之后的编辑被拒绝，检查点随后执行
+     */
+    void markClosing() {
+        closing = true;
+    }
+
+    int retain() {
+        return refCount.incrementAndGet();
+    }
+
+    int release() {
+        return refCount.decrementAndGet();
+    }
+}
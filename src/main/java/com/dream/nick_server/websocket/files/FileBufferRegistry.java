@@ -0,0 +1,178 @@
+package com.dream.nick_server.websocket.files;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * 打开文档的缓冲区注册表。
+ * 以规范化路径为键保存 FileBuffer，同一路径的所有会话共享同一个缓冲区，
+ * 最后一个会话释放后缓冲区被移除，随后在 I/O 调度器上执行检查点。
+ */
+@Component
+public class FileBufferRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileBufferRegistry.class);
+
+    private final Map<Path, FileBuffer> buffers = new ConcurrentHashMap<>();
+    private final Map<Path, CompletableFuture<Void>> closing = new ConcurrentHashMap<>(); // 正在执行检查点的已释放缓冲区
+    private final long mappedThreshold; // 达到该大小的文件使用内存映射打开
+    private final Executor indexExecutor; // 为内存映射文件建立行索引的线程
+    private final Scheduler scheduler; // 释放后执行检查点的线程
+    private final FileJournalManager journals; // 编辑的预写日志
+
+    public FileBufferRegistry(@Value("${files.large-file-threshold:67108864}") long mappedThreshold, FileIoScheduler io,
+                              FileJournalManager journals) {
+        this.mappedThreshold = mappedThreshold;
+        this.indexExecutor = task -> io.getScheduler().schedule(task);
+        this.scheduler = io.getScheduler();
+        this.journals = journals;
+    }
+
+    /**
+     * 启动时重放上次运行中尚未写回原文件的编辑
+     */
+    @PostConstruct
+    public void recover() {
+        journals.recover(path -> {
+            // 恢复时同步建立行索引，重放需要完整的行数；加载时应用残留的日志，释放时检查点写回原文件
+            FileBuffer buffer = new FileBuffer(path, mappedThreshold, Runnable::run, journals);
+            try {
+                buffer.loadIfNeeded();
+            } finally {
+                buffer.dispose();
+            }
+        });
+    }
+
+    /**
+     * 关闭时为所有打开的文档执行检查点
+     */
+    @PreDestroy
+    public void checkpointAll() {
+        closing.values().forEach(CompletableFuture::join); // 等待已释放的缓冲区完成检查点
+        for (FileBuffer buffer : buffers.values()) {
+            try {
+                buffer.checkpoint();
+            } catch (IOException e) {
+                LOGGER.error("[CHECKPOINT ERROR] " + buffer.getPath(), e);
+            }
+        }
+    }
+
+    /**
+     * 将客户端传入的路径转换为注册表使用的键
+     *
+     * @param path 文件路径
+     * @return 规范化后的绝对路径
+     */
+    public static Path normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    /**
+     * 获取指定路径的缓冲区并增加引用计数，不存在时创建。
+     * 同一路径上一个缓冲区的检查点尚未完成时，新缓冲区在读取文件前等待它完成
+     *
+     * @param path 规范化后的文件路径
+     * @return 共享的缓冲区
+     */
+    public FileBuffer acquire(Path path) {
+        return buffers.compute(path, (key, buffer) -> {
+            FileBuffer result = buffer == null
+                    ? new FileBuffer(key, mappedThreshold, indexExecutor, journals, closing.get(key))
+                    : buffer;
+            int refs = result.retain();
+            LOGGER.debug("[ACQUIRE] {} refs: {}", key, refs);
+            return result;
+        });
+    }
+
+    /**
+     * 释放缓冲区的一个引用，引用计数归零时从注册表移除，并在 I/O 调度器上执行检查点。
+     * 调用方可能位于事件循环线程，compute 内只移除缓冲区，不做磁盘读写；
+     * 检查点完成前同一路径重新打开时，新缓冲区等待检查点完成后再读取文件。
+     *
+     * @param buffer 要释放的缓冲区
+     */
+    public void release(FileBuffer buffer) {
+        buffers.computeIfPresent(buffer.getPath(), (key, current) -> {
+            if (current != buffer) {
+                return current; // 已被移除后重新创建的缓冲区，不属于本次释放
+            }
+            int refs = current.release();
+            LOGGER.debug("[RELEASE] {} refs: {}", key, refs);
+            if (refs > 0) {
+                return current;
+            }
+            current.markClosing(); // 最后一个会话已释放，不再接受编辑
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            closing.put(key, done);
+            dispose(key, current, done);
+            return null;
+        });
+    }
+
+    /**
+     * 在 I/O 调度器上写回已保存的编辑并关闭文档占用的资源。
+     * 同一路径上一个缓冲区的检查点完成后才执行，done 完成时同一路径之前的检查点都已完成
+     */
+    private void dispose(Path key, FileBuffer buffer, CompletableFuture<Void> done) {
+        Runnable task = () -> {
+            try {
+                buffer.dispose();
+            } finally {
+                closing.remove(key, done);
+                done.complete(null);
+            }
+        };
+        CompletableFuture<?> previous = buffer.getPrevious();
+        if (previous == null) {
+            schedule(task);
+        } else {
+            previous.whenComplete((result, error) -> schedule(task));
+        }
+    }
+
+    /**
+     * 在 I/O 调度器上执行，调度器已关闭时在当前线程执行
+     */
+    private void schedule(Runnable task) {
+        try {
+            scheduler.schedule(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * 查找已打开的缓冲区，不增加引用计数。
+     * 返回的缓冲区可能随时被释放，读取前需要在读锁下检查文档是否仍然存在
+     *
+     * @param path 规范化后的文件路径
+     * @return 缓冲区，未打开时返回 null
+     */
+    public FileBuffer get(Path path) {
+        return buffers.get(path);
+    }
+
+    /**
+     * @return 当前打开的文档数量
+     */
+    public int size() {
+        return buffers.size();
+    }
+}
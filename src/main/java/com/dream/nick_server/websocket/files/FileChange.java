@@ -0,0 +1,45 @@
+package com.dream.nick_server.websocket.files;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import com.dream.nick_server.websocket.files.document.FileJournal;
+
+/**
+ * 一次应用到文档的编辑，广播给打开该文档的其他会话
+ */
+public class FileChange {
+    private final Object origin; // 提交编辑的会话
+    private final Path path;
+    private final long baseVersion; // 应用前的版本
+    private final long version; // 应用后的版本
+    private final List<FileJournal.Edit> edits; // 按顺序应用的编辑，基于 baseVersion
+
+    public FileChange(Object origin, Path path, long baseVersion, long version, List<FileJournal.Edit> edits) {
+        this.origin = origin;
+        this.path = path;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.edits = edits;
+    }
+
+    public Object getOrigin() {
+        return origin;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<FileJournal.Edit> getEdits() {
+        return edits;
+    }
+}
@@ -0,0 +1,115 @@
+package com.dream.nick_server.websocket.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.dream.nick_server.websocket.WebSocketMessageBody;
+
+/**
+ * 文件套接字的一条请求，解码后不可变。
+ * 每条请求拥有自己的实例，处理器之间不共享任何可变状态，不同会话的请求可以并行处理。
+ */
+public final class FileCommand {
+    private final String name; // 消息类型，即 WebSocketMessageBody 的 message
+    private final String path;
+    private final String cond;
+    private final String value;
+    private final String line;
+    private final String count;
+    private final String baseVersion;
+    private final String mode;
+    private final String depth;
+    private final List<Map<String, String>> ops; // 批量编辑的操作，没有时为 null
+    private final String id; // 客户端生成的请求编号，没有时为 null
+
+    public FileCommand(String name, String path, String cond, String value, String line, String count,
+                       String baseVersion, String mode, String depth, List<Map<String, String>> ops, String id) {
+        this.name = name;
+        this.path = path;
+        this.cond = cond;
+        this.value = value;
+        this.line = line;
+        this.count = count;
+        this.baseVersion = baseVersion;
+        this.mode = mode;
+        this.depth = depth;
+        this.ops = ops == null ? null : Collections.unmodifiableList(new ArrayList<>(ops));
+        this.id = id;
+    }
+
+    /**
+     * 从解码后的消息中取出各个字段
+     *
+     * @param body 已解码的消息
+     * @return 请求
+     */
+    public static FileCommand from(WebSocketMessageBody body) {
+        Map<String, String> value = body.getValue() == null ? Map.of() : body.getValue();
+        return new FileCommand(body.getMessage(),
+                value.get(FilesManagementServer.PATH_KEY),
+                value.get(FilesManagementServer.COND_KEY),
+                value.get(FilesManagementServer.VALUE_KEY),
+                value.get(FilesManagementServer.LINE_KEY),
+                value.get(FilesManagementServer.COUNT_KEY),
+                value.get(FilesManagementServer.BASE_VERSION_KEY),
+                value.get(FilesManagementServer.MODE_KEY),
+                value.get(FilesManagementServer.DEPTH_KEY),
+                body.getOps(),
+                body.getId());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getCond() {
+        return cond;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public String getCount() {
+        return count;
+    }
+
+    public String getBaseVersion() {
+        return baseVersion;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public String getDepth() {
+        return depth;
+    }
+
+    public List<Map<String, String>> getOps() {
+        return ops;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * 不包含写入的内容，可以直接用于日志
+     */
+    @Override
+    public String toString() {
+        return "FileCommand{id=" + id + ", name=" + name + ", path=" + path + ", cond=" + cond + ", line=" + line
+                + ", count=" + count + ", ops=" + (ops == null ? 0 : ops.size()) + "}";
+    }
+}
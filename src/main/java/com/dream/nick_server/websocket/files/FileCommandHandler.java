@@ -0,0 +1,21 @@
+package com.dream.nick_server.websocket.files;
+
+import org.reactivestreams.Publisher;
+
+import com.dream.nick_server.websocket.WebSocketMessageBody;
+
+/**
+ * 一种请求的处理器，在 FilesManagementServer 中按消息类型注册。
+ * 只返回一条消息的处理器返回 Mono，分块读取、分页结果等返回 Flux。
+ * 处理器只能使用参数中的会话与请求，不能保存请求相关的状态。
+ */
+@FunctionalInterface
+public interface FileCommandHandler {
+
+    /**
+     * @param fileManage 当前会话的文件操作对象
+     * @param command 请求
+     * @return 处理结果的消息
+     */
+    Publisher<WebSocketMessageBody> handle(FileManage fileManage, FileCommand command);
+}
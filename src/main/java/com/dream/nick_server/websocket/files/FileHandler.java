@@ -1,12 +1,24 @@
 package com.dream.nick_server.websocket.files;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.WebSocketSession;
 
+import com.dream.nick_server.websocket.BinaryMessageCodec;
+import com.dream.nick_server.websocket.WebSocketMessageBody;
+import com.dream.nick_server.websocket.WebSocketLimits;
+import com.dream.nick_server.websocket.WebSocketMessageCodec;
+
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Component
@@ -16,18 +28,101 @@ public class FileHandler implements WebSocketHandler {
     @Autowired
     private FilesManagementServer fms;
 
+    @Autowired
+    private FileBufferRegistry registry;
+
+    @Autowired
+    private FileIoScheduler io;
+
+    @Autowired
+    private ContentIndex contents;
+
+    @Autowired
+    private WebSocketMessageCodec codec;
+
+    @Autowired
+    private BinaryMessageCodec binaryCodec;
+
+    @Autowired
+    private WebSocketLimits limits;
+
+    @Value("${files.push.buffer-size:256}")
+    private int pushBufferSize; // 每个会话每个文档最多积压的推送数量
+
+    /**
+     * 客户端可以请求二进制子协议，未请求时使用 JSON 文本消息
+     */
+    @Override
+    public List<String> getSubProtocols() {
+        return List.of(BinaryMessageCodec.SUBPROTOCOL);
+    }
+
     @Override
     public Mono<Void> handle(final WebSocketSession session) {
-        LOGGER.info("[File Socket] Connection Established"); // 连接建立日志
+        boolean binary = BinaryMessageCodec.SUBPROTOCOL.equals(session.getHandshakeInfo().getSubProtocol());
+        LOGGER.info("[File Socket] Connection Established, {}", binary ? "binary" : "json"); // 连接建立日志
+
+        FileManage fileManage = new FileManage(registry, contents, io.getScheduler(), pushBufferSize); // 每个会话独立的文件操作对象
+
+        OrderedLanes lanes = new OrderedLanes(); // 本会话需要按顺序执行的请求
+        AtomicInteger active = new AtomicInteger(); // 本会话正在处理的请求数
+
+        Flux<WebSocketMessageBody> responses = limits.receive(session)
+                // 阻塞的文件操作在 I/O 调度器上执行，最多同时处理 sessionConcurrency 个请求，
+                // 响应在就绪后立即发送，带上请求的编号；需要排队的请求见 FilesManagementServer.laneOf
+                .flatMap(msg -> {
+                    // 在事件循环上解码消息内容，之后缓冲区即被释放
+                    WebSocketMessageBody body;
+                    try {
+                        body = decode(msg);
+                    } catch (IOException | IllegalArgumentException e) {
+                        LOGGER.warn("[INVALID MESSAGE]: {}", e.getMessage());
+                        return Flux.just(WebSocketMessageBody.error(null, "Invalid message"));
+                    }
+                    // 只记录消息名称，消息内容（可能是很大的编辑）仅在 TRACE 级别输出
+                    LOGGER.debug("[Received Message]: {}", body.getMessage());
+                    LOGGER.trace("[Received Payload]: {}", body);
+                    FileCommand command = FileCommand.from(body);
+                    if (active.incrementAndGet() >= io.getSessionConcurrency()) {
+                        limits.reached(WebSocketLimits.SESSION_IN_FLIGHT); // 之后的消息等待处理中的请求完成
+                    }
+                    return lanes.submit(fms.laneOf(command), () -> limits.inFlight(fms.getMsg(fileManage, command),
+                                    () -> WebSocketMessageBody.error(command.getName(), WebSocketLimits.BUSY)))
+                            .map(response -> response.withId(command.getId()))
+                            .doFinally(signal -> active.decrementAndGet());
+                }, io.getSessionConcurrency())
+                // 客户端断开后释放打开的文档，同时结束推送，发送随之结束
+                .doFinally(signal -> close(fileManage));
 
         return session.send(
-                session.receive()
-                        .doOnNext(msg -> LOGGER.info("[Received Message]: {}", msg.getPayloadAsText())) // 记录接收到的消息
-                        .map(msg -> {
-                            String response = fms.getMsg(msg.getPayloadAsText()); // 获取处理后的响应消息
-                            LOGGER.debug("[Response]: {}", response); // 记录响应消息
-                            return session.textMessage(response); // 发送响应消息
+                // 请求的响应与其他会话编辑的推送合并发送
+                Flux.merge(responses, fileManage.changes())
+                        .map(response -> {
+                            LOGGER.trace("[Response]: {}", response); // 记录响应消息
+                            // 二进制会话直接编码到会话的缓冲区，文本会话发送 JSON
+                            return binary ? session.binaryMessage(factory -> binaryCodec.encode(response, factory))
+                                    : session.textMessage(response.toJson());
                         })
-        );
+        )
+        // 发送异常结束时同样释放打开的文档
+        .doFinally(signal -> close(fileManage));
+    }
+
+    /**
+     * 二进制帧直接从缓冲区解码，文本帧按 JSON 从缓冲区的字节解析
+     */
+    private WebSocketMessageBody decode(WebSocketMessage msg) throws IOException {
+        if (msg.getType() == WebSocketMessage.Type.BINARY) {
+            return binaryCodec.decode(msg.getPayload());
+        }
+        return codec.read(msg.getPayload());
+    }
+
+    private static void close(FileManage fileManage) {
+        try {
+            fileManage.close();
+        } catch (IOException e) {
+            LOGGER.error("[CLOSE ERROR]:", e);
+        }
     }
 }
@@ -0,0 +1,129 @@
+package com.dream.nick_server.websocket.files;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 文件与路径操作的专用 I/O 调度器。
+ * 阻塞的磁盘读写在这里执行，不占用 reactor-netty 的事件循环线程。
+ * 通过 files.io.mode 选择 bounded-elastic 线程池或虚拟线程（需要 JDK 21 以上）。
+ */
+@Component
+public class FileIoScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileIoScheduler.class);
+
+    public static final String MODE_BOUNDED_ELASTIC = "bounded-elastic";
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private final Scheduler scheduler;
+    private final int sessionConcurrency; // 每个会话同时处理的请求上限
+    private final AtomicInteger queued = new AtomicInteger(); // 已提交但尚未开始执行的操作数
+    private final AtomicInteger active = new AtomicInteger(); // 正在执行的操作数
+
+    public FileIoScheduler(@Value("${files.io.mode:" + MODE_BOUNDED_ELASTIC + "}") String mode,
+                           @Value("${files.io.max-threads:0}") int maxThreads,
+                           @Value("${files.io.max-queued:0}") int maxQueued,
+                           @Value("${files.io.session-concurrency:16}") int sessionConcurrency,
+                           MeterRegistry meterRegistry) {
+        this.scheduler = createScheduler(mode, maxThreads, maxQueued);
+        this.sessionConcurrency = Math.max(1, sessionConcurrency);
+
+        Gauge.builder("files.io.queued", queued, AtomicInteger::get)
+                .description("File I/O operations waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("files.io.active", active, AtomicInteger::get)
+                .description("File I/O operations currently running")
+                .register(meterRegistry);
+        LOGGER.info("File I/O scheduler started, mode: {}, session concurrency: {}", mode, this.sessionConcurrency);
+    }
+
+    /**
+     * 在 I/O 调度器上执行阻塞操作
+     *
+     * @param task 阻塞的文件操作
+     * @return 操作结果
+     */
+    public <T> Mono<T> submit(Callable<T> task) {
+        return Mono.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            queued.incrementAndGet();
+            return Mono.fromCallable(() -> {
+                        if (started.compareAndSet(false, true)) {
+                            queued.decrementAndGet();
+                        }
+                        active.incrementAndGet();
+                        try {
+                            return task.call();
+                        } finally {
+                            active.decrementAndGet();
+                        }
+                    })
+                    .subscribeOn(scheduler)
+                    // 任务在开始前被取消或拒绝时同样要从排队计数中移除
+                    .doFinally(signal -> {
+                        if (started.compareAndSet(false, true)) {
+                            queued.decrementAndGet();
+                        }
+                    });
+        });
+    }
+
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    public int getSessionConcurrency() {
+        return sessionConcurrency;
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    @PreDestroy
+    public void dispose() {
+        scheduler.dispose();
+    }
+
+    /**
+     * 根据配置创建调度器，当前 JDK 不支持虚拟线程时退回 bounded-elastic。
+     * maxThreads、maxQueued 小于等于 0 时使用 Reactor 的默认值。
+     */
+    private static Scheduler createScheduler(String mode, int maxThreads, int maxQueued) {
+        if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            try {
+                ExecutorService executor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+                return Schedulers.fromExecutorService(executor, "files-io");
+            } catch (ReflectiveOperationException e) {
+                LOGGER.warn("Virtual threads are not available on this JDK, falling back to {}", MODE_BOUNDED_ELASTIC);
+            }
+        } else if (!MODE_BOUNDED_ELASTIC.equalsIgnoreCase(mode)) {
+            LOGGER.warn("Unknown files.io.mode: {}, using {}", mode, MODE_BOUNDED_ELASTIC);
+        }
+        return Schedulers.newBoundedElastic(
+                maxThreads > 0 ? maxThreads : Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                maxQueued > 0 ? maxQueued : Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+                "files-io");
+    }
+}
@@ -0,0 +1,203 @@
+package com.dream.nick_server.websocket.files;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.dream.nick_server.websocket.files.document.FileJournal;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 文档预写日志的管理器。
+ * 为每个被编辑的文档在 files.journal.dir 下创建一个日志文件，
+ * 后台线程每隔 files.journal.sync-interval-ms 将所有有新记录的日志统一 fsync（分组提交），
+ * 启动时由 FileBufferRegistry 调用 recover 重放上次未完成检查点的日志中已保存的编辑，
+ * 运行中重新打开检查点失败的文档时，FileBuffer 通过 pending 与 resume 接着使用残留的日志。
+ */
+@Component
+public class FileJournalManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileJournalManager.class);
+
+    private static final String SUFFIX = ".wal";
+
+    private final Path directory; // 日志目录
+    private final long checkpointBytes; // 日志超过该字节数时保存会触发检查点
+    private final Set<FileJournal> journals = ConcurrentHashMap.newKeySet(); // 正在使用的日志
+    private final ScheduledExecutorService syncer;
+
+    public FileJournalManager(@Value("${files.journal.dir:journal}") String directory,
+                              @Value("${files.journal.sync-interval-ms:100}") long syncInterval,
+                              @Value("${files.journal.checkpoint-bytes:4194304}") long checkpointBytes) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.checkpointBytes = checkpointBytes;
+        this.syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "file-journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1, syncInterval);
+        syncer.scheduleWithFixedDelay(this::syncAll, interval, interval, TimeUnit.MILLISECONDS);
+        LOGGER.info("File journal directory: {}, sync interval: {} ms", this.directory, interval);
+    }
+
+    public long getCheckpointBytes() {
+        return checkpointBytes;
+    }
+
+    /**
+     * 为文档创建日志，以文档当前的磁盘内容作为基准。
+     * 文档残留的日志必须先通过 pending 与 resume 处理，已存在的日志不会被覆盖
+     *
+     * @param target 规范化后的文档路径
+     * @return 日志
+     * @throws IOException 创建失败，或日志文件已存在
+     */
+    public FileJournal open(Path target) throws IOException {
+        FileJournal journal = FileJournal.create(journalFile(target), target);
+        journals.add(journal);
+        LOGGER.debug("[JOURNAL] {} -> {}", target, journal.getFile());
+        return journal;
+    }
+
+    /**
+     * 读取文档残留的日志，例如上次关闭时检查点失败而保留的日志。
+     * 原文件在日志的基准之后已被替换，或日志中没有编辑时，删除日志并返回 null
+     *
+     * @param target 规范化后的文档路径
+     * @return 日志中尚未写回原文件的编辑，没有残留日志时返回 null
+     * @throws IOException 读取失败，日志保留
+     */
+    public FileJournal.Recovery pending(Path target) throws IOException {
+        Path file = journalFile(target);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        FileJournal.Recovery recovery = FileJournal.read(file);
+        if (recovery.stale || recovery.edits.isEmpty()) {
+            LOGGER.info("[RECOVER] Discard {} journal for {}", recovery.stale ? "stale" : "empty", target);
+            Files.delete(file);
+            return null;
+        }
+        return recovery;
+    }
+
+    /**
+     * 继续使用文档残留的日志，其中的编辑已由调用方应用到文档
+     *
+     * @param target 规范化后的文档路径
+     * @param recovery pending 返回的恢复信息
+     * @return 日志
+     * @throws IOException 打开失败
+     */
+    public FileJournal resume(Path target, FileJournal.Recovery recovery) throws IOException {
+        FileJournal journal = FileJournal.resume(journalFile(target), recovery);
+        journals.add(journal);
+        LOGGER.debug("[JOURNAL] {} resumed from {}", target, journal.getFile());
+        return journal;
+    }
+
+    /**
+     * 关闭日志
+     *
+     * @param journal 日志
+     * @param delete 是否删除日志文件，仅在检查点成功后删除
+     */
+    public void close(FileJournal journal, boolean delete) {
+        journals.remove(journal);
+        try {
+            journal.close();
+            if (delete) {
+                Files.deleteIfExists(journal.getFile());
+            }
+        } catch (IOException e) {
+            LOGGER.error("[JOURNAL ERROR] Failed to close " + journal.getFile(), e);
+        }
+    }
+
+    /**
+     * 重放日志目录中残留的日志。
+     * 原文件在日志的最后一次检查点之后已被替换的日志视为过期，直接删除；
+     * 其余日志交给 recoverer 打开文档并写回其中已保存的编辑，最后一次保存之后的编辑丢弃；
+     * 写回成功后由文档删除日志，失败的日志保留，留待下次处理。
+     *
+     * @param recoverer 打开文档、应用残留日志中的编辑并执行检查点
+     */
+    public void recover(Recoverer recoverer) {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    FileJournal.Recovery recovery = FileJournal.read(file);
+                    if (recovery.stale || recovery.edits.isEmpty()) {
+                        LOGGER.info("[RECOVER] Discard {} journal for {}", recovery.stale ? "stale" : "empty", recovery.target);
+                        Files.delete(file);
+                    } else {
+                        recoverer.recover(recovery.target);
+                        LOGGER.info("[RECOVER] {} edits replayed to {}", recovery.edits.size(), recovery.target);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("[RECOVER ERROR] Failed to replay journal " + file, e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("[RECOVER ERROR] Failed to list journal directory " + directory, e);
+        }
+    }
+
+    /**
+     * 分组提交：将所有有新记录的日志 fsync 到磁盘
+     */
+    void syncAll() {
+        for (FileJournal journal : journals) {
+            if (!journal.isDirty()) {
+                continue;
+            }
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                LOGGER.error("[SYNC ERROR] " + journal.getFile(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void dispose() {
+        syncer.shutdown();
+        syncAll();
+        for (FileJournal journal : journals) {
+            close(journal, false);
+        }
+    }
+
+    /**
+     * 日志文件名由文档路径确定，同一文档总是对应同一个日志文件
+     */
+    private Path journalFile(Path target) {
+        return directory.resolve(UUID.nameUUIDFromBytes(target.toString().getBytes(StandardCharsets.UTF_8)) + SUFFIX);
+    }
+
+    /**
+     * 启动恢复时打开文档，将残留日志中的编辑写回原文件
+     */
+    @FunctionalInterface
+    public interface Recoverer {
+        void recover(Path target) throws IOException;
+    }
+}
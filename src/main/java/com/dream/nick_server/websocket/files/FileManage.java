@@ -1,26 +1,34 @@
 package com.dream.nick_server.websocket.files;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.Closeable;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Component;
 
 import com.dream.nick_server.websocket.WebSocketMessageBody;
+import com.dream.nick_server.websocket.files.document.FileJournal;
+import com.dream.nick_server.websocket.files.document.LineDocument;
 
-@Component
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * 单个 WebSocket 会话的文件操作入口。
+ * 每个会话可以同时打开多个文档，文档内容保存在 FileBufferRegistry 中共享的 FileBuffer 里，
+ * 未指定路径的操作作用于最近一次打开的文档。
+ * 文件内容以多个有界的分块消息发送，每块带有序号，发送速度受 WebSocket 背压控制。
+ * 编辑可以携带所基于的版本 baseVersion，其他会话在此之后的编辑会被合并；
+ * 其他会话对已打开文档的编辑以 file_change 消息推送给本会话，积压过多时合并为 file_resync。
+ */
 public class FileManage implements Closeable{
     private static Logger LOGGER = LoggerFactory.getLogger(FileManage.class);
 
@@ -30,165 +38,559 @@ public class FileManage implements Closeable{
     public static final String END = "file_end";
     public static final String READE_LINE = "file_read_line";
     public static final String WRITE_LINE = "file_write_line";
+    public static final String READ_RANGE = "file_read_range";
+    public static final String APPLY_BATCH = "file_apply_batch";
+    public static final String CHANGE = "file_change";
+    public static final String RESYNC = "file_resync";
 
-    private String path; // 文件路径
-    private Map<String, String> model; // 存储文件内容的 Map
-    private Lock lock = new ReentrantLock(); // 锁，用于保证线程安全
+    // file_apply_batch 中每个操作的字段，行号与内容使用 lineNum 与 value
+    public static final String OP_KEY = "op";
+    public static final String OP_INSERT = "insert";
+    public static final String OP_REPLACE = "replace";
+    public static final String OP_DELETE = "delete";
+    public static final String VERSION_KEY = "version";
+    public static final String BASE_VERSION_KEY = "baseVersion";
 
-    // 单例模式实例
-    private static FileManage instance;
+    // 大文件模式下 file_open 返回的信息
+    public static final String PATH_KEY = "path";
+    public static final String MODE_KEY = "mode";
+    public static final String SIZE_KEY = "size";
+    public static final String INDEXED_KEY = "indexed";
+    public static final String MODE_MAPPED = "mapped";
 
-    // 私有构造函数
-    private FileManage() {
-        this.model = new TreeMap<>();
-    }
+    // 分块消息中的字段，其余键为行号
+    public static final String SEQ_KEY = "seq";
+    public static final String START_KEY = "start";
+    public static final String COUNT_KEY = "count";
+    public static final String LINES_KEY = "lines";
+    public static final String LAST_KEY = "last";
 
-    // 获取单例实例的方法
-    public static FileManage getInstance() {
-        if (instance == null) {
-            synchronized (FileManage.class) {
-                if (instance == null) {
-                    instance = new FileManage();
-                }
-            }
-        }
-        return instance;
+    private static final int CHUNK_LINES = 500; // 每个分块最多包含的行数
+    private static final int CHUNK_CHARS = 64 * 1024; // 每个分块最多包含的字符数（超长的单行除外）
+
+    private final FileBufferRegistry registry; // 共享的文档缓冲区注册表
+    private final ContentIndex contents; // 工作区内容索引，保存后更新
+    private final Map<Path, FileBuffer> opened = new ConcurrentHashMap<>(); // 本会话打开的文档
+    private volatile FileBuffer current; // 最近一次打开的文档
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final Scheduler scheduler; // 生成分块消息时读取文档的线程
+    private final Map<Path, ChangeFeed<WebSocketMessageBody>> feeds = new ConcurrentHashMap<>(); // 已打开文档的编辑推送
+    private final Sinks.Many<Flux<WebSocketMessageBody>> pushes = Sinks.many().unicast().onBackpressureBuffer(); // 新打开文档的推送
+    private final int pushLimit; // 每个文档最多积压的推送数量，超过后合并为一条 file_resync
+
+    public FileManage(FileBufferRegistry registry, ContentIndex contents, Scheduler scheduler, int pushLimit) {
+        this.registry = registry;
+        this.contents = contents;
+        this.scheduler = scheduler;
+        this.pushLimit = pushLimit;
     }
 
     /**
-     * 打开指定路径的文件，并读取其内容到内存中
+     * 打开指定路径的文件，并读取其内容到内存中。
+     * 内容以 file_open 分块消息逐块返回，第一块额外包含路径与总行数；
+     * 内存映射打开的大文件只返回文件信息，内容通过 file_read_range 或 file_read_line 读取。
+     *
      * @param path 文件路径
-     * @return 操作结果的 JSON 字符串
+     * @return 操作结果的消息序列
      */
-    public String open(String path) {
-        lock.lock();
+    public Flux<WebSocketMessageBody> open(String path) {
+        // 检查路径是否合法
+        if (path == null || path.isEmpty()) {
+            return Flux.just(WebSocketMessageBody.error(OPEN, "Invalid path provided"));
+        }
+
+        if (closed.get()) {
+            return Flux.just(WebSocketMessageBody.error(OPEN, "Session closed"));
+        }
+
+        // 记录文件打开操作
+        LOGGER.info("[OPEN] Attempting to open file at path: " + path);
+
+        Path key = FileBufferRegistry.normalize(path);
+        FileBuffer buffer = opened.get(key);
+        boolean acquired = buffer == null;
+        if (acquired) {
+            buffer = registry.acquire(key);
+        }
+
         try {
-            // 检查路径是否合法
-            if (path == null || path.isEmpty()) {
-                return WebSocketMessageBody.error(OPEN, "Invalid path provided");
+            buffer.loadIfNeeded();
+        } catch (IOException e) {
+            LOGGER.error("[OPEN ERROR] Failed to read file at path: " + path, e);
+            if (acquired) {
+                registry.release(buffer);
             }
+            return Flux.just(WebSocketMessageBody.error(OPEN, "Failed to read file"));
+        }
 
-            // 记录文件打开操作
-            LOGGER.info("[OPEN] Attempting to open file at path: " + path);
+        if (acquired && opened.putIfAbsent(key, buffer) != null) {
+            registry.release(buffer); // 同一会话并发打开同一文件，保留先登记的引用
+            buffer = opened.get(key);
+        } else if (acquired) {
+            ChangeFeed<WebSocketMessageBody> feed = new ChangeFeed<>(pushLimit, this::changeFrame, version -> resyncFrame(key, version))
+                    .subscribe(buffer.changes().filter(change -> change.getOrigin() != this));
+            feeds.put(key, feed);
+            synchronized (pushes) {
+                pushes.tryEmitNext(feed.asFlux());
+            }
+        }
+        this.current = buffer;
+        if (closed.get()) {
+            // 会话在登记之前已经关闭，close 可能已遍历完 opened 而没有看到这个文档，由这里释放；
+            // close 先置位再遍历，两边至少有一方能看到对方，remove 保证只释放一次
+            if (opened.remove(key, buffer)) {
+                unsubscribe(key);
+                registry.release(buffer);
+            }
+            this.current = null;
+            return Flux.just(WebSocketMessageBody.error(OPEN, "Session closed"));
+        }
 
-            // 设置文件路径
-            this.path = path;
-            this.model.clear();
-            String result;
+        if (buffer.isMapped()) {
+            // 大文件不返回内容，客户端按范围或按行读取
+            Map<String, String> info = new LinkedHashMap<>();
+            info.put(PATH_KEY, path);
+            info.put(MODE_KEY, MODE_MAPPED);
+            info.put(SIZE_KEY, String.valueOf(buffer.getMapped().size()));
+            info.put(INDEXED_KEY, String.valueOf(buffer.getMapped().isIndexed()));
+            info.put(VERSION_KEY, String.valueOf(currentVersion(buffer)));
+            return Flux.just(WebSocketMessageBody.success(OPEN, info));
+        }
 
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(this.path), StandardCharsets.UTF_8))) {
-                String line;
-                int lineNumber = 1;
-                while ((line = br.readLine()) != null) {
-                    this.model.put(String.valueOf(lineNumber++), line);
-                }
-                LOGGER.debug("[OPEN] File content: " + this.model);
-                result = WebSocketMessageBody.success(OPEN, model);
-            } catch (IOException e) {
-                LOGGER.error("[OPEN ERROR] Failed to read file at path: " + path, e);
-                result = WebSocketMessageBody.error(OPEN, "Failed to read file");
+        int lines;
+        long version;
+        buffer.readLock().lock();
+        try {
+            if (buffer.getDocument() == null) {
+                // 本会话同时关闭了该文档
+                return Flux.just(WebSocketMessageBody.error(OPEN, "File closed"));
             }
-
-            return result;
+            lines = buffer.getDocument().lineCount();
+            version = buffer.getVersion();
         } finally {
-            lock.unlock();
+            buffer.readLock().unlock();
         }
+        LOGGER.debug("[OPEN] {} lines, version {}", lines, version);
+        Map<String, String> header = new LinkedHashMap<>();
+        header.put(PATH_KEY, path);
+        header.put(LINES_KEY, String.valueOf(lines));
+        header.put(VERSION_KEY, String.valueOf(version));
+        return chunks(buffer, OPEN, 0, Integer.MAX_VALUE, header);
     }
 
-
-
+    /**
+     * 读取从指定行开始的若干行，以分块消息返回
+     *
+     * @param path 文件路径，为空时读取当前文档
+     * @param line 起始行号，从 1 开始
+     * @param count 读取的行数
+     * @return 操作结果的消息序列
+     */
+    public Flux<WebSocketMessageBody> readRange(String path, String line, String count) {
+        FileBuffer buffer = resolve(path);
+        if (buffer == null) {
+            return Flux.just(WebSocketMessageBody.error(READ_RANGE, "File not open"));
+        }
+        int start = parseLine(line);
+        int limit = parseNumber(count);
+        if (start < 0 || limit <= 0) {
+            return Flux.just(WebSocketMessageBody.error(READ_RANGE, "Invalid range"));
+        }
+        LOGGER.info("[READ_RANGE] {} +{}", line, limit);
+        return chunks(buffer, READ_RANGE, start, limit, null);
+    }
 
     /**
-     * 将内存中的内容保存到文件中
-     * 
-     * @return 操作结果的 JSON 字符串
+     * 保存文档：编辑已记录在预写日志中，保存时 fsync 日志，日志较大时写回原文件
+     *
+     * @param path 文件路径，为空时保存当前文档
+     * @return 操作结果的消息
      */
-    public String save() {
-        lock.lock(); // 获取锁以保证线程安全
+    public WebSocketMessageBody save(String path) {
+        FileBuffer buffer = resolve(path);
+        if (buffer == null) {
+            return WebSocketMessageBody.error(SAVE, "File not open");
+        }
+        LOGGER.info("[SAVE] Saving contents to file: " + buffer.getPath());
         try {
-            LOGGER.info("[SAVE] Saving contents to file: " + this.path);
-            String result;
-            
-            // 尝试将内存中的内容写入到文件
-            try (BufferedWriter bw = new BufferedWriter(
-                    new OutputStreamWriter(new FileOutputStream(this.path), StandardCharsets.UTF_8))) {
-                // 遍历内存中的所有行，将每一行写入到文件中
-                for (String line : this.model.values()) {
-                    bw.write(line); // 写入一行
-                    bw.newLine(); // 写入换行符
-                }
-                result = WebSocketMessageBody.success(SAVE, null); // 成功保存内容，返回成功的 JSON 响应
-            } catch (IOException e) {
-                // 捕获并处理文件写入错误
-                LOGGER.error("[SAVE ERROR] Failed to save content to file:", e);
-                result = WebSocketMessageBody.error(SAVE, null); // 返回保存错误的 JSON 响应
-            }
-            
-            return result;
-        } finally {
-            lock.unlock(); // 释放锁
+            buffer.save();
+            contents.updated(buffer);
+            return WebSocketMessageBody.success(SAVE, null); // 成功保存内容，返回成功的响应
+        } catch (IOException e) {
+            // 捕获并处理文件写入错误
+            LOGGER.error("[SAVE ERROR] Failed to save content to file:", e);
+            return WebSocketMessageBody.error(SAVE, null); // 返回保存错误的响应
         }
     }
 
-
     /**
      * 结束文件操作，并关闭文件
-     * @return 操作结果的 JSON 字符串
+     *
+     * @param path 文件路径，为空时关闭当前文档
+     * @return 操作结果的消息
      */
-    public String end(){
-        try {
-            this.close();
-        } catch (IOException e) {
-            return WebSocketMessageBody.error(END, "Close failed");
+    public WebSocketMessageBody end(String path){
+        FileBuffer buffer = resolve(path);
+        if (buffer == null) {
+            return WebSocketMessageBody.error(END, "File not open");
+        }
+        if (opened.remove(buffer.getPath(), buffer)) {
+            unsubscribe(buffer.getPath());
+            registry.release(buffer);
         }
+        if (current == buffer) {
+            current = null;
+        }
+        LOGGER.info("[END] " + buffer.getPath());
         return WebSocketMessageBody.success(END, null);
     }
 
+    /**
+     * 其他会话对本会话已打开文档的编辑，会话关闭时结束。
+     * 每个文档的推送各自按下游请求量逐条发送，慢速的会话只会积压有限条消息。
+     *
+     * @return file_change 与 file_resync 消息的序列
+     */
+    public Flux<WebSocketMessageBody> changes() {
+        return pushes.asFlux().flatMap(feed -> feed, Integer.MAX_VALUE, 1);
+    }
+
+    /**
+     * 释放本会话打开的全部文档，在会话断开时调用
+     */
     @Override
     public void close() throws IOException {
-        lock.lock();
-        try {
-            this.path = null;
-            this.model.clear();
-            LOGGER.info("[CLOSE]");
-        } finally {
-            lock.unlock();
+        if (closed.getAndSet(true)) {
+            return;
         }
+        for (FileBuffer buffer : opened.values()) {
+            if (opened.remove(buffer.getPath(), buffer)) {
+                unsubscribe(buffer.getPath());
+                registry.release(buffer);
+            }
+        }
+        this.current = null;
+        synchronized (pushes) {
+            pushes.tryEmitComplete();
+        }
+        LOGGER.info("[CLOSE]");
     }
 
     /**
      * 读取指定行的内容
+     * @param path 文件路径，为空时读取当前文档
      * @param line 行号
-     * @return 操作结果的 JSON 字符串
+     * @return 操作结果的消息
      */
-    public String readLine(String line) {
-        lock.lock();
+    public WebSocketMessageBody readLine(String path, String line) {
+        FileBuffer buffer = resolve(path);
+        if (buffer == null) {
+            return WebSocketMessageBody.error(READE_LINE, "File not open");
+        }
+        buffer.readLock().lock();
         try {
             LOGGER.info("[READ_LINE] " + line);
-            String text = this.model.get(line);
-            if (text == null) {
+            LineDocument document = buffer.getDocument();
+            if (document == null) {
+                return WebSocketMessageBody.error(READE_LINE, "File closed"); // 文档已被全部会话关闭
+            }
+            int index = parseLine(line);
+            if (!document.hasLine(index)) {
                 return WebSocketMessageBody.error(READE_LINE, "Line not found");
             }
-            return WebSocketMessageBody.success( READE_LINE, Map.of(line, text));
+            return WebSocketMessageBody.success( READE_LINE, Map.of(line, document.getLine(index)));
         } finally {
-            lock.unlock();
+            buffer.readLock().unlock();
         }
     }
 
     /**
      * 写入内容到指定行
-     * @param line 行号
+     * @param path 文件路径，为空时写入当前文档
+     * @param line 行号，写入最后一行之后的行号时追加新行
      * @param text 写入的内容
-     * @return 操作结果的 JSON 字符串
+     * @param baseVersion 写入所基于的文档版本，为空时基于当前版本
+     * @return 操作结果的消息，包含新的文档版本
      */
-    public String writeLine(String line, String text) {
-        lock.lock();
+    public WebSocketMessageBody writeLine(String path, String line, String text, String baseVersion) {
+        FileBuffer buffer = resolve(path);
+        if (buffer == null) {
+            return WebSocketMessageBody.error(WRITE_LINE, "File not open");
+        }
+        buffer.writeLock().lock();
         try {
             LOGGER.info("[WRITE_LINE] " + line);
-            this.model.put(line, text);
-            return WebSocketMessageBody.success(WRITE_LINE, null);
+            long base = parseVersion(baseVersion, buffer);
+            int index = parseLine(line);
+            if (base < 0) {
+                return WebSocketMessageBody.error(WRITE_LINE, "Invalid version");
+            }
+            if (text == null || index < 0) {
+                return WebSocketMessageBody.error(WRITE_LINE, "Line out of range");
+            }
+            // 写入基准版本最后一行之后的行号时追加新行
+            byte op = index == buffer.lineCountAt(base) ? FileJournal.INSERT : FileJournal.REPLACE;
+            buffer.apply(this, base, List.of(new FileJournal.Edit(op, index, text)));
+            return WebSocketMessageBody.success(WRITE_LINE, Map.of(VERSION_KEY, String.valueOf(buffer.getVersion())));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            LOGGER.warn("[WRITE_LINE] Rejected: {}", e.getMessage());
+            return WebSocketMessageBody.error(WRITE_LINE, e instanceof IndexOutOfBoundsException ? "Line out of range" : "Version out of range");
+        } catch (IllegalStateException e) {
+            LOGGER.warn("[WRITE_LINE] Rejected: {}", e.getMessage());
+            return WebSocketMessageBody.error(WRITE_LINE, "File closed");
+        } catch (IOException e) {
+            LOGGER.error("[WRITE_LINE ERROR] Failed to journal edit:", e);
+            return WebSocketMessageBody.error(WRITE_LINE, "Failed to write line");
         } finally {
-            lock.unlock();
+            buffer.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 在一次写锁内按顺序应用一批编辑，只返回一条确认消息。
+     * 应用前先校验全部操作，任何一个操作无效时整批都不应用。
+     * 每个操作为 {op: insert|replace|delete, lineNum: 行号, value: 内容}，
+     * 行号从 1 开始，基于 baseVersion 时的文档与前面的操作应用之后的结果。
+     *
+     * @param path 文件路径，为空时作用于当前文档
+     * @param ops 操作列表
+     * @param baseVersion 操作所基于的文档版本，为空时基于当前版本
+     * @return 操作结果的消息，包含新的文档版本
+     */
+    public WebSocketMessageBody applyBatch(String path, List<Map<String, String>> ops, String baseVersion) {
+        FileBuffer buffer = resolve(path);
+        if (buffer == null) {
+            return WebSocketMessageBody.error(APPLY_BATCH, "File not open");
+        }
+        if (ops == null || ops.isEmpty()) {
+            return WebSocketMessageBody.error(APPLY_BATCH, "No operations");
+        }
+        List<FileJournal.Edit> edits = new ArrayList<>(ops.size());
+        for (int i = 0; i < ops.size(); i++) {
+            FileJournal.Edit edit = parseEdit(ops.get(i));
+            if (edit == null) {
+                return WebSocketMessageBody.error(APPLY_BATCH, "Invalid operation at " + i);
+            }
+            edits.add(edit);
+        }
+        buffer.writeLock().lock();
+        try {
+            long base = parseVersion(baseVersion, buffer);
+            if (base < 0) {
+                return WebSocketMessageBody.error(APPLY_BATCH, "Invalid version");
+            }
+            List<FileJournal.Edit> applied = buffer.apply(this, base, edits);
+            LOGGER.info("[APPLY_BATCH] {} ops, {} applied, version {}", ops.size(), applied.size(), buffer.getVersion());
+            Map<String, String> result = new LinkedHashMap<>();
+            result.put(VERSION_KEY, String.valueOf(buffer.getVersion()));
+            result.put(COUNT_KEY, String.valueOf(applied.size()));
+            result.put(LINES_KEY, String.valueOf(buffer.getDocument().lineCount()));
+            return WebSocketMessageBody.success(APPLY_BATCH, result);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            LOGGER.warn("[APPLY_BATCH] Rejected: {}", e.getMessage());
+            return WebSocketMessageBody.error(APPLY_BATCH, e instanceof IndexOutOfBoundsException ? "Line out of range" : "Version out of range");
+        } catch (IllegalStateException e) {
+            LOGGER.warn("[APPLY_BATCH] Rejected: {}", e.getMessage());
+            return WebSocketMessageBody.error(APPLY_BATCH, "File closed");
+        } catch (IOException e) {
+            LOGGER.error("[APPLY_BATCH ERROR] Failed to journal edits:", e);
+            return WebSocketMessageBody.error(APPLY_BATCH, "Failed to apply operations");
+        } finally {
+            buffer.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按需逐块读取文档，每次只在读锁下读取一个分块，
+     * 下游请求下一块时才继续读取，因此内存占用与文件大小无关。
+     *
+     * @param buffer 文档缓冲区
+     * @param message 分块消息使用的消息类型
+     * @param from 起始行号，从 0 开始
+     * @param limit 最多读取的行数
+     * @param header 附加到第一个分块的信息，可以为 null
+     * @return 分块消息序列
+     */
+    private Flux<WebSocketMessageBody> chunks(FileBuffer buffer, String message, int from, int limit, Map<String, String> header) {
+        long end = Math.min((long) from + limit, Integer.MAX_VALUE);
+        // state[0] 为分块序号，state[1] 为下一个要读取的行号
+        return Flux.<WebSocketMessageBody, int[]>generate(() -> new int[] { 0, from }, (state, sink) -> {
+            int seq = state[0];
+            int next = state[1];
+            Map<String, String> chunk = new LinkedHashMap<>();
+            if (seq == 0 && header != null) {
+                chunk.putAll(header);
+            }
+            chunk.put(SEQ_KEY, String.valueOf(seq));
+            chunk.put(START_KEY, String.valueOf(next + 1));
+            chunk.put(COUNT_KEY, "0");
+            chunk.put(LAST_KEY, "false");
+
+            int lines = 0;
+            boolean last;
+            buffer.readLock().lock();
+            try {
+                LineDocument document = buffer.getDocument();
+                if (document == null) {
+                    // 文档已被全部会话关闭
+                    sink.next(WebSocketMessageBody.error(message, "File closed"));
+                    sink.complete();
+                    return state;
+                }
+                int chars = 0;
+                while (next < end && lines < CHUNK_LINES && chars < CHUNK_CHARS && document.hasLine(next)) {
+                    String text = document.getLine(next);
+                    chunk.put(String.valueOf(next + 1), text);
+                    chars += text.length();
+                    lines++;
+                    next++;
+                }
+                last = next >= end || !document.hasLine(next);
+            } finally {
+                buffer.readLock().unlock();
+            }
+
+            chunk.put(COUNT_KEY, String.valueOf(lines));
+            chunk.put(LAST_KEY, String.valueOf(last));
+            sink.next(WebSocketMessageBody.success(message, chunk));
+            if (last) {
+                sink.complete();
+            }
+            state[0] = seq + 1;
+            state[1] = next;
+            return state;
+        }).subscribeOn(scheduler);
+    }
+
+    /**
+     * 将客户端的行号（从 1 开始）转换为文档行号（从 0 开始）
+     *
+     * @param line 行号字符串
+     * @return 从 0 开始的行号，格式错误时返回 -1
+     */
+    private static int parseLine(String line) {
+        int number = parseNumber(line);
+        return number > 0 ? number - 1 : -1;
+    }
+
+    /**
+     * 解析客户端传入的非负整数
+     *
+     * @param number 数字字符串
+     * @return 解析结果，格式错误时返回 -1
+     */
+    private static int parseNumber(String number) {
+        if (number == null) {
+            return -1;
+        }
+        try {
+            return Math.max(-1, Integer.parseInt(number.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 将客户端的操作转换为编辑
+     *
+     * @param op {op, lineNum, value}
+     * @return 编辑，格式错误时返回 null
+     */
+    private static FileJournal.Edit parseEdit(Map<String, String> op) {
+        if (op == null) {
+            return null;
+        }
+        int index = parseLine(op.get(FilesManagementServer.LINE_KEY));
+        String text = op.get(FilesManagementServer.VALUE_KEY);
+        if (index < 0) {
+            return null;
+        }
+        switch (String.valueOf(op.get(OP_KEY))) {
+            case OP_INSERT:
+                return text == null ? null : new FileJournal.Edit(FileJournal.INSERT, index, text);
+            case OP_REPLACE:
+                return text == null ? null : new FileJournal.Edit(FileJournal.REPLACE, index, text);
+            case OP_DELETE:
+                return new FileJournal.Edit(FileJournal.DELETE, index, null);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 解析编辑所基于的版本，调用方必须持有读锁或写锁
+     *
+     * @param version 版本字符串，为空时使用当前版本
+     * @return 版本，格式错误时返回 -1
+     */
+    private static long parseVersion(String version, FileBuffer buffer) {
+        if (version == null || version.isEmpty()) {
+            return buffer.getVersion();
+        }
+        try {
+            return Math.max(-1, Long.parseLong(version.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static long currentVersion(FileBuffer buffer) {
+        buffer.readLock().lock();
+        try {
+            return buffer.getVersion();
+        } finally {
+            buffer.readLock().unlock();
+        }
+    }
+
+    /**
+     * 将其他会话的编辑转换为 file_change 消息，行号从 1 开始
+     */
+    private WebSocketMessageBody changeFrame(FileChange change) {
+        Map<String, String> value = new LinkedHashMap<>();
+        value.put(PATH_KEY, change.getPath().toString());
+        value.put(BASE_VERSION_KEY, String.valueOf(change.getBaseVersion()));
+        value.put(VERSION_KEY, String.valueOf(change.getVersion()));
+        List<Map<String, String>> ops = new ArrayList<>(change.getEdits().size());
+        for (FileJournal.Edit edit : change.getEdits()) {
+            Map<String, String> op = new LinkedHashMap<>();
+            op.put(OP_KEY, edit.op == FileJournal.INSERT ? OP_INSERT : edit.op == FileJournal.DELETE ? OP_DELETE : OP_REPLACE);
+            op.put(FilesManagementServer.LINE_KEY, String.valueOf(edit.line + 1));
+            if (edit.text != null) {
+                op.put(FilesManagementServer.VALUE_KEY, edit.text);
+            }
+            ops.add(op);
+        }
+        return WebSocketMessageBody.success(CHANGE, value, ops);
+    }
+
+    /**
+     * 积压的编辑被丢弃后通知客户端重新读取文档
+     */
+    private static WebSocketMessageBody resyncFrame(Path path, long version) {
+        Map<String, String> value = new LinkedHashMap<>();
+        value.put(PATH_KEY, path.toString());
+        value.put(VERSION_KEY, String.valueOf(version));
+        return WebSocketMessageBody.success(RESYNC, value);
+    }
+
+    private void unsubscribe(Path path) {
+        ChangeFeed<WebSocketMessageBody> feed = feeds.remove(path);
+        if (feed != null) {
+            feed.cancel();
+        }
+    }
+
+    /**
+     * 查找本会话中指定路径对应的文档
+     *
+     * @param path 文件路径，为空时返回当前文档
+     * @return 已打开的缓冲区，未打开时返回 null
+     */
+    private FileBuffer resolve(String path) {
+        if (path == null || path.isEmpty()) {
+            return current;
         }
+        return opened.get(FileBufferRegistry.normalize(path));
     }
 }
@@ -1,6 +1,10 @@
 package com.dream.nick_server.websocket.files;
 
+import java.nio.file.InvalidPathException;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,6 +12,14 @@ import org.springframework.stereotype.Component;
 
 import com.dream.nick_server.websocket.WebSocketMessageBody;
 
+import reactor.core.publisher.Flux;
+
+/**
+ * 文件套接字的请求分发。
+ * 每条消息解码为不可变的 FileCommand，再交给按消息类型注册的 FileCommandHandler 处理，
+ * 本身不保存任何请求相关的状态，不同会话的请求在 I/O 调度器上并行执行。
+ * 同一会话内哪些请求需要排队执行由 laneOf 决定。
+ */
 @Component
 public class FilesManagementServer {
     private static final Logger LOGGER = LoggerFactory.getLogger(FilesManagementServer.class);
@@ -17,62 +29,131 @@ public class FilesManagementServer {
     public static final String COND_KEY = "cond";
     public static final String VALUE_KEY = "value";
     public static final String LINE_KEY = "lineNum";
+    public static final String COUNT_KEY = "count";
+    public static final String BASE_VERSION_KEY = FileManage.BASE_VERSION_KEY;
+    public static final String MODE_KEY = PathManage.MODE_KEY;
+    public static final String DEPTH_KEY = PathManage.DEPTH_KEY;
+
+    static final String SESSION_LANE = ""; // 按到达顺序逐个执行、读取或改变会话当前文档的请求所在的队列
+    static final String PATH_LANE = "path:"; // 修改同一路径的请求所在队列的前缀
+    static final String OPEN_LANE = "open:"; // 打开或关闭同一路径的请求所在队列的前缀，读取该路径的请求等待其中的请求
+    // 改变会话当前文档的请求
+    private static final Set<String> CURRENT = Set.of(FileManage.OPEN, FileManage.END);
+    // 会修改文档或路径、或改变会话当前文档的请求，同一路径上按顺序执行
+    private static final Set<String> WRITES = Set.of(FileManage.OPEN, FileManage.SAVE, FileManage.END,
+            FileManage.WRITE_LINE, FileManage.APPLY_BATCH, PathManage.CREATE, PathManage.DELETE);
+    // 未指定路径时读取会话当前文档的请求
+    private static final Set<String> DOCUMENT_READS = Set.of(FileManage.READE_LINE, FileManage.READ_RANGE);
+
+    private final FileIoScheduler io;
+    private final Map<String, FileCommandHandler> handlers; // 按消息类型注册的处理器
+
+    public FilesManagementServer(PathManage pathManage, ContentIndex contentIndex, FileIoScheduler io) {
+        this.io = io;
+        Map<String, FileCommandHandler> map = new HashMap<>();
+        map.put(FileManage.OPEN, many((fileManage, c) -> fileManage.open(c.getPath())));
+        map.put(FileManage.READ_RANGE, many((fileManage, c) -> fileManage.readRange(c.getPath(), c.getLine(), c.getCount())));
+        map.put(FileManage.SAVE, single((fileManage, c) -> fileManage.save(c.getPath())));
+        map.put(FileManage.END, single((fileManage, c) -> fileManage.end(c.getPath())));
+        map.put(FileManage.READE_LINE, single((fileManage, c) -> fileManage.readLine(c.getPath(), c.getLine())));
+        map.put(FileManage.WRITE_LINE, single((fileManage, c) -> fileManage.writeLine(c.getPath(), c.getLine(), c.getValue(), c.getBaseVersion())));
+        map.put(FileManage.APPLY_BATCH, single((fileManage, c) -> fileManage.applyBatch(c.getPath(), c.getOps(), c.getBaseVersion())));
+        map.put(PathManage.EACH, many((fileManage, c) -> PathManage.MODE_STREAM.equals(c.getMode())
+                ? pathManage.eachStream(c.getPath(), c.getDepth(), c.getCount()) // 流式列出，按目录分页返回
+                : Flux.just(pathManage.each())));
+        map.put(PathManage.SEARCH, single((fileManage, c) -> pathManage.search(c.getCond())));
+        map.put(PathManage.CREATE, single((fileManage, c) -> pathManage.create(c.getPath())));
+        map.put(PathManage.DELETE, single((fileManage, c) -> pathManage.delete(c.getPath())));
+        map.put(PathManage.END, single((fileManage, c) -> pathManage.end()));
+        map.put(ContentIndex.GREP, many((fileManage, c) -> contentIndex.grep(c.getCond(), c.getCount())));
+        this.handlers = Map.copyOf(map);
+    }
+
+    /**
+     * 处理 WebSocket 消息，交给对应的处理器
+     *
+     * @param fileManage 当前会话的文件操作对象
+     * @param wsmb 已解码的消息
+     * @return 处理结果的消息序列，分块读取文件时包含多条消息
+     */
+    public Flux<WebSocketMessageBody> getMsg(FileManage fileManage, WebSocketMessageBody wsmb) {
+        return getMsg(fileManage, FileCommand.from(wsmb));
+    }
 
-    private String message;
-    private String path;
-    private String cond;
-    private String value;
-    private String line;
+    /**
+     * 将请求交给对应的处理器
+     *
+     * @param fileManage 当前会话的文件操作对象
+     * @param command 请求
+     * @return 处理结果的消息序列
+     */
+    public Flux<WebSocketMessageBody> getMsg(FileManage fileManage, FileCommand command) {
+        LOGGER.debug("[COMMAND]: {}", command);
+        LOGGER.trace("value: {}", command.getValue()); // 写入的内容只在 TRACE 级别输出
 
+        FileCommandHandler handler = command.getName() == null ? null : handlers.get(command.getName());
+        if (handler == null) {
+            return Flux.just(WebSocketMessageBody.error(command.getName(), "Unkonwn message type"));
+        }
+        return Flux.from(handler.handle(fileManage, command))
+                .onErrorResume(e -> {
+                    LOGGER.error("[ERROR]", e);
+                    return Flux.just(WebSocketMessageBody.error(command.getName(), "Invalid message"));
+                });
+    }
 
-    private PathManage pathManage = PathManage.getInstance();
-    private FileManage fileManage = FileManage.getInstance();
+    /**
+     * 同一会话内请求所在的队列，同一队列的请求按到达顺序逐个执行。
+     * 不带请求编号的客户端依赖响应顺序，全部排在会话队列中；
+     * 读取或改变会话当前文档的请求，即打开、关闭以及未指定路径的文档操作，排在会话队列中，
+     * 打开与关闭同时加入该路径的队列，之后修改该路径的请求等待它们完成；
+     * 带编号的写操作按路径排队；带编号的读操作只等待之前打开或关闭同一路径的请求，
+     * 与其他请求并发执行，不会等待之前尚未完成的写操作。
+     *
+     * @param command 请求
+     * @return 请求加入和等待的队列
+     */
+    OrderedLanes.Order laneOf(FileCommand command) {
+        String name = command.getName();
+        if (command.getId() == null || name == null) {
+            return OrderedLanes.Order.in(SESSION_LANE);
+        }
+        if (command.getPath() == null || command.getPath().isEmpty()) {
+            return WRITES.contains(name) || DOCUMENT_READS.contains(name)
+                    ? OrderedLanes.Order.in(SESSION_LANE) : OrderedLanes.Order.NONE;
+        }
+        String path = normalize(command.getPath());
+        if (CURRENT.contains(name)) {
+            return OrderedLanes.Order.in(SESSION_LANE, PATH_LANE + path, OPEN_LANE + path);
+        }
+        if (WRITES.contains(name)) {
+            return OrderedLanes.Order.in(PATH_LANE + path);
+        }
+        return DOCUMENT_READS.contains(name) ? OrderedLanes.Order.after(OPEN_LANE + path) : OrderedLanes.Order.NONE;
+    }
 
     /**
-     * 处理 WebSocket 消息并根据消息内容调用相应的文件管理方法
-     * 
-     * @param json JSON 格式的消息字符串
-     * @return 处理结果的 JSON 字符串
+     * 同一文件的不同写法使用同一个队列，无法解析的路径按原样使用
      */
-    public String getMsg(String json) {
+    private static String normalize(String path) {
         try {
-            // 将 JSON 字符串反序列化为 WebSocketMessageBody 对象
-            WebSocketMessageBody wsmb = WebSocketMessageBody.fromJson(json);
-            this.message = wsmb.getMessage();
-            this.path = wsmb.getValue().get(PATH_KEY);
-            this.cond = wsmb.getValue().get(COND_KEY);
-            this.value = wsmb.getValue().get(VALUE_KEY);
-            this.line = wsmb.getValue().get(LINE_KEY);
-            LOGGER.debug("message: {}, path: {}, cond: {}, value: {}, line: {}", message, path, cond, value, line);
-            
-            // 根据消息类型调用相应的处理方法
-            switch (this.message) {
-                case PathManage.EACH:
-                    return pathManage.each();
-                case PathManage.SEARCH:
-                    return pathManage.search(cond);
-                case PathManage.CREATE:
-                    return pathManage.create(path);
-                case PathManage.DELETE:
-                    return pathManage.delete(path);
-                case PathManage.END:
-                    return pathManage.end();
-                case FileManage.OPEN:
-                    return fileManage.open(path);
-                case FileManage.SAVE:
-                    return fileManage.save();
-                case FileManage.END:
-                    return fileManage.end();
-                case FileManage.READE_LINE:
-                    return fileManage.readLine(line);
-                case FileManage.WRITE_LINE:
-                    return fileManage.writeLine(line, value);
-                default:
-                    return WebSocketMessageBody.error(message, "Unkonwn message type");
-            }
-        } catch (Exception e) {
-            LOGGER.error("[ERROR]", e);
-            return "ERROR";
+            return FileBufferRegistry.normalize(path).toString();
+        } catch (InvalidPathException e) {
+            return path;
         }
     }
+
+    /**
+     * 只返回一条消息的阻塞操作，在 I/O 调度器上执行
+     */
+    private FileCommandHandler single(BiFunction<FileManage, FileCommand, WebSocketMessageBody> operation) {
+        return (fileManage, command) -> io.submit(() -> operation.apply(fileManage, command));
+    }
+
+    /**
+     * 返回多条消息的操作，在 I/O 调度器上取得结果序列
+     */
+    private FileCommandHandler many(BiFunction<FileManage, FileCommand, Flux<WebSocketMessageBody>> operation) {
+        return (fileManage, command) -> io.submit(() -> operation.apply(fileManage, command)).flatMapMany(response -> response);
+    }
 }
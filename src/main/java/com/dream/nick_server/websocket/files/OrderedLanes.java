@@ -0,0 +1,127 @@
+package com.dream.nick_server.websocket.files;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 一个会话内按队列排序执行的请求。
+ * 同一队列的请求按提交顺序逐个执行，前一个结束（完成、出错或取消）后才开始下一个；
+ * 不同队列之间以及不属于任何队列的请求并发执行。
+ * 一个请求可以同时加入多个队列，也可以只等待某个队列中已提交的请求而不阻塞之后的请求。
+ * 每个队列只保存最后一个请求的完成信号，队列空闲后即被移除。
+ */
+class OrderedLanes {
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>(); // 各队列最后一个请求的完成信号
+
+    /**
+     * 提交一个请求，需按请求到达的顺序调用
+     *
+     * @param lane 队列，null 表示不需要等待其他请求
+     * @param task 执行请求，订阅时才调用
+     * @return 请求的结果，排在前面的请求结束后才开始执行
+     */
+    <T> Flux<T> submit(String lane, Supplier<Flux<T>> task) {
+        return submit(lane == null ? Order.NONE : Order.in(lane), task);
+    }
+
+    /**
+     * 提交一个请求，需按请求到达的顺序调用
+     *
+     * @param order 请求加入和等待的队列
+     * @param task 执行请求，订阅时才调用
+     * @return 请求的结果，加入或等待的队列中排在前面的请求都结束后才开始执行
+     */
+    <T> Flux<T> submit(Order order, Supplier<Flux<T>> task) {
+        if (order.joins.isEmpty() && order.waits.isEmpty()) {
+            return Flux.defer(task);
+        }
+        List<CompletableFuture<Void>> previous = new ArrayList<>();
+        for (String lane : order.waits) {
+            CompletableFuture<Void> tail = tails.get(lane);
+            if (tail != null) {
+                previous.add(tail);
+            }
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        for (String lane : order.joins) {
+            done.whenComplete((v, e) -> tails.remove(lane, done)); // 之后没有新的请求时移除队列
+            CompletableFuture<Void> tail = tails.put(lane, done);
+            if (tail != null) {
+                previous.add(tail);
+            }
+        }
+        CompletableFuture<Void> ready = previous.isEmpty() ? null
+                : previous.size() == 1 ? previous.get(0) : CompletableFuture.allOf(previous.toArray(new CompletableFuture<?>[0]));
+        Flux<T> run = ready == null ? Flux.defer(task)
+                // 等待时被取消不能取消前一个请求的完成信号
+                : Mono.fromFuture(ready, true).thenMany(Flux.defer(task));
+        return run.doFinally(signal -> {
+            if (ready == null) {
+                done.complete(null);
+            } else {
+                // 等待中被取消时，后面的请求仍要等前面的请求结束
+                ready.whenComplete((v, e) -> done.complete(null));
+            }
+        });
+    }
+
+    /**
+     * @return 仍有请求未结束的队列数
+     */
+    int size() {
+        return tails.size();
+    }
+
+    /**
+     * 请求在队列中的位置：加入的队列中之后的请求要等它结束，等待的队列只约束它自己
+     */
+    static final class Order {
+        static final Order NONE = new Order(List.of(), List.of());
+
+        final List<String> joins; // 加入的队列
+        final List<String> waits; // 只等待、不加入的队列
+
+        private Order(List<String> joins, List<String> waits) {
+            this.joins = joins;
+            this.waits = waits;
+        }
+
+        /**
+         * @param lanes 加入的队列
+         * @return 依次加入这些队列的位置
+         */
+        static Order in(String... lanes) {
+            return new Order(List.of(lanes), List.of());
+        }
+
+        /**
+         * @param lane 等待的队列
+         * @return 等待该队列中已提交的请求结束、但不加入它的位置
+         */
+        static Order after(String lane) {
+            return new Order(List.of(), List.of(lane));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Order other && joins.equals(other.joins) && waits.equals(other.waits);
+        }
+
+        @Override
+        public int hashCode() {
+            return joins.hashCode() * 31 + waits.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Order{joins=" + joins + ", waits=" + waits + "}";
+        }
+    }
+}
@@ -5,197 +5,298 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.PatternSyntaxException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.dream.nick_server.websocket.WebSocketMessageBody;
 
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+
+/**
+ * 工作区的路径操作。
+ * 列出与搜索基于 WorkspaceIndex 的内存索引，不再遍历磁盘，搜索条件编译后按 LRU 缓存；
+ * 流式列出时直接并行遍历磁盘，按目录分页返回；
+ * 结果以相对于工作区的完整路径为键，不同目录下的同名文件不会互相覆盖。
+ */
 @Component
 public class PathManage implements Closeable {
     private static final Logger LOGGER = LoggerFactory.getLogger(PathManage.class);
 
     // 定义常量，用于标识不同的文件操作
-    public static final String BASE_PATH = ".\\src\\main\\workSpace";
+    public static final String BASE_PATH = "src/main/workSpace";
     public static final String EACH = "path_each";
     public static final String SEARCH = "path_search";
     public static final String CREATE = "path_create";
     public static final String DELETE = "path_delete";
     public static final String END = "path_end";
 
-    private Map<String, String> model;
-    private final Lock lock = new ReentrantLock(); // 锁，用于确保线程安全
-
-    // 单例模式实例
-    private static PathManage instance;
+    // path_each 流式模式的参数与分页消息中的字段，其余键为文件的相对路径
+    public static final String MODE_KEY = "mode";
+    public static final String MODE_STREAM = "stream";
+    public static final String DEPTH_KEY = "depth";
+    public static final String DIR_KEY = "dir";
+    public static final String SEQ_KEY = FileManage.SEQ_KEY;
+    public static final String COUNT_KEY = FileManage.COUNT_KEY;
+    public static final String LAST_KEY = FileManage.LAST_KEY;
 
-    // 构造函数，初始化 model
-    private PathManage() {
-        this.model = new TreeMap<>();
-    }
+    private static final int PATTERN_CACHE_SIZE = 256; // 缓存的编译后搜索条件数量
+    private static final int STREAM_PAGE_SIZE = 500; // 流式列出时每条消息默认包含的文件数
+    private static final int STREAM_PENDING = 16; // 流式列出时最多积压的消息数
 
-    // 获取单例实例的方法
-    public static PathManage getInstance() {
-        if (instance == null) {
-            synchronized (PathManage.class) {
-                if (instance == null) {
-                    instance = new PathManage();
+    private final WorkspaceIndex index; // 工作区目录树索引
+    private final ContentIndex contents; // 工作区内容索引
+    private final int maxPageSize; // 流式列出时每条消息最多包含的文件数，客户端传入更大的值时按此截断
+    private final ForkJoinPool walkPool; // 流式列出时并行遍历目录的线程池
+    private final DirectoryWalker walker;
+    // 编译后的搜索条件，按最近使用顺序淘汰
+    private final Map<String, PathPattern> patterns = Collections.synchronizedMap(
+            new LinkedHashMap<String, PathPattern>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PathPattern> eldest) {
+                    return size() > PATTERN_CACHE_SIZE;
                 }
-            }
-        }
-        return instance;
+            });
+
+    public PathManage(WorkspaceIndex index, ContentIndex contents,
+                      @Value("${files.walk.parallelism:0}") int parallelism,
+                      @Value("${files.walk.max-page-size:2000}") int maxPageSize) {
+        this.index = index;
+        this.contents = contents;
+        this.maxPageSize = Math.max(maxPageSize, 1);
+        this.walkPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.walker = new DirectoryWalker(walkPool, STREAM_PENDING);
     }
 
     /**
-     * 遍历 BASE_PATH 路径下的所有文件，并将其文件名和路径添加到模型中
+     * 列出 BASE_PATH 下的所有文件
      * 
-     * @return 操作结果的 JSON 字符串
+     * @return 操作结果的消息，键为相对路径，值为可用于 file_open 的路径
      */
-    public String each() {
-        lock.lock(); // 获取锁
-        try {
-            model.clear(); // 清空模型
-            // 遍历路径下的所有文件
-            try {
-                Files.walk(Paths.get(BASE_PATH))
-                    .filter(Files::isRegularFile) // 仅处理文件，不处理目录
-                    .forEach(p -> model.put(p.getFileName().toString(), p.toString())); // 将文件名和路径添加到模型
-                LOGGER.debug("PathManage each model: " + model);
-                return WebSocketMessageBody.success(EACH, model); // 返回成功的 JSON 响应
-            } catch (IOException e) {
-                LOGGER.error("[EACH ERROR]:", e);
-                return WebSocketMessageBody.error(EACH, "Each error"); // 返回错误的 JSON 响应
+    public WebSocketMessageBody each() {
+        Map<String, String> model = new TreeMap<>();
+        index.entries().forEach((key, directory) -> {
+            if (!directory) { // 仅列出文件，不列出目录
+                model.put(key, pathOf(key));
             }
-        } finally {
-            lock.unlock(); // 释放锁
+        });
+        LOGGER.debug("PathManage each: {} files", model.size());
+        return WebSocketMessageBody.success(EACH, model); // 返回成功的响应
+    }
+
+    /**
+     * 直接从磁盘并行遍历目录树，每读完一个目录就发出其中的文件，不经过内存索引。
+     * 每条 path_each 消息包含一个目录中的一页文件，键为相对路径，另含 dir、depth、seq 与 last，
+     * 不同目录的消息之间没有固定顺序，最后一条消息 last 为 true，count 为文件总数。
+     *
+     * @param path 起始目录，为空时从 BASE_PATH 开始，必须位于 BASE_PATH 之内
+     * @param depth 最大深度，为空时不限制，0 只列出起始目录
+     * @param count 每条消息最多包含的文件数，为空时使用默认值，不超过 files.walk.max-page-size
+     * @return 操作结果的消息序列
+     */
+    public Flux<WebSocketMessageBody> eachStream(String path, String depth, String count) {
+        Path start = path == null || path.isEmpty() ? index.getRoot() : Paths.get(path).toAbsolutePath().normalize();
+        if ((!start.equals(index.getRoot()) && index.relativize(start) == null) || !Files.isDirectory(start)) {
+            return Flux.just(WebSocketMessageBody.error(EACH, "Invalid path provided"));
+        }
+        int maxDepth = parseLimit(depth, Integer.MAX_VALUE, 0);
+        int pageSize = parseLimit(count, Math.min(STREAM_PAGE_SIZE, maxPageSize), 1);
+        if (maxDepth < 0 || pageSize < 0) {
+            return Flux.just(WebSocketMessageBody.error(EACH, "Invalid limit"));
         }
+        pageSize = Math.min(pageSize, maxPageSize);
+        LOGGER.debug("PathManage each stream {} depth {} page {}", start, maxDepth, pageSize);
+        AtomicInteger seq = new AtomicInteger();
+        AtomicLong files = new AtomicLong();
+        return walker.walk(start, maxDepth, pageSize)
+                .map(page -> {
+                    Map<String, String> frame = new LinkedHashMap<>();
+                    frame.put(SEQ_KEY, String.valueOf(seq.getAndIncrement()));
+                    String dir = index.relativize(page.dir);
+                    frame.put(DIR_KEY, dir == null ? "" : dir);
+                    frame.put(DEPTH_KEY, String.valueOf(page.depth));
+                    for (Path file : page.files) {
+                        String key = index.relativize(file);
+                        frame.put(key, pathOf(key));
+                    }
+                    frame.put(COUNT_KEY, String.valueOf(page.files.size()));
+                    frame.put(LAST_KEY, "false");
+                    files.addAndGet(page.files.size());
+                    return WebSocketMessageBody.success(EACH, frame);
+                })
+                .concatWith(Flux.defer(() -> {
+                    Map<String, String> frame = new LinkedHashMap<>();
+                    frame.put(SEQ_KEY, String.valueOf(seq.getAndIncrement()));
+                    frame.put(COUNT_KEY, String.valueOf(files.get()));
+                    frame.put(LAST_KEY, "true");
+                    return Flux.just(WebSocketMessageBody.success(EACH, frame));
+                }));
     }
 
     /**
-     * 根据条件在 BASE_PATH 下搜索文件
+     * 根据条件在 BASE_PATH 下搜索文件和目录。
+     * 条件只编译一次并缓存；条件中必然出现的字面量先经三元组索引得到候选，再逐个验证。
      * 
-     * @param cond 文件名的匹配条件
-     * @return 操作结果的 JSON 字符串
+     * @param cond 搜索条件，与相对路径整体匹配；glob: 前缀为通配符，text: 前缀为子串，其余为正则表达式
+     * @return 操作结果的消息
      */
-    public String search(String cond) {
-        lock.lock(); // 获取锁
+    public WebSocketMessageBody search(String cond) {
+        if (cond == null) {
+            return WebSocketMessageBody.error(SEARCH, "Search error"); // 返回错误的响应
+        }
+        PathPattern pattern;
         try {
-            model.clear(); // 清空模型
-            // 根据条件搜索文件
-            try {
-                Files.walk(Paths.get(BASE_PATH))
-                    .filter(p -> p.toString().matches(cond)) // 过滤匹配条件的文件
-                    .forEach(p -> model.put(p.getFileName().toString(), p.toString())); // 将文件名和路径添加到模型
-                return WebSocketMessageBody.success(SEARCH, model); // 返回成功的 JSON 响应
-            } catch (IOException e) {
-                LOGGER.error("[SEARCH ERROR]:", e);
-                return WebSocketMessageBody.error(SEARCH, "Search error"); // 返回错误的 JSON 响应
+            pattern = compile(cond);
+        } catch (PatternSyntaxException e) {
+            LOGGER.warn("[SEARCH] Invalid pattern {}: {}", cond, e.getDescription());
+            return WebSocketMessageBody.error(SEARCH, "Invalid pattern");
+        }
+        Collection<String> candidates = index.candidates(pattern.getLiterals());
+        if (candidates == null) {
+            candidates = index.entries().keySet(); // 没有可用的字面量，检查全部路径
+        }
+        Map<String, String> model = new TreeMap<>();
+        for (String key : candidates) {
+            if (pattern.matches(key) && index.entries().containsKey(key)) {
+                model.put(key, pathOf(key));
             }
-        } finally {
-            lock.unlock(); // 释放锁
         }
+        LOGGER.debug("PathManage search {}: {} candidates, {} matches", cond, candidates.size(), model.size());
+        return WebSocketMessageBody.success(SEARCH, model); // 返回成功的响应
     }
 
     /**
      * 在 BASE_PATH 下创建文件或目录
      * 
      * @param path 要创建的文件或目录路径
-     * @return 操作结果的 JSON 字符串
+     * @return 操作结果的消息
      */
-    public String create(String path) {
-        lock.lock(); // 获取锁以保证线程安全
-        try {
-            LOGGER.debug("PathManage create path: " + path);
-            Path filePath = Paths.get(path);
-            
-            // 检查文件或目录是否已存在
-            if (Files.exists(filePath)) {
-                return WebSocketMessageBody.error(CREATE, "Create error: file or directory already exist"); // 文件或目录已存在，返回错误
+    public WebSocketMessageBody create(String path) {
+        LOGGER.debug("PathManage create path: " + path);
+        Path filePath = Paths.get(path);
+
+        // 检查文件或目录是否已存在
+        if (Files.exists(filePath)) {
+            return WebSocketMessageBody.error(CREATE, "Create error: file or directory already exist"); // 文件或目录已存在，返回错误
+        }
+
+        // 根据路径的文件名判断是创建文件还是目录
+        if (filePath.getFileName().toString().contains(".")) {
+            // 如果路径包含点，则认为是文件，尝试创建文件
+            try {
+                Files.createFile(filePath); // 创建文件
+            } catch (IOException e) {
+                LOGGER.error("[CREATE FILE ERROR]:", e);
+                return WebSocketMessageBody.error(CREATE, "Create file error"); // 返回文件创建错误的响应
             }
-            
-            // 根据路径的文件名判断是创建文件还是目录
-            if (filePath.getFileName().toString().contains(".")) {
-                // 如果路径包含点，则认为是文件，尝试创建文件
-                try {
-                    Files.createFile(filePath); // 创建文件
-                    model.put(filePath.getFileName().toString(), filePath.toString()); // 将文件名和路径添加到模型
-                    return WebSocketMessageBody.success(CREATE, model); // 返回成功的 JSON 响应
-                } catch (IOException e) {
-                    LOGGER.error("[CREATE FILE ERROR]:", e);
-                    return WebSocketMessageBody.error(CREATE, "Create file error"); // 返回文件创建错误的 JSON 响应
-                }
-            } else {
-                // 如果路径不包含点，则认为是目录，尝试创建目录
-                try {
-                    Files.createDirectories(filePath); // 创建目录
-                    model.put(filePath.getFileName().toString(), filePath.toString()); // 将目录名和路径添加到模型
-                    return WebSocketMessageBody.success(CREATE, model); // 返回成功的 JSON 响应
-                } catch (IOException e) {
-                    LOGGER.error("[CREATE DIRECTORY ERROR]:", e);
-                    return WebSocketMessageBody.error(CREATE, "Create directory error"); // 返回目录创建错误的 JSON 响应
-                }
+        } else {
+            // 如果路径不包含点，则认为是目录，尝试创建目录
+            try {
+                Files.createDirectories(filePath); // 创建目录
+            } catch (IOException e) {
+                LOGGER.error("[CREATE DIRECTORY ERROR]:", e);
+                return WebSocketMessageBody.error(CREATE, "Create directory error"); // 返回目录创建错误的响应
             }
-        } finally {
-            lock.unlock(); // 释放锁
         }
+        index.added(filePath); // 立即登记到索引，不必等待监听事件
+        contents.added(filePath);
+        return WebSocketMessageBody.success(CREATE, entry(filePath)); // 返回成功的响应
     }
 
     /**
      * 删除指定路径的文件，并将其重命名为 .bk
      * 
      * @param path 要删除的文件路径
-     * @return 操作结果的 JSON 字符串
+     * @return 操作结果的消息
      */
-    public String delete(String path) {
-        lock.lock(); // 获取锁
+    public WebSocketMessageBody delete(String path) {
+        Path filePath = Paths.get(path);
+        Path backupPath = filePath.resolveSibling(filePath.getFileName() + ".bk");
         try {
-            Path filePath = Paths.get(path);
-            Path backupPath = filePath.resolveSibling(filePath.getFileName() + ".bk");
-            try {
-                if (Files.exists(filePath) && !Files.exists(backupPath)) {
-                    Files.move(filePath, backupPath); // 将文件重命名为 .bk
-                    model.remove(filePath.getFileName().toString()); // 从模型中移除文件
-                    return WebSocketMessageBody.success(DELETE, model); // 返回成功的 JSON 响应
-                } else {
-                    return WebSocketMessageBody.error(DELETE, "Delete error: file not exist or backup file already exist"); // 文件不存在或备份文件已存在，返回错误
-                }
-            } catch (IOException e) {
-                LOGGER.error("[DELETE ERROR]:", e);
-                return WebSocketMessageBody.error(DELETE, "Delete error"); // 返回错误的 JSON 响应
+            if (Files.exists(filePath) && !Files.exists(backupPath)) {
+                Files.move(filePath, backupPath); // 将文件重命名为 .bk
+                index.removed(filePath); // 从索引中移除文件
+                index.added(backupPath);
+                contents.removed(filePath); // 备份不建立内容索引
+                return WebSocketMessageBody.success(DELETE, entry(backupPath)); // 返回成功的响应
+            } else {
+                return WebSocketMessageBody.error(DELETE, "Delete error: file not exist or backup file already exist"); // 文件不存在或备份文件已存在，返回错误
             }
-        } finally {
-            lock.unlock(); // 释放锁
+        } catch (IOException e) {
+            LOGGER.error("[DELETE ERROR]:", e);
+            return WebSocketMessageBody.error(DELETE, "Delete error"); // 返回错误的响应
         }
     }
 
     /**
-     * 结束路径管理操作并清理资源
+     * 结束路径管理操作。索引由所有会话共享，这里不需要清理
      * 
-     * @return 操作结果的 JSON 字符串
+     * @return 操作结果的消息
      */
-    public String end() {
-        lock.lock(); // 获取锁
-        try {
-            LOGGER.info("PathManage end");
-            try {
-                this.close(); // 清理资源
-                return WebSocketMessageBody.success(END, null); // 返回成功的 JSON 响应
-            } catch (IOException e) {
-                LOGGER.error("[END ERROR]:", e);
-                return WebSocketMessageBody.error(END, "Close error"); // 返回错误的 JSON 响应
-            }
-        } finally {
-            lock.unlock(); // 释放锁
-        }
+    public WebSocketMessageBody end() {
+        LOGGER.info("PathManage end");
+        return WebSocketMessageBody.success(END, null); // 返回成功的响应
     }
 
+    /**
+     * 停止遍历线程池，索引的生命周期由 WorkspaceIndex 管理
+     */
     @Override
+    @PreDestroy
     public void close() throws IOException {
-        this.model.clear(); // 清空模型
+        walkPool.shutdownNow();
+    }
+
+    /**
+     * 解析客户端传入的上限
+     *
+     * @return 为空时返回默认值，格式错误或小于最小值时返回 -1
+     */
+    private static int parseLimit(String value, int defaultValue, int min) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            int limit = Integer.parseInt(value.trim());
+            return limit < min ? -1 : limit;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private PathPattern compile(String cond) {
+        PathPattern pattern = patterns.get(cond);
+        if (pattern == null) {
+            pattern = PathPattern.compile(cond);
+            patterns.put(cond, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * 索引中的相对路径转换为以 BASE_PATH 开头、可用于 file_open 的路径
+     */
+    private static String pathOf(String key) {
+        return Paths.get(BASE_PATH, key.split("/")).toString();
+    }
+
+    /**
+     * 单个条目的响应内容，工作区外的路径以文件名为键
+     */
+    private Map<String, String> entry(Path path) {
+        String key = index.relativize(path);
+        return Map.of(key != null ? key : path.getFileName().toString(), path.toString());
     }
 }
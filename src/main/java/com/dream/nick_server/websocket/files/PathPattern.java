@@ -0,0 +1,300 @@
+package com.dream.nick_server.websocket.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 编译后的路径搜索条件。
+ * 条件可以带语法前缀：glob: 为通配符，text: 为子串，regex: 或无前缀为正则表达式，均与相对路径整体匹配。
+ * 编译时同时提取所有匹配结果中必然出现的字面量，用于通过三元组索引缩小候选范围。
+ */
+public final class PathPattern {
+    public static final String GLOB = "glob:";
+    public static final String TEXT = "text:";
+    public static final String REGEX = "regex:";
+
+    private final Pattern pattern;
+    private final List<String> literals; // 必然出现在匹配路径中的字面量
+
+    private PathPattern(Pattern pattern, List<String> literals) {
+        this.pattern = pattern;
+        this.literals = Collections.unmodifiableList(literals);
+    }
+
+    /**
+     * 编译搜索条件
+     *
+     * @param cond 搜索条件
+     * @return 编译结果
+     * @throws java.util.regex.PatternSyntaxException 正则表达式语法错误
+     */
+    public static PathPattern compile(String cond) {
+        if (cond.startsWith(GLOB)) {
+            return glob(cond.substring(GLOB.length()));
+        }
+        if (cond.startsWith(TEXT)) {
+            String text = cond.substring(TEXT.length());
+            List<String> literals = new ArrayList<>();
+            literals.add(text);
+            return new PathPattern(Pattern.compile(".*" + Pattern.quote(text) + ".*", Pattern.DOTALL), literals);
+        }
+        String regex = cond.startsWith(REGEX) ? cond.substring(REGEX.length()) : cond;
+        return new PathPattern(Pattern.compile(regex), regexLiterals(regex));
+    }
+
+    public boolean matches(String path) {
+        return pattern.matcher(path).matches();
+    }
+
+    /**
+     * @return 匹配的路径中必然包含的字面量，为空时无法缩小候选范围
+     */
+    public List<String> getLiterals() {
+        return literals;
+    }
+
+    /**
+     * 通配符转换为正则表达式：* 不跨越目录，** 可跨越目录，? 为单个字符，{a,b} 为多选一，[...] 为字符集
+     */
+    private static PathPattern glob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        boolean inGroup = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    flush(run, literals);
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                            regex.append("(?:.*/)?"); // **/ 匹配零个或多个目录
+                            i += 2;
+                        } else {
+                            regex.append(".*");
+                            i++;
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    flush(run, literals);
+                    regex.append("[^/]");
+                    break;
+                case '[': {
+                    flush(run, literals);
+                    int end = glob.indexOf(']', i + 2);
+                    if (end < 0) {
+                        regex.append("\\[");
+                        break;
+                    }
+                    String set = glob.substring(i + 1, end);
+                    regex.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                    i = end;
+                    break;
+                }
+                case '{':
+                    flush(run, literals);
+                    regex.append("(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    regex.append(inGroup ? ")" : "\\}");
+                    inGroup = false;
+                    break;
+                case ',':
+                    regex.append(inGroup ? "|" : ",");
+                    if (!inGroup) {
+                        run.append(c);
+                    }
+                    break;
+                case '\\':
+                    if (i + 1 < glob.length()) {
+                        c = glob.charAt(++i);
+                    }
+                    // 转义的字符按字面量处理
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                    if (!inGroup) {
+                        run.append(c); // 多选一中的字面量不一定出现
+                    }
+                    break;
+            }
+        }
+        flush(run, literals);
+        return new PathPattern(Pattern.compile(regex.toString()), literals);
+    }
+
+    /**
+     * 保守地提取正则表达式中必然出现的字面量：只取顶层、不带可选量词的连续普通字符，
+     * 顶层存在多选一或使用了内嵌标志（如 (?i)）时不提取。
+     */
+    static List<String> regexLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            char literal;
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    break;
+                }
+                char next = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(next)) {
+                    flush(run, literals); // \d、\x41、\Q...\E 等不按字面量处理，连同参数一起跳过
+                    i = skipEscape(regex, i);
+                    continue;
+                }
+                literal = next;
+                i += 2;
+            } else if (c == '[') {
+                flush(run, literals);
+                i = skipClass(regex, i);
+                continue;
+            } else if (c == '(') {
+                flush(run, literals);
+                if (i + 2 < regex.length() && regex.charAt(i + 1) == '?' && Character.isLetter(regex.charAt(i + 2))) {
+                    return new ArrayList<>(); // 内嵌标志可能改变大小写匹配
+                }
+                depth++;
+                i++;
+                continue;
+            } else if (c == ')') {
+                flush(run, literals);
+                depth--;
+                i++;
+                continue;
+            } else if (c == '|') {
+                if (depth == 0) {
+                    return new ArrayList<>();
+                }
+                i++;
+                continue;
+            } else if (c == '{') {
+                flush(run, literals);
+                int end = regex.indexOf('}', i);
+                i = end < 0 ? regex.length() : end + 1;
+                continue;
+            } else if (".^$*+?".indexOf(c) >= 0) {
+                flush(run, literals);
+                i++;
+                continue;
+            } else {
+                literal = c;
+                i++;
+            }
+
+            if (depth > 0) {
+                continue; // 分组中的内容可能是可选的
+            }
+            char quantifier = i < regex.length() ? regex.charAt(i) : 0;
+            if (quantifier == '*' || quantifier == '?' || quantifier == '{') {
+                flush(run, literals); // 该字符可能不出现
+            } else if (quantifier == '+') {
+                run.append(literal);
+                flush(run, literals); // 该字符之后可能重复
+            } else {
+                run.append(literal);
+            }
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    /**
+     * 跳过字符集，包括嵌套的字符集（如 [a-z&&[^x]]）与其中的转义
+     *
+     * @return 字符集之后的位置
+     */
+    private static int skipClass(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i = skipEscape(regex, i);
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                i++;
+                if (i < regex.length() && regex.charAt(i) == '^') {
+                    i++;
+                }
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    i++; // 字符集开头的 ] 是普通字符
+                }
+                continue;
+            }
+            i++;
+            if (c == ']' && --depth == 0) {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 跳过 start 处的转义及其参数：\xhh、\x{h...h}、\0ooo、\cX、\k<name>、\p{..}、\P{..}、\N{..}、
+     * \Q...\E、反斜杠加 u 与四位十六进制数的 Unicode 转义、多位数字的反向引用，其余转义为两个字符
+     *
+     * @return 转义之后的位置
+     */
+    private static int skipEscape(String regex, int start) {
+        int i = start + 1;
+        if (i >= regex.length()) {
+            return regex.length();
+        }
+        char c = regex.charAt(i++);
+        switch (c) {
+            case 'x':
+                return i < regex.length() && regex.charAt(i) == '{' ? closing(regex, i, '}') : Math.min(i + 2, regex.length());
+            case 'u':
+                return Math.min(i + 4, regex.length());
+            case '0':
+                for (int n = 0; n < 3 && i < regex.length() && regex.charAt(i) >= '0' && regex.charAt(i) <= '7'; n++) {
+                    i++;
+                }
+                return i;
+            case 'c':
+                return Math.min(i + 1, regex.length());
+            case 'k':
+                return i < regex.length() && regex.charAt(i) == '<' ? closing(regex, i, '>') : i;
+            case 'p':
+            case 'P':
+                return i < regex.length() && regex.charAt(i) == '{' ? closing(regex, i, '}') : Math.min(i + 1, regex.length());
+            case 'N':
+                return i < regex.length() && regex.charAt(i) == '{' ? closing(regex, i, '}') : i;
+            case 'Q':
+                int end = regex.indexOf("\\E", i);
+                return end < 0 ? regex.length() : end + 2;
+            default:
+                if (c >= '1' && c <= '9') {
+                    while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                        i++;
+                    }
+                }
+                return i;
+        }
+    }
+
+    /**
+     * @return from 之后第一个 close 之后的位置，没有时为末尾
+     */
+    private static int closing(String regex, int from, char close) {
+        int end = regex.indexOf(close, from);
+        return end < 0 ? regex.length() : end + 1;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() >= PathTrigramIndex.GRAM) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+}
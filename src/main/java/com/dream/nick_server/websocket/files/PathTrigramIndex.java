@@ -0,0 +1,84 @@
+package com.dream.nick_server.websocket.files;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 路径的三元组（连续三个字符）倒排索引。
+ * 每个三元组对应包含它的全部相对路径，搜索时取字面量各三元组对应集合的交集作为候选，
+ * 候选再用编译好的条件逐个验证，不必检查工作区中的每一条路径。
+ */
+class PathTrigramIndex {
+    static final int GRAM = 3;
+
+    private final Map<Long, Set<String>> postings = new ConcurrentHashMap<>();
+
+    void add(String path) {
+        for (long gram : grams(path)) {
+            postings.compute(gram, (key, paths) -> {
+                Set<String> result = paths == null ? ConcurrentHashMap.newKeySet() : paths;
+                result.add(path);
+                return result;
+            });
+        }
+    }
+
+    void remove(String path) {
+        for (long gram : grams(path)) {
+            postings.computeIfPresent(gram, (key, paths) -> {
+                paths.remove(path);
+                return paths.isEmpty() ? null : paths;
+            });
+        }
+    }
+
+    /**
+     * 包含全部字面量的候选路径
+     *
+     * @param literals 长度不小于 3 的字面量
+     * @return 候选路径；字面量为空、无法缩小范围时返回 null
+     */
+    Set<String> candidates(Collection<String> literals) {
+        List<Set<String>> sets = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (String literal : literals) {
+            for (long gram : grams(literal)) {
+                if (!seen.add(gram)) {
+                    continue;
+                }
+                Set<String> paths = postings.get(gram);
+                if (paths == null) {
+                    return new HashSet<>(); // 没有路径包含这个三元组
+                }
+                sets.add(paths);
+            }
+        }
+        if (sets.isEmpty()) {
+            return null;
+        }
+        // 从最小的集合开始求交集
+        sets.sort(Comparator.comparingInt(Set::size));
+        Set<String> result = new HashSet<>(sets.get(0));
+        for (int i = 1; i < sets.size() && !result.isEmpty(); i++) {
+            result.retainAll(sets.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 字符串中不重复的三元组，三个 char 编码为一个 long
+     */
+    private static Set<Long> grams(String text) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,333 @@
+package com.dream.nick_server.websocket.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * 工作区目录树的内存索引。
+ * 以相对于工作区根目录的完整路径（以 / 分隔）为键，值表示是否为目录，
+ * 启动时遍历一次，之后由 WatchService 的事件增量更新，列出与搜索不再访问磁盘。
+ * 同时维护相对路径的三元组索引，供搜索缩小候选范围。
+ * 条目与三元组索引组成一个快照，事件溢出时重新遍历到新的快照再整体替换，遍历期间读取的仍是完整的旧快照。
+ * 监听到的变化同时转发给登记的 Listener，包括在服务器之外新建、修改与删除的文件。
+ */
+@Component
+public class WorkspaceIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkspaceIndex.class);
+
+    private final Path root;
+    private volatile Snapshot snapshot = new Snapshot(); // 当前的索引，在 this 上加锁修改
+    private Snapshot rebuilding; // 正在重新遍历时的新快照，同时接收期间的修改，受 this 保护
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>(); // 接收监听事件
+    private WatchService watcher;
+    private Thread thread;
+    private volatile boolean running;
+
+    public WorkspaceIndex() {
+        this(Paths.get(PathManage.BASE_PATH));
+    }
+
+    WorkspaceIndex(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * 建立索引并开始监听工作区的变化
+     *
+     * @throws IOException 创建工作区目录或监听失败
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(root);
+        watcher = root.getFileSystem().newWatchService();
+        running = true;
+        long began = System.nanoTime();
+        scan(root, this::put);
+        LOGGER.info("[INDEX] {} entries indexed in {} ms: {}", snapshot.entries.size(), (System.nanoTime() - began) / 1_000_000, root);
+        thread = new Thread(this::watch, "workspace-watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        running = false;
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * 登记监听事件的接收者，事件在监听线程上依次转发
+     *
+     * @param listener 接收者
+     */
+    public void listen(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return 按相对路径排序的全部条目，只读视图，值表示是否为目录
+     */
+    public NavigableMap<String, Boolean> entries() {
+        return Collections.unmodifiableNavigableMap(snapshot.entries);
+    }
+
+    /**
+     * 通过三元组索引查找可能匹配的路径
+     *
+     * @param literals 匹配的路径中必然包含的字面量
+     * @return 候选路径，需要再用搜索条件验证；无法缩小范围时返回 null
+     */
+    public Set<String> candidates(Collection<String> literals) {
+        return snapshot.trigrams.candidates(literals);
+    }
+
+    /**
+     * 将路径转换为索引中的键
+     *
+     * @param path 文件路径
+     * @return 相对于工作区根目录、以 / 分隔的路径，不在工作区内时返回 null
+     */
+    public String relativize(Path path) {
+        Path absolute = path.toAbsolutePath().normalize();
+        if (!absolute.startsWith(root) || absolute.equals(root)) {
+            return null;
+        }
+        return root.relativize(absolute).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * 将索引中的键转换为路径
+     *
+     * @param key 相对路径
+     * @return 绝对路径
+     */
+    public Path resolve(String key) {
+        return root.resolve(key.replace('/', File.separatorChar));
+    }
+
+    /**
+     * 立即登记新建的文件或目录，不必等待监听事件
+     *
+     * @param path 文件路径
+     */
+    public void added(Path path) {
+        try {
+            if (Files.isDirectory(path)) {
+                scan(path, this::put);
+            } else {
+                put(path, false);
+            }
+        } catch (IOException e) {
+            LOGGER.error("[INDEX ERROR] Failed to index " + path, e);
+        }
+    }
+
+    /**
+     * 立即移除被删除的文件或目录及其下的全部条目
+     *
+     * @param path 文件路径
+     */
+    public synchronized void removed(Path path) {
+        String key = relativize(path);
+        if (key == null) {
+            return;
+        }
+        snapshot.remove(key);
+        if (rebuilding != null) {
+            rebuilding.remove(key);
+        }
+    }
+
+    /**
+     * 重新遍历整个工作区，在监听事件溢出、索引可能已与磁盘不一致时调用。
+     * 结果写入新的快照，完成后整体替换；遍历期间的新建与删除同时记录到新快照中。
+     *
+     * @throws IOException 遍历失败，此时继续使用旧快照
+     */
+    void rescan() throws IOException {
+        Snapshot fresh = new Snapshot();
+        synchronized (this) {
+            rebuilding = fresh;
+        }
+        try {
+            long began = System.nanoTime();
+            scan(root, (path, directory) -> put(fresh, path, directory));
+            synchronized (this) {
+                snapshot = fresh;
+            }
+            LOGGER.info("[INDEX] {} entries rescanned in {} ms: {}", fresh.entries.size(), (System.nanoTime() - began) / 1_000_000, root);
+        } finally {
+            synchronized (this) {
+                rebuilding = null;
+            }
+        }
+    }
+
+    /**
+     * 遍历目录，将其下的全部条目交给 sink，并监听其中的每个目录
+     */
+    private void scan(Path start, BiConsumer<Path, Boolean> sink) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                sink.accept(dir, true);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                sink.accept(file, attrs.isDirectory());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOGGER.warn("[INDEX] Skip {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private synchronized void put(Path path, boolean directory) {
+        String key = relativize(path);
+        if (key == null) {
+            return;
+        }
+        snapshot.put(key, directory);
+        if (rebuilding != null) {
+            rebuilding.put(key, directory);
+        }
+    }
+
+    private synchronized void put(Snapshot target, Path path, boolean directory) {
+        String key = relativize(path);
+        if (key != null) {
+            target.put(key, directory);
+        }
+    }
+
+    /**
+     * 监听线程：新建的目录整体登记并开始监听，删除的目录连同其下的条目一起移除，
+     * 事件溢出时重新遍历整个工作区。文件内容的修改不改变索引，只转发给接收者。
+     */
+    private void watch() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                try {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        LOGGER.warn("[INDEX] Watch events overflowed, rescanning {}", root);
+                        rescan();
+                        listeners.forEach(Listener::rescanned);
+                        continue;
+                    }
+                    Path child = dir.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                        added(child);
+                        listeners.forEach(listener -> listener.added(child));
+                    } else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                        if (Files.isRegularFile(child)) {
+                            listeners.forEach(listener -> listener.added(child));
+                        }
+                    } else {
+                        removed(child);
+                        listeners.forEach(listener -> listener.removed(child));
+                    }
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("[INDEX ERROR] Failed to handle " + event.kind() + " in " + dir, e);
+                }
+            }
+            key.reset(); // 目录被删除后 key 失效，不再收到它的事件
+        }
+    }
+
+    /**
+     * 条目与对应的三元组索引，修改由外层在 WorkspaceIndex 上加锁
+     */
+    private static final class Snapshot {
+        final ConcurrentSkipListMap<String, Boolean> entries = new ConcurrentSkipListMap<>(); // 相对路径 -> 是否为目录
+        final PathTrigramIndex trigrams = new PathTrigramIndex(); // 相对路径的三元组索引
+
+        void put(String key, boolean directory) {
+            if (entries.put(key, directory) == null) {
+                trigrams.add(key);
+            }
+        }
+
+        void remove(String key) {
+            if (entries.remove(key) != null) {
+                trigrams.remove(key);
+            }
+            // '/' 之后的字符是 '0'，该范围正好包含以 key + "/" 开头的全部键
+            NavigableMap<String, Boolean> children = entries.subMap(key + "/", key + "0");
+            children.keySet().forEach(trigrams::remove);
+            children.clear();
+        }
+    }
+
+    /**
+     * 工作区变化的接收者，在监听线程上调用，不应阻塞
+     */
+    public interface Listener {
+
+        /**
+         * 新建了文件或目录，或修改了文件的内容
+         *
+         * @param path 文件或目录路径
+         */
+        void added(Path path);
+
+        /**
+         * 删除了文件或目录
+         *
+         * @param path 文件或目录路径
+         */
+        void removed(Path path);
+
+        /**
+         * 事件溢出后重新遍历了整个工作区，期间的变化可能已经丢失
+         */
+        default void rescanned() {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.dream.nick_server.websocket.files.document;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 片段表的追加缓冲区，编辑时写入的新行依次追加到这里，已有内容不会被修改。
+ * 与 ByteLineSource 相同，内容保存在一个增长的 byte[] 中，只记录每行的起始偏移。
+ */
+public class AppendLineSource implements LineSource {
+
+    private byte[] data;
+    private int[] lineStarts; // 每行起始偏移，lineStarts[lineCount] 为已用长度
+    private int lineCount;
+
+    public AppendLineSource() {
+        this(new byte[256], new int[16], 0);
+    }
+
+    private AppendLineSource(byte[] data, int[] lineStarts, int lineCount) {
+        this.data = data;
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * 当前已追加的行的只读视图。之后的追加只写入已用长度之后的位置或扩容后的新数组，
+     * 视图引用的内容不会改变，因此在锁内取得视图后可以在锁外读取。返回的来源不能再追加
+     *
+     * @return 只读视图
+     */
+    public AppendLineSource freeze() {
+        return new AppendLineSource(data, lineStarts, lineCount);
+    }
+
+    /**
+     * 追加一行
+     *
+     * @param text 行内容，不含换行符
+     * @return 新行在本缓冲区中的行号
+     */
+    public int append(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int start = lineStarts[lineCount];
+        int end = start + bytes.length;
+        if (end > data.length) {
+            byte[] bigger = new byte[Math.max(end, data.length + (data.length >> 1))];
+            System.arraycopy(data, 0, bigger, 0, start);
+            data = bigger;
+        }
+        System.arraycopy(bytes, 0, data, start, bytes.length);
+        if (lineCount + 2 > lineStarts.length) {
+            int[] bigger = new int[lineStarts.length + (lineStarts.length >> 1) + 1];
+            System.arraycopy(lineStarts, 0, bigger, 0, lineCount + 1);
+            lineStarts = bigger;
+        }
+        lineStarts[++lineCount] = end;
+        return lineCount - 1;
+    }
+
+    @Override
+    public int lineCount() {
+        return lineCount;
+    }
+
+    @Override
+    public String line(int index) {
+        int start = lineStarts[index];
+        return new String(data, start, lineStarts[index + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int lineBytes(int index) {
+        return lineStarts[index + 1] - lineStarts[index];
+    }
+
+    @Override
+    public void writeLine(int index, OutputStream out) throws IOException {
+        int start = lineStarts[index];
+        out.write(data, start, lineStarts[index + 1] - start);
+    }
+}
@@ -0,0 +1,111 @@
+package com.dream.nick_server.websocket.files.document;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于堆内字节数组的 LineSource。
+ * 整个文件保存在一个 byte[] 中，另用 int[] 记录每行的起始偏移，
+ * 不会为每一行创建 String 对象。
+ */
+public class ByteLineSource implements LineSource {
+
+    private final byte[] data; // 文件的 UTF-8 字节
+    private final int[] lineStarts; // 每行起始偏移，最后一个元素为结束位置
+    private final int lineCount;
+
+    private ByteLineSource(byte[] data, int[] lineStarts, int lineCount) {
+        this.data = data;
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * 扫描换行符建立行索引。以换行符结尾的文件不会多出一个空行，与 BufferedReader 一致。
+     *
+     * @param data 文件内容
+     * @return 行来源
+     */
+    public static ByteLineSource of(byte[] data) {
+        int[] starts = new int[16];
+        int count = 0;
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                if (count + 1 >= starts.length) {
+                    starts = grow(starts);
+                }
+                starts[count++] = start;
+                start = i + 1;
+            }
+        }
+        if (start < data.length) {
+            if (count + 1 >= starts.length) {
+                starts = grow(starts);
+            }
+            starts[count++] = start; // 最后一行没有换行符
+        }
+        starts[count] = data.length;
+        return new ByteLineSource(data, starts, count);
+    }
+
+    /**
+     * 检测文件使用的换行符
+     *
+     * @param data 文件内容
+     * @param defaultSeparator 文件中没有换行符时使用的值
+     * @return "\r\n" 或 "\n"
+     */
+    public static String detectLineSeparator(byte[] data, String defaultSeparator) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == '\n') {
+                return i > 0 && data[i - 1] == '\r' ? "\r\n" : "\n";
+            }
+        }
+        return defaultSeparator;
+    }
+
+    @Override
+    public int lineCount() {
+        return lineCount;
+    }
+
+    @Override
+    public String line(int index) {
+        int start = lineStarts[index];
+        return new String(data, start, contentEnd(index) - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int lineBytes(int index) {
+        return contentEnd(index) - lineStarts[index];
+    }
+
+    @Override
+    public void writeLine(int index, OutputStream out) throws IOException {
+        int start = lineStarts[index];
+        out.write(data, start, contentEnd(index) - start);
+    }
+
+    /**
+     * 去掉行尾的 \n 与 \r 后的结束位置
+     */
+    private int contentEnd(int index) {
+        int start = lineStarts[index];
+        int end = lineStarts[index + 1];
+        if (end > start && data[end - 1] == '\n') {
+            end--;
+        }
+        if (end > start && data[end - 1] == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    private static int[] grow(int[] array) {
+        int[] bigger = new int[array.length + (array.length >> 1) + 1];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+}
@@ -0,0 +1,406 @@
+package com.dream.nick_server.websocket.files.document;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 单个文档的预写日志（write-ahead journal）。
+ * 每次编辑先以一条记录追加到日志，保存时追加一条保存标记并 fsync 日志，而不是重写整个文件；
+ * 检查点把文档完整写回原文件后重建日志，只保留写回期间新增的记录。
+ *
+ * 文件格式：
+ * 头部 [int 魔数][int 版本][long 基准文件大小][long 基准修改时间][int 路径长度][路径 UTF-8]
+ * 记录 [int 负载长度][int CRC32][负载: byte 操作, int 行号, 行内容 UTF-8]
+ * 基准大小与修改时间记录的是上一次检查点后的原文件，恢复时原文件与之不符说明检查点已经完成，日志作废。
+ * 恢复时只重放最后一条保存标记之前的编辑，之后的编辑没有保存过，与关闭时一样丢弃。
+ * 追加由文档写锁保证顺序，sync 可由后台线程与追加并发调用。
+ */
+public class FileJournal implements Closeable {
+
+    public static final byte INSERT = 'I';
+    public static final byte REPLACE = 'R';
+    public static final byte DELETE = 'D';
+    public static final byte SAVE = 'S'; // 保存标记，之前的编辑都已保存
+
+    private static final int MAGIC = 0x4E4A4E4C; // "NJNL"
+    private static final int VERSION = 1;
+    private static final int RECORD_HEADER = 8; // 负载长度 + CRC32
+
+    private final Path file; // 日志文件
+    private final Path target; // 日志对应的文档
+    private FileChannel channel; // 检查点重建日志时替换为新文件
+    private final Object syncLock = new Object(); // 串行化 fsync 与检查点
+    private long position; // 已写入的长度
+    private long saved; // 最后一条保存标记的结束位置
+    private volatile long synced; // 已 fsync 的长度
+    private long headerLength;
+
+    private FileJournal(Path file, Path target, FileChannel channel) {
+        this.file = file;
+        this.target = target;
+        this.channel = channel;
+    }
+
+    /**
+     * 为文档创建新的日志。已存在的同名日志中可能有尚未写回的编辑，不会被覆盖，
+     * 需要先通过 {@link #resume} 继续使用或在确认作废后删除
+     *
+     * @param file 日志文件
+     * @param target 文档路径
+     * @return 日志
+     * @throws IOException 创建失败，或日志文件已存在
+     */
+    public static FileJournal create(Path file, Path target) throws IOException {
+        Files.createDirectories(file.getParent());
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+        FileJournal journal = new FileJournal(file, target, channel);
+        try {
+            journal.reset();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * 继续使用残留的日志，新的编辑追加在已保存的记录之后，头部记录的基准保持不变。
+     * 截掉最后一条保存标记之后的记录，包括末尾写了一半的记录
+     *
+     * @param file 日志文件
+     * @param recovery 读取该日志得到的恢复信息，其中的编辑已应用到文档
+     * @return 日志
+     * @throws IOException 打开失败
+     */
+    public static FileJournal resume(Path file, Recovery recovery) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        FileJournal journal = new FileJournal(file, recovery.target, channel);
+        try {
+            channel.truncate(recovery.end);
+            channel.force(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        journal.headerLength = recovery.headerLength;
+        journal.position = recovery.end;
+        journal.saved = recovery.end;
+        journal.synced = recovery.end;
+        return journal;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return 自上次检查点以来记录的字节数
+     */
+    public synchronized long size() {
+        return position - headerLength;
+    }
+
+    /**
+     * 追加一条编辑记录，不立即 fsync
+     *
+     * @param op 操作类型
+     * @param line 行号，从 0 开始
+     * @param text 行内容，删除操作为 null
+     * @throws IOException 写入失败
+     */
+    public synchronized void append(byte op, int line, String text) throws IOException {
+        byte[] bytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(5 + bytes.length);
+        payload.put(op).putInt(line).put(bytes).flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + payload.remaining());
+        record.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload).flip();
+        writeFully(record);
+    }
+
+    /**
+     * 追加保存标记，之前的编辑在恢复时都会重放，调用方随后 sync 使其落盘。
+     * 上次保存之后没有新的编辑时不追加
+     *
+     * @throws IOException 写入失败
+     */
+    public synchronized void markSaved() throws IOException {
+        if (position > saved) {
+            append(SAVE, 0, null);
+            saved = position;
+        }
+    }
+
+    /**
+     * @return 上次保存之后是否还有新的编辑
+     */
+    public synchronized boolean hasUnsaved() {
+        return position > saved;
+    }
+
+    /**
+     * @return 已写入的长度，检查点以此为界重建日志
+     */
+    public synchronized long position() {
+        return position;
+    }
+
+    /**
+     * @return 是否有尚未 fsync 的记录
+     */
+    public synchronized boolean isDirty() {
+        return synced < position;
+    }
+
+    /**
+     * 将已写入的记录 fsync 到磁盘。fsync 期间不阻塞新的追加；并发调用时只有第一个真正执行，
+     * 其余调用等待它完成后发现记录已落盘直接返回，从而把多次保存合并为一次 fsync。
+     *
+     * @throws IOException fsync 失败
+     */
+    public void sync() throws IOException {
+        long end;
+        synchronized (this) {
+            end = position;
+        }
+        synchronized (syncLock) {
+            if (synced >= end) {
+                return;
+            }
+            channel.force(false);
+            synchronized (this) {
+                synced = Math.max(synced, end);
+            }
+        }
+    }
+
+    /**
+     * 写入头部，以当前原文件作为基准
+     */
+    private void reset() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                channel.truncate(0);
+                position = 0;
+                writeFully(header());
+                headerLength = position;
+                saved = position;
+                channel.force(true);
+                synced = position;
+            }
+        }
+    }
+
+    /**
+     * 检查点替换原文件后，以新的原文件作为基准重建日志，只保留 from 之后的记录，即写回期间新增的编辑。
+     * 新日志写入临时文件并 fsync 后原子替换旧日志，重建期间的 sync 与追加等待其完成
+     *
+     * @param from 检查点快照时的日志位置，之前的编辑都已写回原文件
+     * @throws IOException 写入失败，旧日志保持不变
+     */
+    public void rebase(long from) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        synchronized (syncLock) {
+            synchronized (this) {
+                ByteBuffer tail = ByteBuffer.allocate((int) (position - from));
+                while (tail.hasRemaining()) {
+                    if (channel.read(tail, from + tail.position()) < 0) {
+                        throw new EOFException("Journal truncated: " + file);
+                    }
+                }
+                tail.flip();
+                FileChannel previous = channel;
+                long previousPosition = position;
+                long previousHeader = headerLength;
+                channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE, StandardOpenOption.READ);
+                try {
+                    position = 0;
+                    writeFully(header());
+                    headerLength = position;
+                    writeFully(tail);
+                    channel.force(true);
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    forceDirectory(file.getParent());
+                } catch (IOException e) {
+                    FileChannel failed = channel;
+                    channel = previous;
+                    position = previousPosition;
+                    headerLength = previousHeader;
+                    try {
+                        failed.close();
+                        Files.deleteIfExists(temp);
+                    } catch (IOException deleteError) {
+                        e.addSuppressed(deleteError);
+                    }
+                    throw e;
+                }
+                previous.close();
+                saved = Math.max(headerLength, saved - from + headerLength);
+                synced = position;
+            }
+        }
+    }
+
+    private ByteBuffer header() throws IOException {
+        byte[] path = target.toString().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(28 + path.length);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putLong(Files.exists(target) ? Files.size(target) : -1)
+                .putLong(Files.exists(target) ? Files.getLastModifiedTime(target).toMillis() : -1)
+                .putInt(path.length).put(path).flip();
+        return header;
+    }
+
+    /**
+     * 让目录中的重命名本身落盘，不支持目录 fsync 的平台上忽略
+     *
+     * @param directory 目录
+     */
+    public static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows 等平台不能打开目录
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * 读取日志中已保存的编辑。末尾因崩溃写了一半或校验失败的记录被忽略，最后一条保存标记之后的编辑同样被忽略。
+     *
+     * @param file 日志文件
+     * @return 恢复信息；原文件在最后一次检查点之后已被替换时 stale 为 true
+     * @throws IOException 读取失败或不是日志文件
+     */
+    public static Recovery read(Path file) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (data.remaining() < 28 || data.getInt() != MAGIC || data.getInt() != VERSION) {
+            throw new IOException("Not a file journal: " + file);
+        }
+        long baseSize = data.getLong();
+        long baseModified = data.getLong();
+        int pathLength = data.getInt();
+        if (pathLength < 0 || pathLength > data.remaining()) {
+            throw new EOFException("Truncated journal header: " + file);
+        }
+        byte[] path = new byte[pathLength];
+        data.get(path);
+        Path target = Paths.get(new String(path, StandardCharsets.UTF_8));
+        long headerLength = data.position();
+        long end = headerLength;
+
+        List<Edit> edits = new ArrayList<>();
+        int savedEdits = 0;
+        while (data.remaining() >= RECORD_HEADER) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+            if (length < 5 || length > data.remaining()) {
+                break; // 写了一半的记录
+            }
+            ByteBuffer payload = data.slice(data.position(), length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            data.position(data.position() + length);
+            byte op = payload.get();
+            if (op == SAVE) {
+                savedEdits = edits.size();
+                end = data.position();
+                continue;
+            }
+            int line = payload.getInt();
+            byte[] text = new byte[payload.remaining()];
+            payload.get(text);
+            edits.add(new Edit(op, line, op == DELETE ? null : new String(text, StandardCharsets.UTF_8)));
+        }
+
+        boolean stale = !Files.exists(target)
+                || Files.size(target) != baseSize
+                || Files.getLastModifiedTime(target).toMillis() != baseModified;
+        return new Recovery(target, List.copyOf(edits.subList(0, savedEdits)), stale, headerLength, end);
+    }
+
+    /**
+     * 将一条编辑应用到文档
+     *
+     * @param document 文档
+     * @param edit 编辑
+     */
+    public static void apply(LineDocument document, Edit edit) {
+        switch (edit.op) {
+            case INSERT:
+                document.insertLine(edit.line, edit.text);
+                break;
+            case REPLACE:
+                document.replaceLine(edit.line, edit.text);
+                break;
+            case DELETE:
+                document.deleteLine(edit.line);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal op: " + edit.op);
+        }
+    }
+
+    /**
+     * 日志中的一条编辑
+     */
+    public static final class Edit {
+        public final byte op;
+        public final int line;
+        public final String text;
+
+        public Edit(byte op, int line, String text) {
+            this.op = op;
+            this.line = line;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 读取日志得到的恢复信息
+     */
+    public static final class Recovery {
+        public final Path target;
+        public final List<Edit> edits;
+        public final boolean stale;
+        final long headerLength; // 头部长度
+        final long end; // 最后一条保存标记的结束位置
+
+        Recovery(Path target, List<Edit> edits, boolean stale, long headerLength, long end) {
+            this.target = target;
+            this.edits = edits;
+            this.stale = stale;
+            this.headerLength = headerLength;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package com.dream.nick_server.websocket.files.document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.BiFunction;
+
+/**
+ * 以行为单位的片段表（piece table）文档模型。
+ * 原始文件内容与编辑追加的内容分别保存在只读的 LineSource 中，
+ * 文档本身只是一串按顺序排列的片段，每个片段引用某个来源中的连续若干行。
+ * 片段保存在按行数隐式排序的 treap 中，按行号定位、插入、删除、替换都是 O(log n)，
+ * 内存占用与编辑次数成正比，而不是与文件行数成正比。
+ * 在第一次编辑之前，读取直接转发给原始来源，因此后台建立索引的大文件打开后即可按行读取。
+ * 本类不是线程安全的，调用方需要自行加锁；只读方法不会修改内部结构，可以在读锁下并发调用。
+ */
+public class LineDocument implements Closeable {
+
+    private final LineSource original; // 打开时的文件内容
+    private final AppendLineSource added = new AppendLineSource(); // 编辑时新增的行
+    private final String lineSeparator; // 保存时使用的换行符
+    private Node root;
+    private boolean pristine = true; // 尚未编辑，片段树还未建立
+    private int seed;
+
+    public LineDocument(LineSource original, String lineSeparator) {
+        this.original = original;
+        this.lineSeparator = lineSeparator;
+        this.seed = System.identityHashCode(this) | 1;
+    }
+
+    /**
+     * 读取文件并创建文档，文件内容按 UTF-8 解析
+     *
+     * @param path 文件路径
+     * @return 文档
+     * @throws IOException 读取失败
+     */
+    public static LineDocument load(Path path) throws IOException {
+        byte[] data = Files.readAllBytes(path);
+        return new LineDocument(ByteLineSource.of(data), ByteLineSource.detectLineSeparator(data, System.lineSeparator()));
+    }
+
+    /**
+     * @return 文档行数
+     */
+    public int lineCount() {
+        return pristine ? original.lineCount() : size(root);
+    }
+
+    /**
+     * 判断指定行是否存在，未编辑的文档只等待原始来源索引到该行
+     *
+     * @param index 行号，从 0 开始
+     * @return 该行是否存在
+     */
+    public boolean hasLine(int index) {
+        return pristine ? original.hasLine(index) : index >= 0 && index < size(root);
+    }
+
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    /**
+     * 读取指定行
+     *
+     * @param index 行号，从 0 开始
+     * @return 行内容
+     */
+    public String getLine(int index) {
+        return pristine ? original.line(index) : find(index, LineSource::line);
+    }
+
+    /**
+     * 指定行保存到文件时的字节数，不含换行符
+     *
+     * @param index 行号，从 0 开始
+     * @return 字节数
+     */
+    public int getLineBytes(int index) {
+        return pristine ? original.lineBytes(index) : find(index, LineSource::lineBytes);
+    }
+
+    private <T> T find(int index, BiFunction<LineSource, Integer, T> read) {
+        checkIndex(index, size(root));
+        Node node = root;
+        while (true) {
+            int leftLines = size(node.left);
+            if (index < leftLines) {
+                node = node.left;
+            } else if (index < leftLines + node.count) {
+                return read.apply(node.source, node.start + index - leftLines);
+            } else {
+                index -= leftLines + node.count;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * 在指定位置插入一行，原来位于该位置及之后的行依次后移
+     *
+     * @param index 插入位置，从 0 开始，等于行数时追加到末尾
+     * @param text 行内容
+     */
+    public void insertLine(int index, String text) {
+        buildPieces();
+        checkIndex(index, lineCount() + 1);
+        Node[] parts = split(root, index);
+        root = merge(merge(parts[0], newLine(text)), parts[1]);
+    }
+
+    /**
+     * 替换指定行的内容
+     *
+     * @param index 行号，从 0 开始
+     * @param text 新内容
+     */
+    public void replaceLine(int index, String text) {
+        buildPieces();
+        checkIndex(index, lineCount());
+        Node[] head = split(root, index);
+        Node[] tail = split(head[1], 1);
+        root = merge(merge(head[0], newLine(text)), tail[1]);
+    }
+
+    /**
+     * 删除指定行
+     *
+     * @param index 行号，从 0 开始
+     */
+    public void deleteLine(int index) {
+        buildPieces();
+        checkIndex(index, lineCount());
+        Node[] head = split(root, index);
+        Node[] tail = split(head[1], 1);
+        root = merge(head[0], tail[1]);
+    }
+
+    /**
+     * 按顺序将全部行写入输出流，每行以文档的换行符结尾
+     *
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        snapshot().writeTo(out);
+    }
+
+    /**
+     * 取得当前内容的快照，耗时与片段数量成正比，与行数无关。
+     * 快照只引用只读的来源，之后的编辑不会改变它，因此可以在锁内取得、在锁外写出
+     *
+     * @return 快照
+     */
+    public Snapshot snapshot() {
+        if (pristine) {
+            return new Snapshot(new LineSource[] { original }, new int[] { 0 }, new int[] { original.lineCount() }, lineSeparator);
+        }
+        int pieces = countNodes(root);
+        LineSource[] sources = new LineSource[pieces];
+        int[] starts = new int[pieces];
+        int[] counts = new int[pieces];
+        LineSource frozen = added.freeze();
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        int i = 0;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                stack.push(node);
+                node = node.left;
+            }
+            node = stack.pop();
+            sources[i] = node.source == added ? frozen : node.source;
+            starts[i] = node.start;
+            counts[i] = node.count;
+            i++;
+            node = node.right;
+        }
+        return new Snapshot(sources, starts, counts, lineSeparator);
+    }
+
+    /**
+     * @return 片段数量，用于观察编辑带来的碎片化程度
+     */
+    public int pieceCount() {
+        return pristine ? 1 : countNodes(root);
+    }
+
+    public LineSource getOriginal() {
+        return original;
+    }
+
+    @Override
+    public void close() throws IOException {
+        original.close();
+    }
+
+    /**
+     * 第一次修改前用整个原始来源建立初始片段，需要等待原始来源的索引完成
+     */
+    private void buildPieces() {
+        if (!pristine) {
+            return;
+        }
+        int count = original.lineCount();
+        root = count > 0 ? new Node(original, 0, count, nextPriority()) : null;
+        pristine = false;
+    }
+
+    private Node newLine(String text) {
+        int index = added.append(text);
+        return new Node(added, index, 1, nextPriority());
+    }
+
+    /**
+     * 将树按行数拆成前 k 行和其余部分，必要时把一个片段拆成两个
+     */
+    private Node[] split(Node node, int k) {
+        if (node == null) {
+            return new Node[] { null, null };
+        }
+        int leftLines = size(node.left);
+        if (k <= leftLines) {
+            Node[] parts = split(node.left, k);
+            node.left = parts[1];
+            node.update();
+            return new Node[] { parts[0], node };
+        }
+        if (k >= leftLines + node.count) {
+            Node[] parts = split(node.right, k - leftLines - node.count);
+            node.right = parts[0];
+            node.update();
+            return new Node[] { node, parts[1] };
+        }
+        // 拆分点落在当前片段内部
+        int headCount = k - leftLines;
+        Node tail = new Node(node.source, node.start + headCount, node.count - headCount, nextPriority());
+        tail.right = node.right;
+        tail.update();
+        node.count = headCount;
+        node.right = null;
+        node.update();
+        return new Node[] { node, tail };
+    }
+
+    /**
+     * 合并两棵树，a 中的行全部位于 b 之前
+     */
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.update();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.update();
+        return b;
+    }
+
+    private int nextPriority() {
+        // xorshift，仅用于保持 treap 的期望平衡
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.lines;
+    }
+
+    private static int countNodes(Node node) {
+        return node == null ? 0 : 1 + countNodes(node.left) + countNodes(node.right);
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Line " + index + " out of range [0, " + bound + ")");
+        }
+    }
+
+    /**
+     * 文档某一时刻的内容：按顺序排列的片段
+     */
+    public static final class Snapshot {
+        private final LineSource[] sources;
+        private final int[] starts;
+        private final int[] counts;
+        private final byte[] separator;
+
+        private Snapshot(LineSource[] sources, int[] starts, int[] counts, String lineSeparator) {
+            this.sources = sources;
+            this.starts = starts;
+            this.counts = counts;
+            this.separator = lineSeparator.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 按顺序将全部行写入输出流，每行以文档的换行符结尾
+         *
+         * @param out 输出流
+         * @throws IOException 写入失败
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            for (int piece = 0; piece < sources.length; piece++) {
+                for (int i = 0; i < counts[piece]; i++) {
+                    sources[piece].writeLine(starts[piece] + i, out);
+                    out.write(separator);
+                }
+            }
+        }
+    }
+
+    /**
+     * treap 节点，每个节点是一个片段：source 中从 start 开始的 count 行
+     */
+    private static final class Node {
+        final LineSource source;
+        final int start;
+        int count;
+        final int priority;
+        int lines; // 子树中的总行数
+        Node left;
+        Node right;
+
+        Node(LineSource source, int start, int count, int priority) {
+            this.source = source;
+            this.start = start;
+            this.count = count;
+            this.priority = priority;
+            this.lines = count;
+        }
+
+        void update() {
+            lines = size(left) + count + size(right);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.dream.nick_server.websocket.files.document;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 按行访问的只读文本来源，片段表中的每个片段都引用某个 LineSource 的一段连续行。
+ * 行号从 0 开始，返回的内容不包含换行符。
+ */
+public interface LineSource extends Closeable {
+
+    /**
+     * @return 行数
+     */
+    int lineCount();
+
+    /**
+     * 判断指定行是否存在。需要后台建立索引的来源只等待索引扫描到该行，而不是等待全部完成
+     *
+     * @param index 行号，从 0 开始
+     * @return 该行是否存在
+     */
+    default boolean hasLine(int index) {
+        return index >= 0 && index < lineCount();
+    }
+
+    /**
+     * 读取指定行的内容
+     *
+     * @param index 行号，从 0 开始
+     * @return 行内容（不含换行符）
+     */
+    String line(int index);
+
+    /**
+     * 指定行写入文件时的字节数（不含换行符），不解码内容
+     *
+     * @param index 行号，从 0 开始
+     * @return 字节数
+     */
+    int lineBytes(int index);
+
+    /**
+     * 将指定行的原始 UTF-8 字节（不含换行符）写入输出流，避免解码再编码
+     *
+     * @param index 行号，从 0 开始
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    void writeLine(int index, OutputStream out) throws IOException;
+
+    /**
+     * 释放来源持有的文件等资源，堆内来源无需处理
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,74 @@
+package com.dream.nick_server.websocket.files.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 行级编辑的操作变换（operational transform）。
+ * 客户端基于旧版本提交的编辑，需要针对该版本之后服务器已经应用的编辑做变换，才能应用到当前文档：
+ * 已应用的插入使其后的行号加一，已应用的删除使其后的行号减一；
+ * 修改或删除一个已被删除的行的编辑失效，变换结果为 null。
+ * 两个编辑在同一位置插入时，已应用的编辑排在前面。
+ */
+public final class LineTransform {
+
+    private LineTransform() {
+    }
+
+    /**
+     * 将一串编辑变换到另一串已应用的编辑之后
+     *
+     * @param edits 基于同一版本、按顺序应用的新编辑
+     * @param applied 该版本之后已经应用的编辑
+     * @return 变换后可直接按顺序应用到当前文档的编辑，失效的编辑已被去掉
+     */
+    public static List<FileJournal.Edit> transform(List<FileJournal.Edit> edits, List<FileJournal.Edit> applied) {
+        List<FileJournal.Edit> concurrent = new ArrayList<>(applied);
+        List<FileJournal.Edit> result = new ArrayList<>(edits.size());
+        for (FileJournal.Edit edit : edits) {
+            // 每个新编辑针对已应用编辑变换后，已应用编辑也要针对它变换，供下一个新编辑使用
+            for (int i = 0; i < concurrent.size() && edit != null; i++) {
+                FileJournal.Edit other = concurrent.get(i);
+                FileJournal.Edit transformed = transform(edit, other, true);
+                concurrent.set(i, transform(other, edit, false));
+                edit = transformed;
+            }
+            if (edit != null) {
+                result.add(edit);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将 edit 变换到 other 之后，两者基于同一版本
+     *
+     * @param edit 要变换的编辑，可以为 null
+     * @param other 先应用的编辑，可以为 null
+     * @param otherFirst 同一位置插入时 other 是否排在前面
+     * @return 变换后的编辑，失效时为 null
+     */
+    static FileJournal.Edit transform(FileJournal.Edit edit, FileJournal.Edit other, boolean otherFirst) {
+        if (edit == null || other == null) {
+            return edit;
+        }
+        switch (other.op) {
+            case FileJournal.INSERT:
+                if (edit.line > other.line
+                        || edit.line == other.line && (edit.op != FileJournal.INSERT || otherFirst)) {
+                    return new FileJournal.Edit(edit.op, edit.line + 1, edit.text);
+                }
+                return edit;
+            case FileJournal.DELETE:
+                if (edit.line == other.line && edit.op != FileJournal.INSERT) {
+                    return null; // 该行已被删除
+                }
+                if (edit.line > other.line) {
+                    return new FileJournal.Edit(edit.op, edit.line - 1, edit.text);
+                }
+                return edit;
+            default:
+                return edit; // 替换不改变行号，同一行的两次替换以后应用的为准
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.dream.nick_server.websocket.files.document;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于内存映射文件的 LineSource，用于超大文件。
+ * 文件通过 FileChannel.map 按块映射，内容不进入堆；行偏移索引在后台线程中逐步建立，
+ * 读取某一行时只需等待索引扫描到该行，不必等待整个文件扫描完成。
+ * Java 不能主动解除映射，关闭后映射要等缓冲区被回收才释放；在此之前 Windows 不允许替换或截断该文件。
+ */
+public class MappedLineSource implements LineSource {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedLineSource.class);
+
+    private static final int CHUNK_SIZE = 1 << 30; // 单个映射块的大小（1GB）
+    private static final int SCAN_BUFFER = 64 * 1024; // 建立索引时每次批量读取的字节数
+    private static final int PUBLISH_INTERVAL = 4096; // 每索引这么多行唤醒一次等待的读取者
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final int chunkSize;
+    private final long size;
+
+    // 行起始偏移，由索引线程写入；先写数组再发布 indexedLines，读取方先读 indexedLines 再读数组
+    private volatile long[] lineStarts = new long[1024];
+    private volatile int indexedLines; // 已建立索引的行数
+    private volatile boolean complete; // 索引是否完成
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private final Object monitor = new Object();
+
+    private MappedLineSource(Path path, FileChannel channel, MappedByteBuffer[] chunks, int chunkSize, long size) {
+        this.path = path;
+        this.channel = channel;
+        this.chunks = chunks;
+        this.chunkSize = chunkSize;
+        this.size = size;
+    }
+
+    /**
+     * 映射文件并在 executor 上开始建立行索引，本方法立即返回
+     *
+     * @param path 文件路径
+     * @param executor 执行后台索引的线程
+     * @return 行来源
+     * @throws IOException 打开或映射失败
+     */
+    public static MappedLineSource open(Path path, Executor executor) throws IOException {
+        return open(path, executor, CHUNK_SIZE);
+    }
+
+    /**
+     * 按指定大小分块映射文件，测试用较小的块覆盖跨块读取
+     */
+    static MappedLineSource open(Path path, Executor executor, int chunkSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            int count = (int) ((size + chunkSize - 1) / chunkSize);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long position = (long) i * chunkSize;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize, size - position));
+            }
+            MappedLineSource source = new MappedLineSource(path, channel, chunks, chunkSize, size);
+            executor.execute(source::buildIndex);
+            return source;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 根据文件开头部分检测换行符
+     *
+     * @param defaultSeparator 开头部分没有换行符时使用的值
+     * @return "\r\n" 或 "\n"
+     */
+    public String detectLineSeparator(String defaultSeparator) {
+        long limit = Math.min(size, SCAN_BUFFER);
+        for (long i = 0; i < limit; i++) {
+            if (byteAt(i) == '\n') {
+                return i > 0 && byteAt(i - 1) == '\r' ? "\r\n" : "\n";
+            }
+        }
+        return defaultSeparator;
+    }
+
+    /**
+     * @return 行索引是否已经完成
+     */
+    public boolean isIndexed() {
+        return complete;
+    }
+
+    /**
+     * @return 目前已建立索引的行数
+     */
+    public int indexedLines() {
+        return indexedLines;
+    }
+
+    @Override
+    public int lineCount() {
+        awaitLine(Integer.MAX_VALUE);
+        return indexedLines;
+    }
+
+    @Override
+    public boolean hasLine(int index) {
+        return index >= 0 && awaitLine(index);
+    }
+
+    @Override
+    public String line(int index) {
+        long start = start(index);
+        byte[] bytes = new byte[(int) (contentEnd(index, start) - start)];
+        read(start, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int lineBytes(int index) {
+        long start = start(index);
+        return (int) (contentEnd(index, start) - start);
+    }
+
+    @Override
+    public void writeLine(int index, OutputStream out) throws IOException {
+        long start = start(index);
+        long end = contentEnd(index, start);
+        byte[] buffer = new byte[(int) Math.min(SCAN_BUFFER, end - start)];
+        while (start < end) {
+            int length = (int) Math.min(buffer.length, end - start);
+            read(start, buffer, 0, length);
+            out.write(buffer, 0, length);
+            start += length;
+        }
+    }
+
+    /**
+     * 停止建立索引并关闭文件，映射的内存在缓冲区被回收后释放
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+        channel.close();
+    }
+
+    /**
+     * 后台扫描换行符，建立行起始偏移索引
+     */
+    private void buildIndex() {
+        long began = System.nanoTime();
+        try {
+            byte[] scan = new byte[SCAN_BUFFER];
+            long lineStart = 0;
+            long position = 0;
+            while (position < size && !closed) {
+                int length = (int) Math.min(scan.length, size - position);
+                read(position, scan, 0, length);
+                for (int i = 0; i < length; i++) {
+                    if (scan[i] == '\n') {
+                        append(lineStart);
+                        lineStart = position + i + 1;
+                    }
+                }
+                position += length;
+            }
+            if (lineStart < size && !closed) {
+                append(lineStart); // 最后一行没有换行符
+            }
+            LOGGER.info("[INDEX] {} lines indexed in {} ms: {}", indexedLines, (System.nanoTime() - began) / 1_000_000, path);
+        } catch (RuntimeException e) {
+            LOGGER.error("[INDEX ERROR] Failed to index file: " + path, e);
+            failure = new IOException("Failed to index " + path, e);
+        } finally {
+            complete = true;
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    private void append(long start) {
+        int count = indexedLines;
+        long[] starts = lineStarts;
+        if (count == starts.length) {
+            long[] bigger = new long[starts.length + (starts.length >> 1)];
+            System.arraycopy(starts, 0, bigger, 0, count);
+            lineStarts = starts = bigger;
+        }
+        starts[count] = start;
+        indexedLines = count + 1;
+        if ((count + 1) % PUBLISH_INTERVAL == 0) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 等待索引扫描到指定行之后（需要知道下一行的起始位置以确定行尾）或索引完成
+     *
+     * @return 该行是否存在
+     */
+    private boolean awaitLine(int index) {
+        synchronized (monitor) {
+            while (!complete && !closed && indexedLines <= index + 1L) {
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while indexing " + path, e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        return index < indexedLines;
+    }
+
+    private long start(int index) {
+        if (!hasLine(index)) {
+            throw new IndexOutOfBoundsException("Line " + index + " out of range: " + path);
+        }
+        return lineStarts[index];
+    }
+
+    /**
+     * 去掉行尾的 \n 与 \r 后的结束位置
+     */
+    private long contentEnd(int index, long start) {
+        long end = index + 1 < indexedLines ? lineStarts[index + 1] : size;
+        if (end > start && byteAt(end - 1) == '\n') {
+            end--;
+        }
+        if (end > start && byteAt(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    private byte byteAt(long position) {
+        return chunks[(int) (position / chunkSize)].get((int) (position % chunkSize));
+    }
+
+    /**
+     * 从映射区域读取字节，可跨越映射块边界
+     */
+    private void read(long position, byte[] target, int offset, int length) {
+        while (length > 0) {
+            MappedByteBuffer chunk = chunks[(int) (position / chunkSize)];
+            int inChunk = (int) (position % chunkSize);
+            int n = Math.min(length, chunk.limit() - inChunk);
+            chunk.get(inChunk, target, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+}
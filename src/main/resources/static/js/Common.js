@@ -28,9 +28,10 @@ function action(url){
  * @param {string} key - 消息键
  * @param {string} message - 消息内容
  * @param {object|Map} value - 附加值
+ * @param {Array} ops - 批量操作列表，可省略
  * @returns {string} - JSON 字符串
  */
-function getJson(type, key, message, value){
+function getJson(type, key, message, value, ops){
     var obj = {type: type, key: key, message: message};
     if (typeof value === "object" && !Array.isArray(value)) {
         obj.value = value;
@@ -39,5 +40,8 @@ function getJson(type, key, message, value){
     } else {
         obj.value = {};
     }
+    if (Array.isArray(ops)) {
+        obj.ops = ops;
+    }
     return JSON.stringify(obj);
 }
@@ -4,16 +4,21 @@ const FILES_CONNECT = WS + HOST + "/files_connect"; // 连接 WebSocket 服务
 const FILES_TYPE = "files"; // 文件传输的类型
 
 // MESSAGES
-const PATH_EACH = "path_each"; // 发送遍历路径的消息类型
+const PATH_EACH = "path_each"; // 发送遍历路径的消息类型，value.mode 为 stream 时按目录分页返回，可带 depth 与 count
 const PATH_SEARCH = "path_search"; // 发送搜索路径的消息类型
 const PATH_DELETE = "path_delete"; // 发送删除路径的消息类型
 const PATH_CREATE = "path_create"; // 发送创建路径的消息类型    
 const PATH_END = "path_end"; // 发送结束消息的消息类型
+const PATH_GREP = "path_grep"; // 发送全文搜索的消息类型，value.cond 为条件，结果分页返回
 const FILE_OPEN = "file_open"; // 发送打开文件消息的消息类型
 const FILE_SAVE = "file_save"; // 发送保存文件消息的消息类型
 const FILE_END = "file_end"; // 发送结束消息的消息类型
 const FILE_READ_LINE = "file_read_line"; // 发送读取文件的一行消息类型
 const FILE_WRITE_LINE = "file_write_line"; // 发送写入文件的一行消息类型
+const FILE_READ_RANGE = "file_read_range"; // 发送读取文件多行的消息类型，结果分块返回
+const FILE_APPLY_BATCH = "file_apply_batch"; // 发送批量编辑的消息类型，操作列表放在 ops 中
+const FILE_CHANGE = "file_change"; // 服务器推送的其他会话的编辑，ops 基于 value.baseVersion
+const FILE_RESYNC = "file_resync"; // 推送积压过多被丢弃，需要按 value.version 重新读取文档
 
 /**
  * FilesWS 类用于处理与文件相关的 WebSocket 通信。
@@ -114,8 +119,9 @@ var FilesWS = (function() {
      * @param {string} message - 要发送的消息内容
      * @param {Object} value - 附带的值
      * @param {Function} showRecevieFunc - 用于展示接收到的数据的函数
+     * @param {Array} ops - 批量编辑的操作列表，每项为 {op, lineNum, value}，可省略
      */
-    FilesWS.prototype.send = function(message, value, showRecevieFunc) {
+    FilesWS.prototype.send = function(message, value, showRecevieFunc, ops) {
         if (typeof showRecevieFunc !== "function") {
             console.error("[错误] showRecevieFunc 必须是一个函数");
             return;
@@ -126,7 +132,7 @@ var FilesWS = (function() {
             console.warn('[警告] 没有连接，不能发送消息');
             return;
         }
-        self.ws.send(getJson(TYPE, "", message, value)); // 发送消息
+        self.ws.send(getJson(TYPE, "", message, value, ops)); // 发送消息
         self.statusFunc(SEND_STATUS); // 打印发送消息成功的状态信息
         self.ws.onmessage = function(event) {
             var data = JSON.parse(event.data); // 解析接收到的消息
@@ -1,11 +1,26 @@
 package com.dream.nick_server;
 
+import java.nio.file.Path;
+
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 
 @SpringBootTest
 class NickServerApplicationTests {
 
+	@TempDir
+	static Path dir;
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry registry) {
+		registry.add("users.store.dir", () -> dir.resolve("users").toString());
+		registry.add("files.journal.dir", () -> dir.resolve("journal").toString());
+		registry.add("files.content-index.file", () -> dir.resolve("index/content.idx").toString());
+	}
+
 	@Test
 	void contextLoads() {
 	}
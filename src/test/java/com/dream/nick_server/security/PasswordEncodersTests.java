@@ -0,0 +1,41 @@
+package com.dream.nick_server.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+class PasswordEncodersTests {
+
+	@Test
+	void calibrationStaysWithinBounds() {
+		assertEquals(5, PasswordEncoders.calibrate(0, 5, 12));
+		assertEquals(12, PasswordEncoders.calibrate(Long.MAX_VALUE, 5, 12));
+		assertEquals(PasswordEncoders.MIN_STRENGTH, PasswordEncoders.calibrate(0, 1, 2));
+
+		int strength = PasswordEncoders.calibrate(50, 4, 16);
+		assertTrue(strength >= 4 && strength <= 16);
+	}
+
+	@Test
+	void newHashesArePrefixedAndLegacyHashesStillMatch() {
+		PasswordEncoder encoder = PasswordEncoders.create(5);
+		String encoded = encoder.encode("secret");
+		assertTrue(encoded.startsWith("{bcrypt}$2a$05$"));
+		assertTrue(encoder.matches("secret", encoded));
+		assertFalse(encoder.upgradeEncoding(encoded));
+
+		// 没有前缀的旧密码按 BCrypt 校验，并需要升级
+		String legacy = new BCryptPasswordEncoder(5).encode("secret");
+		assertTrue(encoder.matches("secret", legacy));
+		assertFalse(encoder.matches("wrong", legacy));
+		assertTrue(encoder.upgradeEncoding(legacy));
+
+		// 强度低于当前配置的需要升级
+		assertTrue(encoder.upgradeEncoding("{bcrypt}" + new BCryptPasswordEncoder(4).encode("secret")));
+		assertFalse(PasswordEncoders.create(4).upgradeEncoding(encoded));
+	}
+}
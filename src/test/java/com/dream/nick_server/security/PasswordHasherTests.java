@@ -0,0 +1,98 @@
+package com.dream.nick_server.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+
+class PasswordHasherTests {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private PasswordHasher hasher;
+
+	/**
+	 * 加密时阻塞到 release 的编码器，用来占住线程
+	 */
+	private final PasswordEncoder blocking = new PasswordEncoder() {
+		@Override
+		public String encode(CharSequence rawPassword) {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "{noop}" + rawPassword;
+		}
+
+		@Override
+		public boolean matches(CharSequence rawPassword, String encodedPassword) {
+			return encodedPassword.equals(encode(rawPassword));
+		}
+	};
+
+	@AfterEach
+	void dispose() {
+		release.countDown();
+		hasher.dispose();
+	}
+
+	@Test
+	void hashesOffTheCallerThread() {
+		hasher = new PasswordHasher(new BCryptPasswordEncoder(4), 2, 4, registry);
+		String encoded = hasher.encode("secret").block();
+
+		assertTrue(hasher.matches("secret", encoded).block());
+		assertFalse(hasher.matches("wrong", encoded).block());
+		assertEquals(1, registry.get("security.password.hash").tag("op", "encode").timer().count());
+		assertEquals(2, registry.get("security.password.hash").tag("op", "matches").timer().count());
+		assertEquals(3, registry.get("security.password.wait").timer().count());
+	}
+
+	@Test
+	void upgradesWeakerHashes() {
+		hasher = new PasswordHasher(PasswordEncoders.create(5), 2, 4, registry);
+		String legacy = new BCryptPasswordEncoder(4).encode("secret");
+
+		String upgraded = hasher.upgrade("secret", legacy).block();
+		assertTrue(upgraded.startsWith("{bcrypt}$2a$05$"));
+		assertTrue(hasher.matches("secret", upgraded).block());
+		assertNull(hasher.upgrade("secret", upgraded).block());
+	}
+
+	@Test
+	void rejectsWhenTheQueueIsFull() throws InterruptedException {
+		hasher = new PasswordHasher(blocking, 1, 1, registry);
+		Disposable running = hasher.encode("a").subscribe();
+		while (hasher.getActive() == 0) {
+			Thread.sleep(1);
+		}
+		Disposable queued = hasher.encode("b").subscribe();
+		assertEquals(1, registry.get("security.password.queued").gauge().value());
+
+		ResponseStatusException busy = assertThrows(ResponseStatusException.class, () -> hasher.encode("c").block());
+		assertEquals(HttpStatus.SERVICE_UNAVAILABLE, busy.getStatusCode());
+		assertEquals(1, hasher.getRejected());
+
+		// 排队中被取消的请求让出位置
+		queued.dispose();
+		assertEquals(0, hasher.getQueued());
+		release.countDown();
+		assertEquals("{noop}d", hasher.encode("d").block());
+		running.dispose();
+	}
+}
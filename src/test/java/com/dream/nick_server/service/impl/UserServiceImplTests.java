@@ -0,0 +1,139 @@
+package com.dream.nick_server.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.dream.nick_server.model.User;
+import com.dream.nick_server.security.PasswordHasher;
+import com.dream.nick_server.service.store.LogUserStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UserServiceImplTests {
+
+	@TempDir
+	Path dir;
+
+	private UserServiceImpl service() throws IOException {
+		return new UserServiceImpl(LogUserStore.open(dir, new ObjectMapper(), 0),
+				new PasswordHasher(new BCryptPasswordEncoder(4), 2, 64, new SimpleMeterRegistry()));
+	}
+
+	@Test
+	void findsUsersByNameAndKeepsNamesUnique() throws Exception {
+		UserServiceImpl users = service();
+		User alice = users.registerUser("alice", "secret", "alice@example.com").block();
+
+		assertEquals(alice, users.loadUserByUsername("alice").block());
+		assertNull(users.loadUserByUsername("bob").block().getUsername());
+		assertNull(users.registerUser("alice", "other", "other@example.com").block());
+		assertNull(users.registerUser("bob", "other", "alice@example.com").block());
+		// 邮件被占用时不应留下用户名
+		assertEquals("bob", users.registerUser("bob", "other", "bob@example.com").block().getUsername());
+
+		// 重新加载文件后索引一致
+		assertEquals(alice, service().loadUserByUsername("alice").block());
+	}
+
+	@Test
+	void updatesAndDeletesMoveTheIndex() throws Exception {
+		UserServiceImpl users = service();
+		User alice = users.registerUser("alice", "secret", "alice@example.com").block();
+		users.registerUser("bob", "secret", "bob@example.com").block();
+
+		User taken = new User(alice.getId(), "bob", alice.getPassword(), alice.getEmail(), alice.getAuthorities());
+		assertNull(users.updateUser(alice.getId(), taken).block());
+		assertEquals(alice, users.loadUserByUsername("alice").block());
+
+		User renamed = new User(alice.getId(), "carol", alice.getPassword(), alice.getEmail(), alice.getAuthorities());
+		assertEquals(renamed, users.updateUser(alice.getId(), renamed).block());
+		assertNull(users.loadUserByUsername("alice").block().getUsername());
+		assertEquals(renamed, users.loadUserByUsername("carol").block());
+		assertEquals("alice", users.registerUser("alice", "secret", "new@example.com").block().getUsername());
+
+		assertTrue(users.deleteUser(alice.getId(), renamed).block());
+		assertNull(users.loadUserByUsername("carol").block().getUsername());
+		assertEquals("carol", users.registerUser("carol", "secret", "alice@example.com").block().getUsername());
+	}
+
+	@Test
+	void upgradesPasswordsOfUnchangedUsers() throws Exception {
+		UserServiceImpl users = service();
+		User alice = users.registerUser("alice", "secret", "alice@example.com").block();
+
+		User upgraded = users.upgradePassword(alice, "{bcrypt}upgraded").block();
+		assertEquals("{bcrypt}upgraded", upgraded.getPassword());
+		assertEquals(alice.getEmail(), upgraded.getEmail());
+		assertEquals(upgraded, users.loadUserByUsername("alice").block());
+
+		// 加载之后被修改过的用户不替换
+		assertNull(users.upgradePassword(alice, "{bcrypt}stale").block());
+		assertEquals(upgraded, users.loadUserByUsername("alice").block());
+	}
+
+	@Test
+	void passwordUpgradesDoNotUndoConcurrentUpdates() throws Exception {
+		UserServiceImpl users = service();
+		User alice = users.registerUser("alice", "secret", "alice@example.com").block();
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 200; i++) {
+				User loaded = users.loadUserByUsername("alice").block();
+				User changed = new User(alice.getId(), "alice", loaded.getPassword(), "alice" + i + "@example.com", alice.getAuthorities());
+				String password = "{bcrypt}upgraded" + i;
+				CyclicBarrier start = new CyclicBarrier(2);
+				Future<User> upgrade = pool.submit(() -> {
+					start.await();
+					return users.upgradePassword(loaded, password).block();
+				});
+				Future<User> update = pool.submit(() -> {
+					start.await();
+					return users.updateUser(alice.getId(), changed).block();
+				});
+				upgrade.get();
+				assertEquals(changed, update.get());
+				// 无论哪个先完成，升级都不能把邮件改回加载时的值
+				assertEquals(changed.getEmail(), users.loadUserByUsername("alice").block().getEmail());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void concurrentRegistrationsClaimANameOnce() throws Exception {
+		UserServiceImpl users = service();
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Callable<User>> tasks = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				String email = "user" + i + "@example.com";
+				tasks.add(() -> users.registerUser("same", "secret", email).block());
+			}
+			long registered = 0;
+			for (Future<User> result : pool.invokeAll(tasks)) {
+				registered += Objects.isNull(result.get()) ? 0 : 1;
+			}
+			assertEquals(1, registered);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
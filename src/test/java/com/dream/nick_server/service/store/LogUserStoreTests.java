@@ -0,0 +1,14 @@
+package com.dream.nick_server.service.store;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class LogUserStoreTests extends UserStoreContractTests {
+
+	@Override
+	protected UserStore open(Path dir) throws IOException {
+		return LogUserStore.open(dir, new ObjectMapper(), 0);
+	}
+}
@@ -0,0 +1,120 @@
+package com.dream.nick_server.service.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.dream.nick_server.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class MappedUserStoreTests extends UserStoreContractTests {
+
+	@Override
+	protected UserStore open(Path dir) throws IOException {
+		return MappedUserStore.open(dir, new ObjectMapper(), 4096, 2);
+	}
+
+	private List<String> files() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.map(file -> file.getFileName().toString()).sorted().toList();
+		}
+	}
+
+	@Test
+	void growsTheMapping() throws IOException {
+		UserStore store = store();
+		for (int i = 0; i < 200; i++) {
+			store.insert(user("id" + i, "user" + i, "user" + i + "@example.com")).block();
+		}
+		assertTrue(Files.size(dir.resolve("users-1.dat")) > 4096);
+		for (int i = 0; i < 200; i++) {
+			assertEquals("id" + i, store.findByUsername("user" + i).block().getId());
+		}
+	}
+
+	@Test
+	void compactsOverwrittenRecords() throws IOException {
+		UserStore store = store();
+		store.insert(user("1", "alice", "alice@example.com")).block();
+		for (int i = 0; i < 200; i++) {
+			store.update("1", user("1", "alice" + i, "alice@example.com")).block();
+		}
+		assertTrue(files().stream().noneMatch(name -> name.equals("users-1.dat")));
+		assertEquals("1", store.findByUsername("alice199").block().getId());
+		store.close();
+
+		assertEquals("1", store().findByUsername("alice199").block().getId());
+	}
+
+	@Test
+	void importsTheLogStore() throws IOException {
+		try (LogUserStore log = LogUserStore.open(dir, new ObjectMapper(), 0)) {
+			log.insert(user("1", "alice", "alice@example.com")).block();
+		}
+		UserStore store = store();
+		assertEquals("1", store.findByUsername("alice").block().getId());
+	}
+
+	@Test
+	void discardsTornRecordsAndIncompleteCompactions() throws IOException {
+		UserStore store = store();
+		store.insert(user("1", "alice", "alice@example.com")).block();
+		store.close();
+
+		// 末尾写了一半的记录
+		Path file = dir.resolve("users-1.dat");
+		byte[] bytes = Files.readAllBytes(file);
+		int end = 8 + 8 + ByteBuffer.wrap(bytes, 8, 4).getInt();
+		for (int i = 0; i < 20; i++) {
+			bytes[end + i] = (byte) (i + 1);
+		}
+		Files.write(file, bytes);
+		// 未写入头部的压缩结果
+		Files.write(dir.resolve("users-2.dat"), new byte[64]);
+
+		UserStore reopened = store();
+		assertEquals("alice", reopened.findById("1").block().getUsername());
+		assertEquals(List.of("users-1.dat"), files());
+		User bob = user("2", "bob", "bob@example.com");
+		reopened.insert(bob).block();
+		reopened.close();
+		assertEquals(bob, store().findById("2").block());
+	}
+
+	@Test
+	void skipsACorruptRecordInTheMiddle() throws IOException {
+		UserStore store = store();
+		store.insert(user("1", "alice", "alice@example.com")).block();
+		store.insert(user("2", "bob", "bob@example.com")).block();
+		store.insert(user("3", "carol", "carol@example.com")).block();
+		store.close();
+
+		// 第二条记录的内容损坏，长度头部完整
+		Path file = dir.resolve("users-1.dat");
+		byte[] bytes = Files.readAllBytes(file);
+		int second = 8 + 8 + ByteBuffer.wrap(bytes, 8, 4).getInt();
+		bytes[second + 8 + 10] ^= 0x5A;
+		Files.write(file, bytes);
+
+		UserStore reopened = store();
+		assertEquals("alice", reopened.findById("1").block().getUsername());
+		assertNull(reopened.findById("2").block());
+		assertEquals("carol", reopened.findById("3").block().getUsername());
+		User dave = user("4", "dave", "dave@example.com");
+		reopened.insert(dave).block();
+		reopened.close();
+
+		UserStore again = store();
+		assertEquals("carol", again.findById("3").block().getUsername());
+		assertEquals(dave, again.findById("4").block());
+	}
+}
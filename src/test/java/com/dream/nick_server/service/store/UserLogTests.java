@@ -0,0 +1,259 @@
+package com.dream.nick_server.service.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dream.nick_server.model.Authority;
+import com.dream.nick_server.model.User;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class UserLogTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@TempDir
+	Path dir;
+
+	private static User user(String id, String name) {
+		return new User(id, name, "hash", name + "@example.com", List.of(Authority.USER));
+	}
+
+	private UserLog open(Map<String, User> users) throws IOException {
+		return UserLog.open(dir, objectMapper, 0, users);
+	}
+
+	private Map<String, User> reopen() throws IOException {
+		Map<String, User> users = new HashMap<>();
+		open(users).close();
+		return users;
+	}
+
+	private List<String> files() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.map(file -> file.getFileName().toString()).sorted().toList();
+		}
+	}
+
+	@Test
+	void replaysTheLogOverTheSnapshot() throws IOException {
+		// 原来的用户文件即快照
+		objectMapper.writeValue(dir.resolve(UserLog.SNAPSHOT).toFile(), Map.of("a", user("a", "alice")));
+
+		UserLog log = open(new HashMap<>());
+		log.put("b", user("b", "bob"));
+		log.put("a", user("a", "anna"));
+		log.delete("b");
+		log.sync();
+		log.close();
+
+		assertEquals(Map.of("a", user("a", "anna")), reopen());
+	}
+
+	@Test
+	void dropsTornRecordsAndKeepsAppending() throws IOException {
+		UserLog log = open(new HashMap<>());
+		log.put("a", user("a", "alice"));
+		log.put("b", user("b", "bob"));
+		log.sync();
+		// 崩溃：最后一条记录只写了一半，不关闭日志
+		Path file = dir.resolve("users-1.log");
+		long complete = Files.size(file);
+		log.put("c", user("c", "carol"));
+		try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+			channel.truncate(complete + 11);
+		}
+		log.close();
+
+		Map<String, User> users = new HashMap<>();
+		UserLog recovered = open(users);
+		assertEquals(Map.of("a", user("a", "alice"), "b", user("b", "bob")), users);
+		assertEquals(complete, Files.size(file));
+		recovered.put("d", user("d", "dave"));
+		recovered.close();
+
+		assertEquals(Map.of("a", user("a", "alice"), "b", user("b", "bob"), "d", user("d", "dave")), reopen());
+	}
+
+	@Test
+	void stopsAtACorruptedRecord() throws IOException {
+		UserLog log = open(new HashMap<>());
+		log.put("a", user("a", "alice"));
+		long first = log.size() + 8;
+		log.put("b", user("b", "bob"));
+		log.close();
+
+		Path file = dir.resolve("users-1.log");
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[(int) first + 20] ^= 1;
+		Files.write(file, bytes);
+
+		assertEquals(Map.of("a", user("a", "alice")), reopen());
+	}
+
+	@Test
+	void skipsACorruptedRecordInTheMiddle() throws IOException {
+		UserLog log = open(new HashMap<>());
+		log.put("a", user("a", "alice"));
+		long second = log.size() + 8;
+		log.put("b", user("b", "bob"));
+		log.put("c", user("c", "carol"));
+		log.close();
+
+		Path file = dir.resolve("users-1.log");
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[(int) second + 20] ^= 1;
+		Files.write(file, bytes);
+
+		// 之后的有效记录保留，日志不被截断，新记录追加在末尾
+		Map<String, User> users = new HashMap<>();
+		UserLog reopened = open(users);
+		assertEquals(Map.of("a", user("a", "alice"), "c", user("c", "carol")), users);
+		assertEquals(bytes.length, Files.size(file));
+		reopened.put("d", user("d", "dave"));
+		reopened.sync();
+		reopened.close();
+		assertEquals(Map.of("a", user("a", "alice"), "c", user("c", "carol"), "d", user("d", "dave")), reopen());
+	}
+
+	@Test
+	void compactionFoldsTheLogIntoTheSnapshot() throws IOException {
+		UserLog log = open(new HashMap<>());
+		for (int i = 0; i < 100; i++) {
+			log.put("a", user("a", "alice" + i));
+		}
+		log.put("b", user("b", "bob"));
+		log.compact();
+		log.put("c", user("c", "carol"));
+		log.close();
+
+		assertEquals(List.of("users-2.log", UserLog.SNAPSHOT), files());
+		assertEquals(Map.of("a", user("a", "alice99"), "b", user("b", "bob")),
+				objectMapper.readValue(dir.resolve(UserLog.SNAPSHOT).toFile(), new TypeReference<Map<String, User>>() {}));
+		assertEquals(Map.of("a", user("a", "alice99"), "b", user("b", "bob"), "c", user("c", "carol")), reopen());
+	}
+
+	@Test
+	void crashDuringCompactionLosesNothing() throws IOException {
+		UserLog log = open(new HashMap<>());
+		log.put("a", user("a", "alice"));
+		log.delete("a");
+		log.put("b", user("b", "bob"));
+		log.sync();
+		byte[] sealed = Files.readAllBytes(dir.resolve("users-1.log"));
+		log.compact();
+		log.put("a", user("a", "anna"));
+		log.sync();
+		log.close();
+		Map<String, User> expected = Map.of("a", user("a", "anna"), "b", user("b", "bob"));
+
+		// 崩溃在删除旧日志之前：旧日志已包含在快照中，重放结果不变
+		Files.write(dir.resolve("users-1.log"), sealed);
+		Files.writeString(dir.resolve(UserLog.SNAPSHOT + ".tmp"), "{\"half"); // 以及未完成的快照
+		assertEquals(expected, reopen());
+		assertEquals(List.of("users-1.log", "users-2.log", UserLog.SNAPSHOT), files());
+	}
+
+	@Test
+	void concurrentWritersShareFsyncs() throws Exception {
+		UserLog log = open(new HashMap<>());
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Callable<Void>> writers = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				String id = "u" + i;
+				writers.add(() -> {
+					for (int n = 0; n < 50; n++) {
+						log.put(id, user(id, id + "-" + n));
+						log.sync();
+					}
+					return null;
+				});
+			}
+			for (Future<Void> done : pool.invokeAll(writers)) {
+				done.get();
+			}
+		} finally {
+			pool.shutdownNow();
+			log.close();
+		}
+		Map<String, User> users = reopen();
+		assertEquals(8, users.size());
+		assertTrue(users.values().stream().allMatch(u -> u.getUsername().endsWith("-49")));
+	}
+
+	@Test
+	void writersKeepGoingWhileTheLogRotates() throws Exception {
+		UserLog log = open(new HashMap<>());
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Void>> writers = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				String id = "u" + i;
+				writers.add(pool.submit(() -> {
+					for (int n = 0; n < 100; n++) {
+						log.put(id, user(id, id + "-" + n));
+						log.sync();
+					}
+					return null;
+				}));
+			}
+			// 换代与压缩和追加、fsync 交错进行
+			for (int i = 0; i < 20; i++) {
+				log.compact();
+			}
+			for (Future<Void> done : writers) {
+				done.get();
+			}
+		} finally {
+			pool.shutdownNow();
+			log.close();
+		}
+		assertEquals(List.of("users-21.log", UserLog.SNAPSHOT), files());
+		Map<String, User> users = reopen();
+		assertEquals(4, users.size());
+		assertTrue(users.values().stream().allMatch(u -> u.getUsername().endsWith("-99")));
+	}
+
+	@Test
+	void seedsOnlyAnEmptyDirectory() throws IOException {
+		Path seed = dir.resolve("seed.json");
+		objectMapper.writeValue(seed.toFile(), Map.of("a", user("a", "alice")));
+		Path store = dir.resolve("store");
+
+		assertTrue(UserLog.seed(store, seed));
+		Map<String, User> users = new HashMap<>();
+		UserLog log = UserLog.open(store, objectMapper, 0, users);
+		assertEquals("alice", users.get("a").getUsername());
+		log.put("b", user("b", "bob"));
+		log.sync();
+		log.close();
+
+		// 已有数据的目录不会被初始数据覆盖
+		objectMapper.writeValue(seed.toFile(), Map.of("c", user("c", "carol")));
+		assertFalse(UserLog.seed(store, seed));
+		users.clear();
+		UserLog.open(store, objectMapper, 0, users).close();
+		assertEquals(Set.of("a", "b"), users.keySet());
+		assertFalse(UserLog.seed(dir.resolve("other"), dir.resolve("missing.json")));
+	}
+}
@@ -0,0 +1,180 @@
+package com.dream.nick_server.service.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dream.nick_server.model.Authority;
+import com.dream.nick_server.model.User;
+
+/**
+ * 所有 {@link UserStore} 实现都要满足的行为，每个实现继承一次
+ */
+abstract class UserStoreContractTests {
+
+	@TempDir
+	Path dir;
+
+	private final List<UserStore> opened = new ArrayList<>();
+
+	protected abstract UserStore open(Path dir) throws IOException;
+
+	protected UserStore store() throws IOException {
+		UserStore store = open(dir);
+		opened.add(store);
+		return store;
+	}
+
+	@AfterEach
+	void closeStores() throws IOException {
+		for (UserStore store : opened) {
+			store.close();
+		}
+	}
+
+	protected static User user(String id, String name, String email) {
+		return new User(id, name, "hash-" + name, email, List.of(Authority.USER));
+	}
+
+	@Test
+	void findsUsersByIdNameAndEmail() throws IOException {
+		UserStore store = store();
+		User alice = user("1", "alice", "alice@example.com");
+		assertEquals(alice, store.insert(alice).block());
+
+		assertEquals(alice, store.findById("1").block());
+		assertEquals(alice, store.findByUsername("alice").block());
+		assertEquals(alice, store.findByEmail("alice@example.com").block());
+		assertNull(store.findById("2").block());
+		assertNull(store.findByUsername("bob").block());
+		assertNull(store.findByEmail(null).block());
+	}
+
+	@Test
+	void keepsNamesAndEmailsUnique() throws IOException {
+		UserStore store = store();
+		store.insert(user("1", "alice", "alice@example.com")).block();
+
+		assertNull(store.insert(user("2", "alice", "other@example.com")).block());
+		assertNull(store.insert(user("2", "bob", "alice@example.com")).block());
+		assertEquals("bob", store.insert(user("2", "bob", "bob@example.com")).block().getUsername());
+		// 空的电子邮件不参与唯一性检查
+		store.insert(user("3", "carol", "")).block();
+		assertEquals("dave", store.insert(user("4", "dave", "")).block().getUsername());
+	}
+
+	@Test
+	void updatesMoveTheIndex() throws IOException {
+		UserStore store = store();
+		store.insert(user("1", "alice", "alice@example.com")).block();
+		store.insert(user("2", "bob", "bob@example.com")).block();
+
+		assertNull(store.update("1", user("1", "bob", "alice@example.com")).block());
+		assertNull(store.update("1", user("1", "alice", "bob@example.com")).block());
+		assertNull(store.update("9", user("9", "nobody", null)).block());
+		assertEquals(user("1", "alice", "alice@example.com"), store.findByUsername("alice").block());
+
+		User carol = user("1", "carol", "carol@example.com");
+		assertEquals(carol, store.update("1", carol).block());
+		assertNull(store.findByUsername("alice").block());
+		assertNull(store.findByEmail("alice@example.com").block());
+		assertEquals(carol, store.findByUsername("carol").block());
+		assertEquals(carol, store.findByEmail("carol@example.com").block());
+		assertEquals("alice", store.insert(user("3", "alice", "alice@example.com")).block().getUsername());
+	}
+
+	@Test
+	void conditionalUpdatesReplaceOnlyTheExpectedUser() throws Exception {
+		UserStore store = store();
+		User alice = user("1", "alice", "alice@example.com");
+		store.insert(alice).block();
+
+		assertNull(store.update("1", user("1", "alice", "other@example.com"), user("1", "anna", null)).block());
+		assertNull(store.update("2", alice, user("2", "anna", null)).block());
+		assertEquals(alice, store.findById("1").block());
+
+		// 基于同一内容的并发修改只有一个成功，其余的不会覆盖它
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Callable<User>> tasks = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				User changed = new User("1", "alice", "hash-" + i, "alice@example.com", List.of(Authority.USER));
+				tasks.add(() -> store.update("1", alice, changed).block());
+			}
+			List<User> updated = new ArrayList<>();
+			for (Future<User> result : pool.invokeAll(tasks)) {
+				if (result.get() != null) {
+					updated.add(result.get());
+				}
+			}
+			assertEquals(1, updated.size());
+			assertEquals(updated.get(0), store.findById("1").block());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void deletesOnlyMatchingUsers() throws IOException {
+		UserStore store = store();
+		User alice = user("1", "alice", "alice@example.com");
+		store.insert(alice).block();
+
+		assertFalse(store.delete("1", user("1", "alice", "other@example.com")).block());
+		assertFalse(store.delete("2", alice).block());
+		assertTrue(store.delete("1", alice).block());
+		assertNull(store.findById("1").block());
+		assertNull(store.findByUsername("alice").block());
+		assertEquals(alice, store.insert(alice).block());
+	}
+
+	@Test
+	void survivesReopening() throws IOException {
+		UserStore store = store();
+		store.insert(user("1", "alice", "alice@example.com")).block();
+		store.insert(user("2", "bob", "bob@example.com")).block();
+		store.update("1", user("1", "anna", "anna@example.com")).block();
+		store.delete("2", user("2", "bob", "bob@example.com")).block();
+		store.close();
+		opened.remove(store);
+
+		UserStore reopened = store();
+		assertEquals(user("1", "anna", "anna@example.com"), reopened.findByUsername("anna").block());
+		assertNull(reopened.findById("2").block());
+		assertNull(reopened.insert(user("3", "anna", null)).block());
+	}
+
+	@Test
+	void concurrentInsertsClaimANameOnce() throws Exception {
+		UserStore store = store();
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Callable<User>> tasks = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				String id = String.valueOf(i);
+				tasks.add(() -> store.insert(user(id, "same", id + "@example.com")).block());
+			}
+			int inserted = 0;
+			for (Future<User> result : pool.invokeAll(tasks)) {
+				inserted += result.get() == null ? 0 : 1;
+			}
+			assertEquals(1, inserted);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
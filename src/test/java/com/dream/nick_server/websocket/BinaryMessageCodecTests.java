@@ -0,0 +1,93 @@
+package com.dream.nick_server.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import io.netty.buffer.PooledByteBufAllocator;
+
+class BinaryMessageCodecTests {
+
+	private final BinaryMessageCodec codec = new BinaryMessageCodec();
+
+	private static WebSocketMessageBody sample() {
+		Map<String, String> value = new LinkedHashMap<>();
+		value.put("path", "src/main/workSpace/文档.txt");
+		value.put("1", "emoji 😀 and \"quotes\"\n");
+		value.put("empty", "");
+		value.put("missing", null);
+		return WebSocketMessageBody.success("file_change", value, List.of(Map.of("op", "insert", "lineNum", "3", "value", "x".repeat(300))));
+	}
+
+	private void assertRoundTrip(DataBufferFactory factory) {
+		WebSocketMessageBody body = sample();
+		DataBuffer buffer = codec.encode(body, factory);
+		try {
+			WebSocketMessageBody decoded = codec.decode(buffer);
+			assertEquals(body.toString(), decoded.toString());
+			assertEquals(body.getValue(), decoded.getValue());
+			assertEquals(body.getOps(), decoded.getOps());
+		} finally {
+			DataBufferUtils.release(buffer);
+		}
+	}
+
+	@Test
+	void roundTripsThroughHeapAndPooledBuffers() {
+		assertRoundTrip(DefaultDataBufferFactory.sharedInstance);
+		assertRoundTrip(new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT));
+	}
+
+	@Test
+	void encodesStringsAsUtf8() {
+		String text = "aé中😀";
+		assertEquals(text.getBytes(StandardCharsets.UTF_8).length, BinaryMessageCodec.utf8Length(text));
+
+		WebSocketMessageBody body = WebSocketMessageBody.success("lone \uD800 surrogate", null);
+		WebSocketMessageBody decoded = codec.decode(codec.encode(body, DefaultDataBufferFactory.sharedInstance));
+		assertEquals("lone ? surrogate", decoded.getMessage());
+		assertNull(decoded.getValue());
+		assertNull(decoded.getOps());
+	}
+
+	@Test
+	void rejectsMalformedFrames() {
+		DataBuffer buffer = codec.encode(sample(), DefaultDataBufferFactory.sharedInstance);
+		byte[] bytes = new byte[buffer.readableByteCount()];
+		buffer.read(bytes);
+
+		byte[] truncated = new byte[bytes.length - 1];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		assertThrows(IllegalArgumentException.class, () -> codec.decode(DefaultDataBufferFactory.sharedInstance.wrap(truncated)));
+
+		byte[] version = bytes.clone();
+		version[0] = 9;
+		assertThrows(IllegalArgumentException.class, () -> codec.decode(DefaultDataBufferFactory.sharedInstance.wrap(version)));
+	}
+
+	@Test
+	void carriesRequestIdsOnlyWhenPresent() {
+		DataBuffer plain = codec.encode(sample(), DefaultDataBufferFactory.sharedInstance);
+		assertEquals(BinaryMessageCodec.VERSION, plain.getByte(0));
+		assertNull(codec.decode(plain).getId());
+
+		WebSocketMessageBody tagged = sample().withId("req-42");
+		DataBuffer buffer = codec.encode(tagged, DefaultDataBufferFactory.sharedInstance);
+		assertEquals(BinaryMessageCodec.VERSION_WITH_ID, buffer.getByte(0));
+		WebSocketMessageBody decoded = codec.decode(buffer);
+		assertEquals("req-42", decoded.getId());
+		assertEquals(tagged.toString(), decoded.toString());
+	}
+}
@@ -0,0 +1,120 @@
+package com.dream.nick_server.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.reactive.socket.CloseStatus;
+import org.springframework.web.reactive.socket.WebSocketSession;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.handler.codec.http.websocketx.CorruptedWebSocketFrameException;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameDecoder;
+import io.netty.handler.codec.http.websocketx.WebSocketDecoderConfig;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class WebSocketLimitsTests {
+
+	private final WebSocketLimits limits = new WebSocketLimits(1024, 2, 64, 1000, new SimpleMeterRegistry());
+
+	@Test
+	void rejectsRequestsOverTheGlobalLimit() {
+		Sinks.Empty<Void> slow = Sinks.empty();
+		Flux<String> held = limits.inFlight(slow.asMono().thenMany(Flux.just("done")), () -> "busy");
+
+		List<String> first = new ArrayList<>();
+		held.subscribe(first::add);
+		held.subscribe(first::add);
+		assertEquals(2, limits.getInFlight());
+
+		assertEquals(List.of("busy"), limits.inFlight(Flux.just("x"), () -> "busy").collectList().block());
+		assertEquals(1, limits.count(WebSocketLimits.GLOBAL_IN_FLIGHT));
+
+		slow.tryEmitEmpty();
+		assertEquals(List.of("done", "done"), first);
+		assertEquals(0, limits.getInFlight());
+		assertEquals(List.of("x"), limits.inFlight(Flux.just("x"), () -> "busy").collectList().block());
+	}
+
+	@Test
+	void closesConnectionsThatStopReading() {
+		EmbeddedChannel channel = new EmbeddedChannel();
+		channel.config().setOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(32, 64));
+		limits.watch(channel);
+
+		// 缓冲超过上限后恢复，不会关闭
+		channel.write(Unpooled.wrappedBuffer(new byte[128]));
+		assertFalse(channel.isWritable());
+		channel.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+		channel.flush();
+		channel.runScheduledPendingTasks();
+		assertTrue(channel.isWritable());
+		channel.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+		channel.runScheduledPendingTasks();
+		assertTrue(channel.isActive());
+		assertEquals(0, limits.count(WebSocketLimits.OUTBOUND));
+
+		// 持续超过上限，到时关闭连接
+		channel.write(Unpooled.wrappedBuffer(new byte[128]));
+		assertFalse(channel.isWritable());
+		channel.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+		channel.runScheduledPendingTasks();
+		assertFalse(channel.isActive());
+		assertEquals(1, limits.count(WebSocketLimits.OUTBOUND));
+	}
+
+	/**
+	 * 由 Netty 的解码器解析一个客户端帧（带掩码），返回它抛出的异常
+	 */
+	private static CorruptedWebSocketFrameException decodeError(int firstByte, int payloadLength) {
+		EmbeddedChannel channel = new EmbeddedChannel(new WebSocket13FrameDecoder(
+				WebSocketDecoderConfig.newBuilder().maxFramePayloadLength(16).build()));
+		byte[] frame = new byte[2 + 4 + payloadLength];
+		frame[0] = (byte) firstByte;
+		frame[1] = (byte) (0x80 | payloadLength);
+		return assertThrows(CorruptedWebSocketFrameException.class, () -> channel.writeInbound(Unpooled.wrappedBuffer(frame)));
+	}
+
+	private CloseStatus receive(Throwable error) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn("s");
+		when(session.receive()).thenReturn(Flux.error(error));
+		when(session.close(any())).thenReturn(Mono.empty());
+		assertTrue(limits.receive(session).collectList().block().isEmpty());
+		ArgumentCaptor<CloseStatus> status = ArgumentCaptor.forClass(CloseStatus.class);
+		verify(session).close(status.capture());
+		return status.getValue();
+	}
+
+	@Test
+	void onlyOversizedFramesCountAgainstTheFrameLimit() {
+		// 未协商扩展时设置了 RSV1 的文本帧：格式错误，但只有 1 字节
+		CloseStatus malformed = receive(decodeError(0xC1, 1));
+		assertEquals(CloseStatus.PROTOCOL_ERROR.getCode(), malformed.getCode());
+		assertEquals(0, limits.count(WebSocketLimits.FRAME_SIZE));
+
+		// 单帧超过解码器的上限
+		assertEquals(WebSocketLimits.FRAME_TOO_BIG, receive(decodeError(0x81, 100)));
+		// 合并分片后超过聚合器的上限
+		assertEquals(WebSocketLimits.FRAME_TOO_BIG, receive(new TooLongFrameException("too long")));
+		assertEquals(2, limits.count(WebSocketLimits.FRAME_SIZE));
+	}
+}
@@ -0,0 +1,78 @@
+package com.dream.nick_server.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+class WebSocketMessageCodecTests {
+
+	private final WebSocketMessageCodec codec = new WebSocketMessageCodec(new ObjectMapper());
+
+	@Test
+	void roundTripsMessages() throws Exception {
+		WebSocketMessageBody body = codec.read(
+				"{\"type\":\"files\",\"key\":\"\",\"message\":\"file_apply_batch\",\"value\":{\"path\":\"a.txt\"},"
+						+ "\"ops\":[{\"op\":\"insert\",\"lineNum\":\"1\",\"value\":\"x\"}]}");
+		assertEquals("file_apply_batch", body.getMessage());
+		assertEquals(Map.of("path", "a.txt"), body.getValue());
+		assertEquals(List.of(Map.of("op", "insert", "lineNum", "1", "value", "x")), body.getOps());
+
+		WebSocketMessageBody copy = codec.read(codec.write(body));
+		assertEquals(body.toString(), copy.toString());
+		assertEquals(body.getOps(), copy.getOps());
+	}
+
+	@Test
+	void omitsMissingOps() throws Exception {
+		String json = WebSocketMessageBody.success("file_save", null).toJson();
+		assertEquals("{\"type\":\"success\",\"key\":\"utf-8\",\"message\":\"file_save\",\"value\":null}", json);
+		assertFalse(json.contains("ops"));
+		assertNull(codec.read(json).getOps());
+		assertNull(codec.read(json).getId());
+
+		String tagged = WebSocketMessageBody.success("file_save", null).withId("7").toJson();
+		assertEquals("{\"type\":\"success\",\"key\":\"utf-8\",\"message\":\"file_save\",\"value\":null,\"id\":\"7\"}", tagged);
+		assertEquals("7", codec.read(tagged).getId());
+	}
+
+	@Test
+	void readsFramesStraightFromBuffers() throws Exception {
+		String json = "{\"type\":\"files\",\"key\":\"\",\"message\":\"file_write_line\",\"value\":{\"value\":\"行内容 😀\"}}";
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+		DataBuffer single = DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+		assertEquals("行内容 😀", codec.read(single).getValue().get("value"));
+
+		// 由多段组成的缓冲区，分段处正好切开多字节字符
+		int split = json.indexOf('😀') + 2;
+		CompositeByteBuf composite = Unpooled.compositeBuffer()
+				.addComponent(true, Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, 0, split)))
+				.addComponent(true, Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, split, bytes.length)));
+		DataBuffer parts = new NettyDataBufferFactory(Unpooled.buffer().alloc()).wrap(composite);
+		try {
+			assertEquals("行内容 😀", codec.read(parts).getValue().get("value"));
+		} finally {
+			composite.release();
+		}
+
+		assertThrows(IOException.class, () -> codec.read(DefaultDataBufferFactory.sharedInstance.wrap("{\"message\":".getBytes(StandardCharsets.UTF_8))));
+		assertThrows(IOException.class, () -> codec.read(DefaultDataBufferFactory.sharedInstance.allocateBuffer(0)));
+	}
+}
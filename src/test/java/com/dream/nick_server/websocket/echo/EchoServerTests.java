@@ -0,0 +1,75 @@
+package com.dream.nick_server.websocket.echo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+
+import com.dream.nick_server.websocket.WebSocketMessageCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import reactor.core.publisher.Flux;
+
+class EchoServerTests {
+
+	private final NettyDataBufferFactory factory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+	private final EchoServer server = new EchoServer(new WebSocketMessageCodec(new ObjectMapper()), 5, 2);
+
+	private WebSocketMessage text(String text) {
+		return new WebSocketMessage(WebSocketMessage.Type.TEXT, factory.wrap(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String content(WebSocketMessage msg) {
+		String text = msg.getPayloadAsText();
+		DataBufferUtils.release(msg.getPayload());
+		return text;
+	}
+
+	private static int refCnt(WebSocketMessage msg) {
+		return ((NettyDataBuffer) msg.getPayload()).getNativeBuffer().refCnt();
+	}
+
+	@Test
+	void answersJsonMessages() {
+		String response = server.answer(text("{\"type\":\"echo\",\"key\":\"\",\"message\":\"hi\",\"value\":{}}").getPayload());
+		assertEquals("{\"type\":\"success\",\"key\":\"utf-8\",\"message\":\"RESPONSE : hi\",\"value\":null}", response);
+	}
+
+	@Test
+	void reflectsFramesWithoutCopying() {
+		WebSocketMessage in = text("{\"raw\":1}");
+		WebSocketMessage ping = new WebSocketMessage(WebSocketMessage.Type.PING, factory.wrap(new byte[] {1}));
+
+		List<WebSocketMessage> out = server.reflect(Flux.just(in, ping)).collectList().block();
+		assertEquals(1, out.size());
+		assertEquals(in.getPayload().toString(0, in.getPayload().readableByteCount(), StandardCharsets.UTF_8),
+				out.get(0).getPayloadAsText());
+		assertEquals(2, refCnt(in)); // 与收到的帧共享同一个缓冲区
+		assertEquals(1, refCnt(ping));
+
+		DataBufferUtils.release(out.get(0).getPayload());
+		DataBufferUtils.release(in.getPayload());
+		DataBufferUtils.release(ping.getPayload());
+		assertEquals(0, refCnt(in));
+	}
+
+	@Test
+	void aggregatesFramesIntoBatches() {
+		List<WebSocketMessage> in = List.of(text("a"), text("b"), text("c"));
+
+		List<String> out = server.aggregate(Flux.fromIterable(in), factory).map(EchoServerTests::content).collectList().block();
+		assertEquals(List.of("a\nb", "c"), out);
+
+		for (WebSocketMessage msg : in) {
+			assertEquals(1, refCnt(msg)); // 发出的帧释放后只剩收到的帧自己的引用
+			DataBufferUtils.release(msg.getPayload());
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package com.dream.nick_server.websocket.files;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class ChangeFeedTests {
+
+	private static FileChange change(long version) {
+		return new FileChange(null, Paths.get("a.txt"), version - 1, version, List.of());
+	}
+
+	@Test
+	void deliversOnDemandAndCoalescesOverflow() {
+		Sinks.Many<FileChange> changes = Sinks.many().multicast().directBestEffort();
+		ChangeFeed<String> feed = new ChangeFeed<>(2, change -> "change " + change.getVersion(), version -> "resync " + version);
+
+		StepVerifier.create(feed.asFlux(), 0)
+				.then(() -> feed.subscribe(changes.asFlux()))
+				.then(() -> changes.tryEmitNext(change(1)))
+				.thenRequest(1)
+				.expectNext("change 1")
+				// 下游没有请求时积压超过上限，积压的编辑被合并
+				.then(() -> {
+					for (long version = 2; version <= 6; version++) {
+						changes.tryEmitNext(change(version));
+					}
+				})
+				.thenRequest(5)
+				.expectNext("resync 6")
+				.then(() -> changes.tryEmitNext(change(7)))
+				.expectNext("change 7")
+				.then(feed::cancel)
+				.verifyComplete();
+	}
+}
@@ -0,0 +1,113 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dream.nick_server.websocket.WebSocketMessageBody;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ContentIndexTests {
+
+	@TempDir
+	Path dir;
+
+	private final FileIoScheduler io = new FileIoScheduler(FileIoScheduler.MODE_BOUNDED_ELASTIC, 4, 0, 1, new SimpleMeterRegistry());
+	private Path root;
+	private WorkspaceIndex workspace;
+	private FileJournalManager journals;
+	private ContentIndex contents;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		root = Files.createDirectories(dir.resolve("workspace"));
+		workspace = new WorkspaceIndex(root);
+		workspace.start();
+		journals = new FileJournalManager(dir.resolve("journal").toString(), 60_000, 1 << 20);
+		FileBufferRegistry registry = new FileBufferRegistry(Long.MAX_VALUE, io, journals);
+		contents = new ContentIndex(workspace, registry, io, dir.resolve("index/content.idx").toString(), 16, 60_000);
+		contents.start();
+	}
+
+	@AfterEach
+	void dispose() throws Exception {
+		contents.stop();
+		workspace.stop();
+		journals.dispose();
+		io.dispose();
+	}
+
+	private Set<String> grep(String cond) {
+		Set<String> files = new TreeSet<>();
+		for (WebSocketMessageBody page : contents.grep(cond, null).collectList().block()) {
+			page.getValue().keySet().stream()
+					.filter(key -> key.contains(":"))
+					.forEach(key -> files.add(key.substring(0, key.lastIndexOf(':'))));
+		}
+		return files;
+	}
+
+	private Set<String> await(String cond, Set<String> expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		Set<String> files = grep(cond);
+		while (!files.equals(expected) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+			files = grep(cond);
+		}
+		return files;
+	}
+
+	@Test
+	void indexesFilesChangedOutsideTheServer() throws IOException, InterruptedException {
+		Files.writeString(root.resolve("a.txt"), "alpha\n");
+		Files.createDirectories(root.resolve("sub"));
+		Files.writeString(root.resolve("sub/b.txt"), "alpha\n");
+		assertEquals(Set.of("a.txt", "sub/b.txt"), await("text:alpha", Set.of("a.txt", "sub/b.txt")));
+
+		Files.writeString(root.resolve("a.txt"), "gamma\n");
+		assertEquals(Set.of("a.txt"), await("text:gamma", Set.of("a.txt")));
+		assertEquals(Set.of("sub/b.txt"), grep("text:alpha"));
+
+		Files.delete(root.resolve("sub/b.txt"));
+		assertEquals(Set.of(), await("text:alpha", Set.of()));
+	}
+
+	@Test
+	void skipsBackupsAndFilesOverTheByteLimit() throws IOException, InterruptedException {
+		Files.writeString(root.resolve("old.txt.bk"), "delta\n");
+		// 9 个字符，UTF-8 编码后连同换行符为 19 字节，超过 16 字节的上限
+		Path wide = Files.writeString(root.resolve("wide.txt"), "ééééééééé\n");
+		FileBuffer buffer = new FileBuffer(wide, Long.MAX_VALUE, Runnable::run, journals);
+		buffer.loadIfNeeded();
+		contents.updated(buffer);
+		buffer.dispose();
+
+		// 索引更新依次执行，标记文件出现时之前的更新都已完成
+		Files.writeString(root.resolve("marker.txt"), "delta\n");
+		assertEquals(Set.of("marker.txt"), await("text:delta", Set.of("marker.txt")));
+		assertTrue(grep("text:ééé").isEmpty());
+	}
+
+	@Test
+	void regexWithEscapesFindsEveryMatch() throws IOException, InterruptedException {
+		Files.writeString(root.resolve("hex.txt"), "Abcd\n");
+		Files.writeString(root.resolve("other.txt"), "41bcd\n");
+		assertEquals(Set.of("hex.txt", "other.txt"), await("text:bcd", Set.of("hex.txt", "other.txt")));
+
+		// 转义的参数不是必然出现的字面量，不能用于排除候选文件
+		assertEquals(Set.of("hex.txt"), grep("regex:\\x41bcd"));
+		assertEquals(Set.of("hex.txt"), grep("regex:\\u0041bcd"));
+		assertEquals(Set.of("hex.txt"), grep("regex:(?<n>A)\\k<n>?bcd"));
+	}
+}
@@ -0,0 +1,63 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class ContentTrigramIndexTests {
+
+	@Test
+	void updateReplacesPreviousContent() {
+		ContentTrigramIndex index = new ContentTrigramIndex();
+		index.put("a.txt", 10, 1, ContentTrigramIndex.grams("hello world"));
+		index.put("b/c.txt", 20, 2, ContentTrigramIndex.grams("world peace"));
+
+		assertEquals(Set.of("a.txt", "b/c.txt"), index.candidates(List.of("world")));
+		assertEquals(Set.of("a.txt"), index.candidates(List.of("hello", "world")));
+		assertNull(index.candidates(List.of()));
+
+		index.put("a.txt", 11, 3, ContentTrigramIndex.grams("goodbye"));
+		assertEquals(Set.of("b/c.txt"), index.candidates(List.of("world")));
+		assertTrue(index.candidates(List.of("hello")).isEmpty());
+		assertTrue(index.isCurrent("a.txt", 11, 3));
+		assertFalse(index.isCurrent("a.txt", 10, 1));
+
+		assertTrue(index.remove("b/c.txt"));
+		assertTrue(index.candidates(List.of("world")).isEmpty());
+	}
+
+	@Test
+	void roundTripsThroughCompactFormat() throws IOException {
+		ContentTrigramIndex index = new ContentTrigramIndex();
+		index.put("a.txt", 10, 1, ContentTrigramIndex.grams("hello world"));
+		index.put("b.txt", 20, 2, ContentTrigramIndex.grams("world 世界"));
+		index.put("c.txt", 30, 3, ContentTrigramIndex.grams("old"));
+		index.remove("c.txt"); // 编号出现空缺
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		index.write(new DataOutputStream(bytes));
+		ContentTrigramIndex read = ContentTrigramIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(Set.of("a.txt", "b.txt"), read.keys());
+		assertEquals(Set.of("a.txt", "b.txt"), read.candidates(List.of("world")));
+		assertEquals(Set.of("b.txt"), read.candidates(List.of("d 世界")));
+		assertTrue(read.isCurrent("b.txt", 20, 2));
+		assertTrue(read.candidates(List.of("old")).isEmpty());
+
+		byte[] corrupt = bytes.toByteArray();
+		corrupt[0] ^= 1;
+		assertThrows(IOException.class, () -> ContentTrigramIndex.read(new DataInputStream(new ByteArrayInputStream(corrupt))));
+	}
+}
@@ -0,0 +1,82 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import reactor.test.StepVerifier;
+
+class DirectoryWalkerTests {
+
+	@TempDir
+	Path root;
+
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@AfterEach
+	void shutdown() {
+		pool.shutdownNow();
+	}
+
+	private Set<Path> tree() throws IOException {
+		Set<Path> files = new HashSet<>();
+		for (int d = 0; d < 5; d++) {
+			Path dir = Files.createDirectories(root.resolve("d" + d).resolve("sub"));
+			for (int f = 0; f < 7; f++) {
+				files.add(Files.createFile(dir.getParent().resolve("f" + f + ".txt")));
+				files.add(Files.createFile(dir.resolve("g" + f + ".txt")));
+			}
+		}
+		files.add(Files.createFile(root.resolve("top.txt")));
+		return files;
+	}
+
+	@Test
+	void streamsEveryFileInPages() throws IOException {
+		Set<Path> expected = tree();
+		List<DirectoryWalker.Page> pages = new DirectoryWalker(pool, 2).walk(root, Integer.MAX_VALUE, 3)
+				.collectList().block();
+
+		Set<Path> seen = new HashSet<>();
+		for (DirectoryWalker.Page page : pages) {
+			assertTrue(page.files.size() <= 3);
+			for (Path file : page.files) {
+				assertEquals(page.dir, file.getParent());
+				assertTrue(seen.add(file));
+			}
+		}
+		assertEquals(expected, seen);
+	}
+
+	@Test
+	void respectsDepthAndDemand() throws IOException {
+		tree();
+		DirectoryWalker walker = new DirectoryWalker(pool, 1);
+
+		StepVerifier.create(walker.walk(root, 1, 100).map(page -> page.depth), 0)
+				.thenRequest(1)
+				.expectNextMatches(depth -> depth <= 1)
+				.thenRequest(Long.MAX_VALUE)
+				.thenConsumeWhile(depth -> depth <= 1)
+				.verifyComplete();
+
+		// 只取一页后取消，遍历线程不会一直等待
+		StepVerifier.create(walker.walk(root, Integer.MAX_VALUE, 1), 1)
+				.expectNextCount(1)
+				.thenCancel()
+				.verify();
+		assertTrue(pool.awaitQuiescence(5, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,72 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dream.nick_server.websocket.files.document.FileJournal;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FileBufferRegistryTests {
+
+	@TempDir
+	Path dir;
+
+	private final FileIoScheduler io = new FileIoScheduler(FileIoScheduler.MODE_BOUNDED_ELASTIC, 4, 0, 1, new SimpleMeterRegistry());
+	private FileJournalManager journals;
+	private FileBufferRegistry registry;
+
+	@BeforeEach
+	void setUp() {
+		journals = new FileJournalManager(dir.resolve("journal").toString(), 60_000, 1 << 20);
+		registry = new FileBufferRegistry(Long.MAX_VALUE, io, journals);
+	}
+
+	@AfterEach
+	void dispose() {
+		registry.checkpointAll();
+		journals.dispose();
+		io.dispose();
+	}
+
+	private static void edit(FileBuffer buffer, int line, String text) throws IOException {
+		buffer.writeLock().lock();
+		try {
+			buffer.apply(null, buffer.getVersion(), List.of(new FileJournal.Edit(FileJournal.REPLACE, line, text)));
+		} finally {
+			buffer.writeLock().unlock();
+		}
+	}
+
+	@Test
+	void reopeningWaitsForThePendingCheckpoint() throws IOException {
+		Path file = FileBufferRegistry.normalize(dir.resolve("a.txt").toString());
+		Files.writeString(file, "0\n");
+		for (int i = 1; i <= 20; i++) {
+			FileBuffer buffer = registry.acquire(file);
+			buffer.loadIfNeeded();
+			assertEquals(String.valueOf(i - 1), buffer.getDocument().getLine(0));
+			edit(buffer, 0, String.valueOf(i));
+			buffer.save();
+			registry.release(buffer); // 检查点在 I/O 调度器上执行
+
+			assertEquals(0, registry.size());
+			assertThrows(IllegalStateException.class, () -> edit(buffer, 0, "late"));
+			assertNotSame(buffer, registry.acquire(file));
+			registry.release(registry.get(file));
+		}
+		registry.checkpointAll();
+		assertEquals(List.of("20"), Files.readAllLines(file));
+	}
+}
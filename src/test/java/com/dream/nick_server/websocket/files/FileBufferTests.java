@@ -0,0 +1,131 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dream.nick_server.websocket.files.document.FileJournal;
+
+class FileBufferTests {
+
+	@TempDir
+	Path dir;
+
+	private FileJournalManager journals;
+
+	@AfterEach
+	void dispose() {
+		if (journals != null) {
+			journals.dispose();
+		}
+	}
+
+	private FileBuffer open(Path file) throws IOException {
+		if (journals == null) {
+			journals = new FileJournalManager(dir.resolve("journal").toString(), 60_000, 1 << 20);
+		}
+		FileBuffer buffer = new FileBuffer(file, Long.MAX_VALUE, Runnable::run, journals);
+		buffer.loadIfNeeded();
+		return buffer;
+	}
+
+	private static void apply(FileBuffer buffer, FileJournal.Edit edit) throws IOException {
+		buffer.writeLock().lock();
+		try {
+			buffer.apply(null, buffer.getVersion(), List.of(edit));
+		} finally {
+			buffer.writeLock().unlock();
+		}
+	}
+
+	private static void edit(FileBuffer buffer, FileJournal.Edit edit) throws IOException {
+		apply(buffer, edit);
+		buffer.save();
+	}
+
+	private List<Path> journalFiles() throws IOException {
+		try (Stream<Path> files = Files.list(dir.resolve("journal"))) {
+			return files.toList();
+		}
+	}
+
+	@Test
+	void savedEditsSurviveAFailedCheckpoint() throws IOException {
+		Path file = dir.resolve("a.txt");
+		Files.writeString(file, "a\nb\n");
+		FileBuffer buffer = open(file);
+		edit(buffer, new FileJournal.Edit(FileJournal.REPLACE, 0, "A"));
+
+		// 临时文件的位置被目录占用，检查点失败
+		Path blocker = Files.createDirectory(dir.resolve("a.txt.saving"));
+		buffer.dispose();
+		assertEquals(List.of("a", "b"), Files.readAllLines(file));
+		assertEquals(1, journalFiles().size());
+
+		// 重新打开时恢复已保存的编辑，并在残留的日志之后继续记录
+		FileBuffer reopened = open(file);
+		assertEquals("A", reopened.getDocument().getLine(0));
+		assertEquals(0, reopened.getVersion());
+		edit(reopened, new FileJournal.Edit(FileJournal.INSERT, 2, "c"));
+		reopened.dispose();
+		assertEquals(List.of("a", "b"), Files.readAllLines(file));
+
+		Files.delete(blocker);
+		FileBuffer again = open(file);
+		assertEquals(3, again.getDocument().lineCount());
+		again.dispose();
+		assertEquals(List.of("A", "b", "c"), Files.readAllLines(file));
+		assertTrue(journalFiles().isEmpty());
+	}
+
+	@Test
+	void discardsEditsNotFollowedBySave() throws IOException {
+		Path file = dir.resolve("c.txt");
+		Files.writeString(file, "a\nb\n");
+		FileBuffer buffer = open(file);
+		edit(buffer, new FileJournal.Edit(FileJournal.REPLACE, 0, "A"));
+		apply(buffer, new FileJournal.Edit(FileJournal.INSERT, 2, "c"));
+
+		// 未保存时不执行检查点
+		buffer.checkpoint();
+		assertEquals(List.of("a", "b"), Files.readAllLines(file));
+
+		buffer.dispose();
+		assertEquals(List.of("A", "b"), Files.readAllLines(file));
+		assertTrue(journalFiles().isEmpty());
+
+		// 从没保存过的编辑关闭后不留下日志
+		FileBuffer reopened = open(file);
+		apply(reopened, new FileJournal.Edit(FileJournal.DELETE, 0, null));
+		reopened.dispose();
+		assertEquals(List.of("A", "b"), Files.readAllLines(file));
+		assertTrue(journalFiles().isEmpty());
+	}
+
+	@Test
+	void refusesToOpenOverAnUnreadableJournal() throws IOException {
+		Path file = dir.resolve("b.txt");
+		Files.writeString(file, "x\n");
+		FileBuffer buffer = open(file);
+		edit(buffer, new FileJournal.Edit(FileJournal.REPLACE, 0, "y"));
+		Files.createDirectory(dir.resolve("b.txt.saving"));
+		buffer.dispose();
+
+		Path journal = journalFiles().get(0);
+		Files.write(journal, new byte[] { 1, 2, 3 });
+		assertThrows(IOException.class, () -> open(file));
+		// 无法恢复的日志保留，不会被新的日志覆盖
+		assertEquals(List.of(journal), journalFiles());
+		assertEquals(3, Files.size(journal));
+	}
+}
@@ -0,0 +1,209 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dream.nick_server.websocket.WebSocketMessageBody;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.scheduler.Schedulers;
+
+class FileManageTests {
+
+	@TempDir
+	Path dir;
+
+	private final FileIoScheduler io = new FileIoScheduler(FileIoScheduler.MODE_BOUNDED_ELASTIC, 4, 0, 1, new SimpleMeterRegistry());
+	private FileJournalManager journals;
+	private FileBufferRegistry registry;
+	private FileManage fileManage;
+	private String path;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		journals = new FileJournalManager(dir.resolve("journal").toString(), 60_000, 1 << 20);
+		registry = new FileBufferRegistry(Long.MAX_VALUE, io, journals);
+		fileManage = new FileManage(registry, mock(ContentIndex.class), Schedulers.immediate(), 16);
+		Path file = dir.resolve("a.txt");
+		Files.writeString(file, "a\nb\nc\n");
+		path = file.toString();
+		fileManage.open(path).blockLast();
+	}
+
+	@AfterEach
+	void dispose() throws IOException {
+		fileManage.close();
+		registry.checkpointAll();
+		journals.dispose();
+		io.dispose();
+	}
+
+	private static Map<String, String> op(String op, int line, String value) {
+		return value == null
+				? Map.of(FileManage.OP_KEY, op, FilesManagementServer.LINE_KEY, String.valueOf(line))
+				: Map.of(FileManage.OP_KEY, op, FilesManagementServer.LINE_KEY, String.valueOf(line), FilesManagementServer.VALUE_KEY, value);
+	}
+
+	private FileBuffer buffer() {
+		return registry.get(FileBufferRegistry.normalize(path));
+	}
+
+	private List<String> lines() {
+		FileBuffer buffer = buffer();
+		buffer.readLock().lock();
+		try {
+			List<String> lines = new ArrayList<>();
+			for (int i = 0; i < buffer.getDocument().lineCount(); i++) {
+				lines.add(buffer.getDocument().getLine(i));
+			}
+			return lines;
+		} finally {
+			buffer.readLock().unlock();
+		}
+	}
+
+	private long version() {
+		FileBuffer buffer = buffer();
+		buffer.readLock().lock();
+		try {
+			return buffer.getVersion();
+		} finally {
+			buffer.readLock().unlock();
+		}
+	}
+
+	@Test
+	void appliesABatchAsOneVersion() {
+		WebSocketMessageBody result = fileManage.applyBatch(path, List.of(
+				op(FileManage.OP_INSERT, 1, "top"),
+				op(FileManage.OP_REPLACE, 3, "B"),
+				op(FileManage.OP_DELETE, 4, null)), null);
+
+		assertEquals(Map.of(FileManage.VERSION_KEY, "1", FileManage.COUNT_KEY, "3", FileManage.LINES_KEY, "3"), result.getValue());
+		assertEquals(List.of("top", "a", "B"), lines());
+	}
+
+	@Test
+	void rejectsAnOutOfRangeLineWithoutTouchingTheDocument() {
+		WebSocketMessageBody result = fileManage.applyBatch(path, List.of(
+				op(FileManage.OP_REPLACE, 1, "x"),
+				op(FileManage.OP_DELETE, 3, null),
+				op(FileManage.OP_REPLACE, 3, "past the end")), null);
+
+		assertEquals("error", result.getType());
+		assertEquals(Map.of("reason", "Line out of range"), result.getValue());
+		assertEquals(List.of("a", "b", "c"), lines());
+		assertEquals(0, version());
+
+		WebSocketMessageBody invalid = fileManage.applyBatch(path, List.of(op("move", 1, "x")), null);
+		assertEquals(Map.of("reason", "Invalid operation at 0"), invalid.getValue());
+	}
+
+	@Test
+	void rejectsStaleAndFutureVersions() {
+		assertEquals("error", fileManage.applyBatch(path, List.of(op(FileManage.OP_REPLACE, 1, "x")), "5").getType());
+
+		fileManage.applyBatch(path, List.of(op(FileManage.OP_REPLACE, 1, "x")), "0");
+		List<Map<String, String>> paste = new ArrayList<>();
+		for (int i = 0; i <= 10000; i++) {
+			paste.add(op(FileManage.OP_INSERT, 1, "line " + i));
+		}
+		assertEquals("2", fileManage.applyBatch(path, paste, "1").getValue().get(FileManage.VERSION_KEY));
+
+		// 版本 0 之后的编辑已超出保留的历史，无法合并
+		WebSocketMessageBody stale = fileManage.applyBatch(path, List.of(op(FileManage.OP_REPLACE, 1, "y")), "0");
+		assertEquals(Map.of("reason", "Version out of range"), stale.getValue());
+		assertEquals("line 10000", lines().get(0));
+		assertEquals(2, version());
+	}
+
+	@Test
+	void opensLargeFilesWithoutSendingTheirContent() throws IOException {
+		FileBufferRegistry mappedRegistry = new FileBufferRegistry(16, io, journals); // 16 字节以上的文件按大文件打开
+		FileManage session = new FileManage(mappedRegistry, mock(ContentIndex.class), Schedulers.immediate(), 16);
+		Path big = Files.writeString(dir.resolve("big.txt"), "first\nsecond\nthird\n");
+		try {
+			List<WebSocketMessageBody> reply = session.open(big.toString()).collectList().block();
+			assertEquals(1, reply.size());
+			Map<String, String> info = reply.get(0).getValue();
+			assertEquals(Set.of(FileManage.PATH_KEY, FileManage.MODE_KEY, FileManage.SIZE_KEY, FileManage.INDEXED_KEY,
+					FileManage.VERSION_KEY), info.keySet());
+			assertEquals(big.toString(), info.get(FileManage.PATH_KEY));
+			assertEquals(FileManage.MODE_MAPPED, info.get(FileManage.MODE_KEY));
+			assertEquals(String.valueOf(Files.size(big)), info.get(FileManage.SIZE_KEY));
+			assertEquals("0", info.get(FileManage.VERSION_KEY));
+
+			// 内容按行读取，读取只等待索引扫描到该行
+			assertEquals(Map.of("2", "second"), session.readLine(big.toString(), "2").getValue());
+		} finally {
+			session.close();
+			mappedRegistry.checkpointAll();
+		}
+	}
+
+	@Test
+	void opensRacingCloseAreReleased() throws Exception {
+		Path other = Files.writeString(dir.resolve("b.txt"), "x\n");
+		Path key = FileBufferRegistry.normalize(other.toString());
+		fileManage.close();
+		assertEquals(Map.of("reason", "Session closed"), fileManage.open(other.toString()).blockLast().getValue());
+		assertNull(registry.get(key));
+
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 200; i++) {
+				FileManage session = new FileManage(registry, mock(ContentIndex.class), Schedulers.immediate(), 16);
+				CyclicBarrier start = new CyclicBarrier(2);
+				Future<?> open = pool.submit(() -> {
+					start.await();
+					return session.open(other.toString()).blockLast();
+				});
+				Future<?> close = pool.submit(() -> {
+					start.await();
+					session.close();
+					return null;
+				});
+				open.get();
+				close.get();
+				// 无论打开与关闭谁先完成，会话关闭后都不再持有文档
+				assertNull(registry.get(key));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void rejectsRequestsOnABufferReleasedMidRequest() {
+		// 模拟请求取得缓冲区后、拿到锁之前，最后一个引用被释放
+		FileBuffer released = buffer();
+		registry.release(released);
+
+		WebSocketMessageBody batch = fileManage.applyBatch(path, List.of(op(FileManage.OP_REPLACE, 1, "x")), null);
+		assertEquals(Map.of("reason", "File closed"), batch.getValue());
+		WebSocketMessageBody write = fileManage.writeLine(path, "1", "x", null);
+		assertEquals(Map.of("reason", "File closed"), write.getValue());
+
+		registry.checkpointAll(); // 等待文档关闭
+		assertEquals(Map.of("reason", "File closed"), fileManage.readLine(path, "1").getValue());
+		assertEquals(Map.of("reason", "File closed"), fileManage.writeLine(path, "1", "x", "0").getValue());
+	}
+}
@@ -0,0 +1,184 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dream.nick_server.websocket.WebSocketMessageBody;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+class FilesManagementServerTests {
+
+	@TempDir
+	Path dir;
+
+	private final FileIoScheduler io = new FileIoScheduler(FileIoScheduler.MODE_BOUNDED_ELASTIC, 8, 0, 1, new SimpleMeterRegistry());
+	private final PathManage pathManage = mock(PathManage.class);
+	private final FilesManagementServer server = new FilesManagementServer(pathManage, mock(ContentIndex.class), io);
+
+	@AfterEach
+	void dispose() {
+		io.dispose();
+	}
+
+	private static WebSocketMessageBody request(String message, String cond) {
+		Map<String, String> value = new HashMap<>();
+		value.put(FilesManagementServer.COND_KEY, cond);
+		WebSocketMessageBody body = new WebSocketMessageBody();
+		body.setType("files");
+		body.setMessage(message);
+		body.setValue(value);
+		return body;
+	}
+
+	@Test
+	void concurrentRequestsKeepTheirOwnArguments() {
+		when(pathManage.search(anyString())).thenAnswer(invocation -> {
+			Thread.sleep(1); // 让请求在不同线程上交错执行
+			String cond = invocation.getArgument(0);
+			return WebSocketMessageBody.success(PathManage.SEARCH, Map.of(FilesManagementServer.COND_KEY, cond));
+		});
+
+		List<String> conds = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			conds.add("cond-" + i);
+		}
+		List<String> results = Flux.fromIterable(conds)
+				.flatMapSequential(cond -> server.getMsg(null, request(PathManage.SEARCH, cond)), 32)
+				.map(body -> body.getValue().get(FilesManagementServer.COND_KEY))
+				.collectList()
+				.block();
+		assertEquals(conds, results);
+	}
+
+	@Test
+	void unknownAndFailingRequestsAnswerWithErrors() {
+		WebSocketMessageBody unknown = server.getMsg(null, request("no_such_message", null)).blockLast();
+		assertEquals("error", unknown.getType());
+		assertEquals("no_such_message", unknown.getMessage());
+
+		WebSocketMessageBody missing = server.getMsg(null, new WebSocketMessageBody()).blockLast();
+		assertEquals("error", missing.getType());
+		assertNull(missing.getMessage());
+
+		when(pathManage.search(anyString())).thenThrow(new IllegalStateException("boom"));
+		WebSocketMessageBody failed = server.getMsg(null, request(PathManage.SEARCH, "x")).blockLast();
+		assertEquals("error", failed.getType());
+		assertEquals(Map.of("reason", "Invalid message"), failed.getValue());
+	}
+
+	@Test
+	void commandsAreImmutableCopies() {
+		List<Map<String, String>> ops = new ArrayList<>();
+		ops.add(Map.of(FilesManagementServer.LINE_KEY, "1"));
+		WebSocketMessageBody body = request(FileManage.APPLY_BATCH, null);
+		body.getValue().put(FilesManagementServer.PATH_KEY, "a.txt");
+		body.setOps(ops);
+
+		FileCommand command = FileCommand.from(body);
+		body.getValue().put(FilesManagementServer.PATH_KEY, "b.txt");
+		ops.clear();
+		assertEquals("a.txt", command.getPath());
+		assertEquals(1, command.getOps().size());
+		assertThrows(UnsupportedOperationException.class, () -> command.getOps().clear());
+	}
+
+	private static FileCommand tagged(String message, String id, String path) {
+		WebSocketMessageBody body = request(message, null);
+		body.setId(id);
+		if (path != null) {
+			body.getValue().put(FilesManagementServer.PATH_KEY, path);
+		}
+		return FileCommand.from(body);
+	}
+
+	@Test
+	void onlyTaggedReadsSkipTheQueues() {
+		OrderedLanes.Order session = OrderedLanes.Order.in(FilesManagementServer.SESSION_LANE);
+		String a = FileBufferRegistry.normalize("a.txt").toString();
+		assertEquals(session, server.laneOf(tagged(FileManage.WRITE_LINE, null, "docs/../a.txt"))); // 不带编号
+
+		OrderedLanes.Order write = server.laneOf(tagged(FileManage.WRITE_LINE, "1", "docs/../a.txt"));
+		assertEquals(OrderedLanes.Order.in(FilesManagementServer.PATH_LANE + a), write);
+		assertEquals(write, server.laneOf(tagged(FileManage.SAVE, "2", "a.txt")));
+
+		// 打开与关闭改变当前文档，同时排在该路径的队列中
+		OrderedLanes.Order open = OrderedLanes.Order.in(FilesManagementServer.SESSION_LANE,
+				FilesManagementServer.PATH_LANE + a, FilesManagementServer.OPEN_LANE + a);
+		assertEquals(open, server.laneOf(tagged(FileManage.OPEN, "3", "a.txt")));
+		assertEquals(open, server.laneOf(tagged(FileManage.END, "4", "a.txt")));
+		assertEquals(session, server.laneOf(tagged(FileManage.END, "5", null)));
+
+		assertEquals(session, server.laneOf(tagged(FileManage.READE_LINE, "6", null))); // 读取当前文档
+		assertEquals(OrderedLanes.Order.after(FilesManagementServer.OPEN_LANE + a),
+				server.laneOf(tagged(FileManage.READE_LINE, "7", "a.txt")));
+
+		WebSocketMessageBody search = request(PathManage.SEARCH, "x");
+		search.setId("8");
+		assertEquals(OrderedLanes.Order.NONE, server.laneOf(FileCommand.from(search)));
+	}
+
+	@Test
+	void pipelinedRequestsSeeThePrecedingOpen() throws IOException {
+		FileJournalManager journals = new FileJournalManager(dir.resolve("journal").toString(), 60_000, 1 << 20);
+		FileBufferRegistry registry = new FileBufferRegistry(Long.MAX_VALUE, io, journals);
+		try {
+			for (int i = 0; i < 20; i++) {
+				Path file = Files.writeString(dir.resolve("f" + i + ".txt"), "a\nb\n");
+				FileManage fileManage = new FileManage(registry, mock(ContentIndex.class), Schedulers.immediate(), 16);
+				OrderedLanes lanes = new OrderedLanes();
+
+				// 与 FileHandler 相同：按到达顺序提交，不等待前一个请求的响应
+				FileCommand open = tagged(FileManage.OPEN, "1", file.toString());
+				WebSocketMessageBody writeBody = request(FileManage.WRITE_LINE, null);
+				writeBody.setId("2");
+				writeBody.getValue().put(FilesManagementServer.LINE_KEY, "1");
+				writeBody.getValue().put(FilesManagementServer.VALUE_KEY, "x");
+				FileCommand write = FileCommand.from(writeBody); // 未指定路径，写入刚打开的文档
+				WebSocketMessageBody readBody = request(FileManage.READE_LINE, null);
+				readBody.setId("3");
+				readBody.getValue().put(FilesManagementServer.PATH_KEY, file.toString());
+				readBody.getValue().put(FilesManagementServer.LINE_KEY, "2");
+				FileCommand read = FileCommand.from(readBody);
+
+				List<WebSocketMessageBody> responses = Flux.merge(
+						lanes.submit(server.laneOf(open), () -> server.getMsg(fileManage, open)),
+						lanes.submit(server.laneOf(write), () -> server.getMsg(fileManage, write)),
+						lanes.submit(server.laneOf(read), () -> server.getMsg(fileManage, read)))
+						.collectList()
+						.block(Duration.ofSeconds(10));
+
+				for (WebSocketMessageBody response : responses) {
+					assertNotEquals("error", response.getType(), response.toString());
+				}
+				assertTrue(responses.stream().anyMatch(r -> FileManage.WRITE_LINE.equals(r.getMessage())));
+				assertTrue(responses.stream().anyMatch(r -> FileManage.READE_LINE.equals(r.getMessage())));
+				fileManage.close();
+			}
+		} finally {
+			registry.checkpointAll();
+			journals.dispose();
+		}
+	}
+}
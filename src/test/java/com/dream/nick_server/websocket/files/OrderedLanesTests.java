@@ -0,0 +1,107 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+class OrderedLanesTests {
+
+	private final OrderedLanes lanes = new OrderedLanes();
+
+	@Test
+	void sameLaneRunsInOrderOtherLanesDoNotWait() {
+		List<String> events = new CopyOnWriteArrayList<>();
+		Sinks.Empty<Void> slow = Sinks.empty();
+
+		Flux<String> first = lanes.submit("a", () -> {
+			events.add("start a1");
+			return slow.asMono().thenMany(Flux.just("a1"));
+		});
+		Flux<String> second = lanes.submit("a", () -> {
+			events.add("start a2");
+			return Flux.just("a2");
+		});
+		Flux<String> other = lanes.submit("b", () -> Flux.just("b1"));
+		Flux<String> free = lanes.submit(OrderedLanes.Order.NONE, () -> Flux.just("read"));
+
+		List<String> results = new CopyOnWriteArrayList<>();
+		Disposable running = Flux.merge(first, second, other, free).subscribe(results::add);
+		assertEquals(List.of("b1", "read"), results);
+		assertEquals(List.of("start a1"), events); // a2 仍在等待 a1
+
+		slow.tryEmitEmpty();
+		assertEquals(List.of("b1", "read", "a1", "a2"), results);
+		assertEquals(List.of("start a1", "start a2"), events);
+		assertEquals(0, lanes.size());
+		running.dispose();
+	}
+
+	@Test
+	void cancelledWaiterStillHoldsItsPlace() {
+		Sinks.Empty<Void> slow = Sinks.empty();
+		AtomicBoolean secondRan = new AtomicBoolean();
+		AtomicBoolean thirdRan = new AtomicBoolean();
+
+		Disposable first = lanes.submit("a", () -> slow.asMono().thenMany(Flux.just(1))).subscribe();
+		Disposable second = lanes.submit("a", () -> {
+			secondRan.set(true);
+			return Flux.just(2);
+		}).subscribe();
+		second.dispose(); // 等待中被取消
+
+		lanes.submit("a", () -> {
+			thirdRan.set(true);
+			return Flux.just(3);
+		}).subscribe();
+		assertFalse(thirdRan.get()); // 仍要等待 first 结束
+
+		slow.tryEmitEmpty();
+		assertTrue(thirdRan.get());
+		assertFalse(secondRan.get());
+		assertEquals(0, lanes.size());
+		first.dispose();
+	}
+
+	@Test
+	void waitersDoNotHoldUpLaterRequests() {
+		List<String> results = new CopyOnWriteArrayList<>();
+		Sinks.Empty<Void> opening = Sinks.empty();
+		Sinks.Empty<Void> reading = Sinks.empty();
+
+		Flux<String> open = lanes.submit(OrderedLanes.Order.in("session", "open"), () -> opening.asMono().thenMany(Flux.just("open")));
+		Flux<String> read = lanes.submit(OrderedLanes.Order.after("open"), () -> reading.asMono().thenMany(Flux.just("read")));
+		Flux<String> end = lanes.submit(OrderedLanes.Order.in("session", "open"), () -> Flux.just("end"));
+		Disposable running = Flux.merge(open, read, end).subscribe(results::add);
+		assertTrue(results.isEmpty());
+
+		opening.tryEmitEmpty();
+		// 读取在打开之后开始，尚未结束的读取不阻塞之后的请求
+		assertEquals(List.of("open", "end"), results);
+		reading.tryEmitEmpty();
+		assertEquals(List.of("open", "end", "read"), results);
+		assertEquals(0, lanes.size());
+		running.dispose();
+	}
+
+	@Test
+	void errorsReleaseTheLane() {
+		List<Object> results = Flux.concat(
+				lanes.submit("a", () -> Flux.<Object>error(new IllegalStateException("boom")))
+						.onErrorResume(e -> Flux.just("failed")),
+				lanes.submit("a", () -> Flux.just("next")))
+				.collectList()
+				.block(Duration.ofSeconds(5));
+		assertEquals(List.of("failed", "next"), results);
+	}
+}
@@ -0,0 +1,57 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dream.nick_server.websocket.WebSocketMessageBody;
+
+class PathManageTests {
+
+	@TempDir
+	Path root;
+
+	private WorkspaceIndex index;
+	private PathManage pathManage;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		for (int i = 0; i < 25; i++) {
+			Files.createFile(root.resolve("f" + i + ".txt"));
+		}
+		index = new WorkspaceIndex(root);
+		index.start();
+		pathManage = new PathManage(index, mock(ContentIndex.class), 2, 10);
+	}
+
+	@AfterEach
+	void dispose() throws IOException {
+		pathManage.close();
+		index.stop();
+	}
+
+	private static List<Integer> counts(List<WebSocketMessageBody> frames) {
+		return frames.stream()
+				.map(frame -> Integer.parseInt(frame.getValue().get(PathManage.COUNT_KEY)))
+				.toList();
+	}
+
+	@Test
+	void capsTheRequestedPageSize() {
+		List<WebSocketMessageBody> frames = pathManage.eachStream(null, null, "100000").collectList().block();
+		assertEquals(List.of(10, 10, 5, 25), counts(frames));
+
+		assertEquals(List.of(7, 7, 7, 4, 25), counts(pathManage.eachStream(null, null, "7").collectList().block()));
+		assertEquals(List.of(10, 10, 5, 25), counts(pathManage.eachStream(null, null, null).collectList().block()));
+		assertEquals("error", pathManage.eachStream(null, null, "0").blockFirst().getType());
+	}
+}
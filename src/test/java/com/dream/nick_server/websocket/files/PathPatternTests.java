@@ -0,0 +1,62 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class PathPatternTests {
+
+	@Test
+	void globSeparatesDirectoriesAndAlternatives() {
+		PathPattern pattern = PathPattern.compile("glob:**/src/*.{java,js}");
+		assertTrue(pattern.matches("src/Main.java"));
+		assertTrue(pattern.matches("a/b/src/app.js"));
+		assertFalse(pattern.matches("a/src/sub/Main.java"));
+		assertFalse(pattern.matches("a/src/Main.txt"));
+		assertEquals(List.of("src/"), pattern.getLiterals());
+	}
+
+	@Test
+	void extractsOnlyRequiredRegexLiterals() {
+		assertEquals(List.of("docs/", "report.txt"), PathPattern.regexLiterals("docs/.*report\\.txt"));
+		assertEquals(List.of("abc"), PathPattern.regexLiterals("abcd?(xyz)*"));
+		assertEquals(List.of(), PathPattern.regexLiterals("abc|def"));
+		assertEquals(List.of(), PathPattern.regexLiterals("(?i)readme"));
+	}
+
+	@Test
+	void skipsTheArgumentsOfEscapes() {
+		List<String> cases = List.of("\\x41bcd", "\\x{41}bcd", "\\u0041bcd", "\\0101bcd", "\\cAbcd",
+				"(?<n>A)\\k<n>bcd", "\\p{Lu}bcd", "\\P{Ll}bcd", "\\N{LATIN CAPITAL LETTER A}bcd",
+				"\\QA.\\Ebcd", "(A)\\1bcd", "[\\Q]\\E]bcd", "[a-z&&[^b]]bcd", "[\\x{5d}]bcd");
+		for (String regex : cases) {
+			assertEquals(List.of("bcd"), PathPattern.regexLiterals(regex), regex);
+		}
+		// 提取的字面量必须出现在每个匹配中
+		assertTrue(PathPattern.compile("regex:\\x41bcd").matches("Abcd"));
+		assertTrue(PathPattern.compile("regex:\\u0041bcd").matches("Abcd"));
+		assertTrue(PathPattern.compile("regex:\\cAbcd").matches("\u0001bcd"));
+		assertEquals(List.of("xab", "cde"), PathPattern.regexLiterals("xab\\dcde"));
+	}
+
+	@Test
+	void trigramCandidatesNarrowMatches() {
+		PathTrigramIndex index = new PathTrigramIndex();
+		index.add("a/same.txt");
+		index.add("b/same.txt");
+		index.add("b/other.md");
+
+		assertEquals(Set.of("a/same.txt", "b/same.txt"), index.candidates(List.of("same")));
+		assertTrue(index.candidates(List.of("missing")).isEmpty());
+		assertNull(index.candidates(List.of()));
+
+		index.remove("a/same.txt");
+		assertEquals(Set.of("b/same.txt"), index.candidates(PathPattern.compile("text:same").getLiterals()));
+	}
+}
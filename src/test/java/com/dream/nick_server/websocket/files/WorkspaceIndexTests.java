@@ -0,0 +1,105 @@
+package com.dream.nick_server.websocket.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WorkspaceIndexTests {
+
+	@TempDir
+	Path dir;
+
+	private WorkspaceIndex index;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		Files.createDirectories(dir.resolve("src/main"));
+		Files.writeString(dir.resolve("src/main/App.java"), "class App {}\n");
+		Files.writeString(dir.resolve("README.md"), "readme\n");
+		index = new WorkspaceIndex(dir);
+		index.start();
+	}
+
+	@AfterEach
+	void stop() throws IOException {
+		index.stop();
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the watcher");
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	void indexesTheWorkspaceOnStart() {
+		assertEquals(Map.of("README.md", false, "src", true, "src/main", true, "src/main/App.java", false), index.entries());
+		assertEquals(List.of("src/main/App.java"), List.copyOf(index.candidates(List.of("App"))));
+	}
+
+	@Test
+	void followsCreateAndDeleteEvents() throws IOException, InterruptedException {
+		Files.createDirectories(dir.resolve("docs/api"));
+		Files.writeString(dir.resolve("docs/api/index.html"), "<html/>\n");
+		Files.writeString(dir.resolve("notes.txt"), "notes\n");
+		await(() -> index.entries().containsKey("docs/api/index.html") && index.entries().containsKey("notes.txt"));
+		assertTrue(index.entries().get("docs/api"));
+
+		Files.delete(dir.resolve("src/main/App.java"));
+		Files.delete(dir.resolve("src/main"));
+		await(() -> !index.entries().containsKey("src/main"));
+		assertFalse(index.entries().containsKey("src/main/App.java"));
+		assertTrue(index.candidates(List.of("App")).isEmpty());
+		assertTrue(index.entries().get("src"));
+	}
+
+	@Test
+	void rescanReplacesTheIndexWithoutEmptyingIt() throws IOException, InterruptedException {
+		// 模拟丢失的事件：索引中缺少仍在磁盘上的文件
+		index.removed(dir.resolve("src"));
+		assertEquals(1, index.entries().size());
+		for (int i = 0; i < 200; i++) {
+			Files.writeString(dir.resolve("file-" + i + ".txt"), "x\n");
+		}
+		await(() -> index.entries().size() == 201);
+
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicInteger smallest = new AtomicInteger(Integer.MAX_VALUE);
+		Thread reader = new Thread(() -> {
+			while (!done.get()) {
+				smallest.accumulateAndGet(index.entries().size(), Math::min);
+			}
+		});
+		reader.start();
+		try {
+			for (int i = 0; i < 20; i++) {
+				index.rescan();
+			}
+		} finally {
+			done.set(true);
+			reader.join();
+		}
+
+		// 重新遍历期间读取到的始终是完整的旧索引或新索引
+		assertTrue(smallest.get() >= 201, "Observed a partial index of " + smallest.get() + " entries");
+		assertEquals(204, index.entries().size());
+		assertTrue(index.entries().containsKey("src/main/App.java"));
+		assertEquals(List.of("src/main/App.java"), List.copyOf(index.candidates(List.of("App"))));
+	}
+}
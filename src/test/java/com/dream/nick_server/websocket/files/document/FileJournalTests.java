@@ -0,0 +1,122 @@
+package com.dream.nick_server.websocket.files.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileJournalTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void replaysEditsAndIgnoresTornTail() throws IOException {
+		Path target = dir.resolve("a.txt");
+		Files.writeString(target, "a\nb\nc\n");
+		Path file = dir.resolve("a.wal");
+		try (FileJournal journal = FileJournal.create(file, target)) {
+			journal.append(FileJournal.REPLACE, 1, "B");
+			journal.append(FileJournal.INSERT, 3, "d");
+			journal.append(FileJournal.DELETE, 0, null);
+			journal.markSaved();
+			journal.sync();
+		}
+		// 模拟写到一半时崩溃
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 1, 2 }));
+		}
+
+		FileJournal.Recovery recovery = FileJournal.read(file);
+		assertFalse(recovery.stale);
+		assertEquals(3, recovery.edits.size());
+
+		LineDocument document = LineDocument.load(target);
+		recovery.edits.forEach(edit -> FileJournal.apply(document, edit));
+		assertEquals(3, document.lineCount());
+		assertEquals("B", document.getLine(0));
+		assertEquals("d", document.getLine(2));
+	}
+
+	@Test
+	void journalIsStaleOnceTargetReplaced() throws IOException {
+		Path target = dir.resolve("b.txt");
+		Files.writeString(target, "x\n");
+		Path file = dir.resolve("b.wal");
+		try (FileJournal journal = FileJournal.create(file, target)) {
+			journal.append(FileJournal.REPLACE, 0, "y");
+			journal.sync();
+		}
+		// 检查点已替换原文件，但日志尚未清空
+		Files.write(target, "y\n".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(target, FileTime.fromMillis(Files.getLastModifiedTime(target).toMillis() + 1000));
+
+		assertTrue(FileJournal.read(file).stale);
+	}
+
+	@Test
+	void replaysOnlyTheSavedEdits() throws IOException {
+		Path target = dir.resolve("c.txt");
+		Files.writeString(target, "a\n");
+		Path file = dir.resolve("c.wal");
+		try (FileJournal journal = FileJournal.create(file, target)) {
+			journal.append(FileJournal.REPLACE, 0, "b");
+			journal.markSaved();
+			journal.append(FileJournal.INSERT, 1, "c"); // 没有保存
+			journal.sync();
+		}
+
+		FileJournal.Recovery recovery = FileJournal.read(file);
+		assertEquals(List.of("b"), texts(recovery));
+		// 继续使用时截掉未保存的记录
+		try (FileJournal journal = FileJournal.resume(file, recovery)) {
+			assertFalse(journal.hasUnsaved());
+			journal.append(FileJournal.INSERT, 1, "d");
+			journal.markSaved();
+			journal.sync();
+		}
+		assertEquals(List.of("b", "d"), texts(FileJournal.read(file)));
+	}
+
+	@Test
+	void rebaseKeepsTheEditsAfterTheCheckpoint() throws IOException {
+		Path target = dir.resolve("d.txt");
+		Files.writeString(target, "a\n");
+		Path file = dir.resolve("d.wal");
+		try (FileJournal journal = FileJournal.create(file, target)) {
+			journal.append(FileJournal.REPLACE, 0, "b");
+			journal.markSaved();
+			long mark = journal.position();
+			// 检查点写回原文件期间新增并保存的编辑
+			journal.append(FileJournal.INSERT, 1, "c");
+			journal.markSaved();
+			journal.append(FileJournal.INSERT, 2, "e");
+			Files.writeString(target, "b\n");
+			journal.rebase(mark);
+
+			assertTrue(journal.hasUnsaved());
+			journal.sync();
+		}
+
+		FileJournal.Recovery recovery = FileJournal.read(file);
+		assertFalse(recovery.stale);
+		assertEquals(List.of("c"), texts(recovery));
+		assertFalse(Files.exists(dir.resolve("d.wal.tmp")));
+	}
+
+	private static List<String> texts(FileJournal.Recovery recovery) {
+		return recovery.edits.stream().map(edit -> edit.text).toList();
+	}
+}
@@ -0,0 +1,106 @@
+package com.dream.nick_server.websocket.files.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LineDocumentTests {
+
+	private static LineDocument of(String text) {
+		byte[] data = text.getBytes(StandardCharsets.UTF_8);
+		return new LineDocument(ByteLineSource.of(data), ByteLineSource.detectLineSeparator(data, "\n"));
+	}
+
+	private static String write(LineDocument document) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		document.writeTo(out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void keepsNumericLineOrder() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 1; i <= 12; i++) {
+			text.append("line").append(i).append('\n');
+		}
+		LineDocument document = of(text.toString());
+		document.replaceLine(9, "ten");
+
+		assertEquals(12, document.lineCount());
+		assertEquals("line2", document.getLine(1));
+		assertEquals("ten", document.getLine(9));
+		assertEquals(text.toString().replace("line10\n", "ten\n"), write(document));
+	}
+
+	@Test
+	void snapshotIgnoresLaterEdits() throws IOException {
+		LineDocument document = of("a\nb\n");
+		document.replaceLine(0, "A");
+		LineDocument.Snapshot snapshot = document.snapshot();
+		// 快照之后的编辑会继续写入同一个追加缓冲区，并让它扩容
+		for (int i = 0; i < 100; i++) {
+			document.insertLine(1, "新增的行" + i);
+		}
+		document.deleteLine(0);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		snapshot.writeTo(out);
+		assertEquals("A\nb\n", out.toString(StandardCharsets.UTF_8));
+		assertEquals(101, document.lineCount());
+	}
+
+	@Test
+	void preservesCrLfAndMissingTrailingNewline() throws IOException {
+		LineDocument document = of("a\r\nb\r\nc");
+		assertEquals(3, document.lineCount());
+		assertEquals("b", document.getLine(1));
+
+		document.insertLine(3, "d");
+		assertEquals("a\r\nb\r\nc\r\nd\r\n", write(document));
+	}
+
+	@Test
+	void matchesListUnderRandomEdits() throws IOException {
+		Random random = new Random(42);
+		List<String> expected = new ArrayList<>();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			expected.add("初始" + i);
+			text.append("初始").append(i).append('\n');
+		}
+		LineDocument document = of(text.toString());
+
+		for (int step = 0; step < 5000; step++) {
+			int op = random.nextInt(3);
+			if (op == 0 || expected.isEmpty()) {
+				int index = random.nextInt(expected.size() + 1);
+				expected.add(index, "ins" + step);
+				document.insertLine(index, "ins" + step);
+			} else if (op == 1) {
+				int index = random.nextInt(expected.size());
+				expected.set(index, "rep" + step);
+				document.replaceLine(index, "rep" + step);
+			} else {
+				int index = random.nextInt(expected.size());
+				expected.remove(index);
+				document.deleteLine(index);
+			}
+		}
+
+		assertEquals(expected.size(), document.lineCount());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), document.getLine(i));
+			assertEquals(expected.get(i).getBytes(StandardCharsets.UTF_8).length, document.getLineBytes(i));
+		}
+		StringBuilder joined = new StringBuilder();
+		expected.forEach(line -> joined.append(line).append('\n'));
+		assertEquals(joined.toString(), write(document));
+	}
+}
@@ -0,0 +1,86 @@
+package com.dream.nick_server.websocket.files.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LineTransformTests {
+
+	private static FileJournal.Edit insert(int line, String text) {
+		return new FileJournal.Edit(FileJournal.INSERT, line, text);
+	}
+
+	private static FileJournal.Edit replace(int line, String text) {
+		return new FileJournal.Edit(FileJournal.REPLACE, line, text);
+	}
+
+	private static FileJournal.Edit delete(int line) {
+		return new FileJournal.Edit(FileJournal.DELETE, line, null);
+	}
+
+	private static void apply(List<String> lines, List<FileJournal.Edit> edits) {
+		for (FileJournal.Edit edit : edits) {
+			if (edit.op == FileJournal.INSERT) {
+				lines.add(edit.line, edit.text);
+			} else if (edit.op == FileJournal.REPLACE) {
+				lines.set(edit.line, edit.text);
+			} else {
+				lines.remove(edit.line);
+			}
+		}
+	}
+
+	@Test
+	void shiftsAroundConcurrentInsertAndDelete() {
+		List<FileJournal.Edit> edits = List.of(replace(5, "a"), insert(2, "b"));
+		List<FileJournal.Edit> result = LineTransform.transform(edits, List.of(insert(0, "x"), delete(3)));
+
+		assertEquals(2, result.size());
+		assertEquals(5, result.get(0).line);
+		assertEquals(3, result.get(1).line);
+	}
+
+	@Test
+	void dropsEditsOfDeletedLine() {
+		List<FileJournal.Edit> result = LineTransform.transform(
+				List.of(replace(4, "a"), delete(4)), List.of(delete(4)));
+		assertTrue(result.isEmpty());
+	}
+
+	@Test
+	void concurrentReplaceFollowsOriginalLine() {
+		Random random = new Random(7);
+		for (int round = 0; round < 500; round++) {
+			List<String> base = new ArrayList<>();
+			for (int i = 0; i < 20; i++) {
+				base.add("l" + i);
+			}
+			// 其他会话先应用的一串插入与删除
+			List<String> server = new ArrayList<>(base);
+			List<FileJournal.Edit> applied = new ArrayList<>();
+			for (int step = 0; step < 10; step++) {
+				FileJournal.Edit edit = random.nextBoolean() || server.isEmpty()
+						? insert(random.nextInt(server.size() + 1), "n" + round + "_" + step)
+						: delete(random.nextInt(server.size()));
+				apply(server, List.of(edit));
+				applied.add(edit);
+			}
+			// 基于旧版本替换原来的第 k 行
+			int k = random.nextInt(base.size());
+			String target = base.get(k);
+			List<String> expected = new ArrayList<>(server);
+			int position = expected.indexOf(target);
+			if (position >= 0) {
+				expected.set(position, "X");
+			}
+
+			apply(server, LineTransform.transform(List.of(replace(k, "X")), applied));
+			assertEquals(expected, server);
+		}
+	}
+}
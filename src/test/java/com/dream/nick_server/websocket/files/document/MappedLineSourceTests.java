@@ -0,0 +1,137 @@
+package com.dream.nick_server.websocket.files.document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedLineSourceTests {
+
+	@TempDir
+	Path dir;
+
+	private final List<Runnable> tasks = new ArrayList<>(); // 只记录索引任务，由测试决定何时执行
+
+	private Path write(String text) throws IOException {
+		return Files.writeString(dir.resolve("big.txt"), text);
+	}
+
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (thread.getState() != Thread.State.WAITING) {
+			assertTrue(System.currentTimeMillis() < deadline, "Reader never blocked");
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	void readsAcrossChunkBoundaries() throws IOException {
+		// 16 字节一块：第二行跨越两块，它的 "\r\n" 落在第 32 字节两侧；第三行的"行"字被第 48 字节拆开
+		String text = "first line\r\n" + "second line crosses\r\n" + "x中文跨块行\r\n" + "tail without newline";
+		try (MappedLineSource source = MappedLineSource.open(write(text), Runnable::run, 16)) {
+			assertTrue(source.isIndexed());
+			assertEquals(4, source.lineCount());
+			assertEquals("\r\n", source.detectLineSeparator("\n"));
+			assertEquals("second line crosses", source.line(1));
+			assertEquals("x中文跨块行", source.line(2));
+			assertEquals("x中文跨块行".getBytes(StandardCharsets.UTF_8).length, source.lineBytes(2));
+			assertEquals("tail without newline", source.line(3));
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			for (int i = 0; i < source.lineCount(); i++) {
+				source.writeLine(i, out);
+				out.write('\n');
+			}
+			assertEquals(text.replace("\r\n", "\n") + "\n", out.toString(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	void indexesInTheBackground() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20_000; i++) {
+			text.append("line ").append(i).append('\n');
+		}
+		Thread[] indexer = new Thread[1];
+		try (MappedLineSource source = MappedLineSource.open(write(text.toString()), task -> {
+			indexer[0] = new Thread(task, "test-indexer");
+			indexer[0].start();
+		}, 4096)) {
+			// 读取只等待索引扫描到该行
+			assertEquals("line 5", source.line(5));
+			assertEquals("line 19999", source.line(19_999));
+			assertEquals(20_000, source.lineCount());
+			indexer[0].join(10_000);
+			assertTrue(source.isIndexed());
+			assertEquals(20_000, source.indexedLines());
+			assertFalse(source.hasLine(20_000));
+		}
+	}
+
+	@Test
+	void readersWaitForTheIndexToReachTheirLine() throws Exception {
+		try (MappedLineSource source = MappedLineSource.open(write("a\nb\nc\n"), tasks::add)) {
+			assertFalse(source.isIndexed());
+			assertEquals(0, source.indexedLines());
+
+			CompletableFuture<String> before = new CompletableFuture<>();
+			Thread reader = new Thread(() -> before.complete(source.line(1)));
+			reader.start();
+			awaitWaiting(reader);
+			assertFalse(before.isDone());
+
+			tasks.get(0).run(); // 在测试线程上建立索引
+			assertEquals("b", before.get(10, TimeUnit.SECONDS));
+			// 索引完成之后读取不再等待
+			assertTrue(source.isIndexed());
+			assertEquals("c", source.line(2));
+			assertFalse(source.hasLine(3));
+			assertThrows(IndexOutOfBoundsException.class, () -> source.line(3));
+		}
+	}
+
+	@Test
+	void closeAndInterruptReleaseWaitingReaders() throws Exception {
+		MappedLineSource source = MappedLineSource.open(write("a\nb\nc\n"), tasks::add);
+
+		AtomicReference<Throwable> interrupted = new AtomicReference<>();
+		Thread first = new Thread(() -> {
+			try {
+				source.line(0);
+			} catch (Throwable e) {
+				interrupted.set(e);
+			}
+		});
+		first.start();
+		awaitWaiting(first);
+		first.interrupt();
+		first.join(10_000);
+		assertTrue(interrupted.get() instanceof IllegalStateException, String.valueOf(interrupted.get()));
+
+		CompletableFuture<Boolean> second = new CompletableFuture<>();
+		Thread reader = new Thread(() -> second.complete(source.hasLine(0)));
+		reader.start();
+		awaitWaiting(reader);
+		source.close();
+		assertFalse(second.get(10, TimeUnit.SECONDS)); // 关闭后不再等待，索引中没有该行
+
+		// 关闭之后才开始的索引任务立即结束
+		tasks.get(0).run();
+		assertTrue(source.isIndexed());
+		assertEquals(0, source.indexedLines());
+	}
+}